@@ -0,0 +1,51 @@
+package org.derekn.p2pSim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One arrival and one departure, the unit of work of peer churn. Pairing them keeps the
+ * swarm size steady across invocations, so the cost of registry and neighbour updates
+ * is measured at the parameterised size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ChurnBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int peers;
+
+    @Param({"100"})
+    int chunks;
+
+    private SimulationController controller;
+
+    @Setup
+    public void buildSwarm() {
+        SimulationConfig config = new SimulationConfig(peers, chunks);
+        config.setSeed(42L);
+        controller = new SimulationController(config);
+    }
+
+    @Benchmark
+    public int joinAndLeave() {
+        controller.addRandomLeecher();
+        PeerNode leaving = controller.pickDepartingPeer();
+        if (leaving != null) controller.departPeer(leaving);
+        return controller.getPeers().size();
+    }
+}
@@ -0,0 +1,60 @@
+package org.derekn.p2pSim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-peer chunk bookkeeping: choosing a chunk to download and listing missing chunks.
+ * <p>
+ * The leecher owns every chunk but the last one, so each call has to scan the whole
+ * bitmap before it finds the one chunk it wants; that is the worst case for a peer close
+ * to finishing. {@link #downloadFrom} clears the chunk again afterwards so every call
+ * sees the same state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeerBenchmark {
+    @Param({"100", "10000", "1000000"})
+    int chunks;
+
+    private Leecher leecher;
+    private Seeder seeder;
+    private int lastChunk;
+
+    @Setup
+    public void buildPeers() {
+        leecher = new Leecher(1, 0, 0, chunks, RandomStream.derive(42L, RandomStream.Purpose.BANDWIDTH, 1));
+        seeder = new Seeder(2, 0, 0, chunks, RandomStream.derive(42L, RandomStream.Purpose.BANDWIDTH, 2));
+        lastChunk = chunks - 1;
+        for (int c = 0; c < lastChunk; c++) leecher.receiveChunk(c);
+    }
+
+    @Benchmark
+    public boolean downloadFrom() {
+        boolean downloaded = leecher.downloadFrom(seeder);
+        leecher.getChunkBitmap().clear(lastChunk);
+        return downloaded;
+    }
+
+    @Benchmark
+    public int getMissingChunks() {
+        int sum = 0;
+        for (int chunk : leecher.getMissingChunks()) sum += chunk;
+        return sum;
+    }
+}
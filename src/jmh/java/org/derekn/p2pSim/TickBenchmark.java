@@ -0,0 +1,64 @@
+package org.derekn.p2pSim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of full simulation ticks: churn, parallel transfer selection and commit.
+ * <p>
+ * Each iteration builds a fresh swarm with the same seed and times one batch of
+ * {@value #TICKS} ticks from its start, so every sample covers the same opening ticks.
+ * Downloads take longer than that, even the 1,000 peer swarm of 100 chunks, which
+ * finishes in 11 ticks under the instant model, so no sample includes a finished swarm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = TickBenchmark.TICKS)
+@Measurement(iterations = 10, batchSize = TickBenchmark.TICKS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class TickBenchmark {
+    static final int TICKS = 10; // Ticks timed per sample
+
+    @Param({"1000", "100000", "1000000"})
+    int peers;
+
+    @Param({"100", "1000"})
+    int chunks;
+
+    @Param({"instant", "bandwidth"})
+    String transferModel;
+
+    @Param({"objects", "columnar"})
+    String peerStore;
+
+    private SimulationController controller;
+
+    @Setup(Level.Iteration)
+    public void buildSwarm() {
+        SimulationConfig config = new SimulationConfig(peers, chunks);
+        config.setSeed(42L);
+        config.setTransferModel(TransferModel.parse(transferModel));
+        config.setPeerStorage(PeerStorage.parse(peerStore));
+        controller = new SimulationController(config);
+        controller.startSimulation();
+    }
+
+    @Benchmark
+    public int tick() {
+        controller.tick();
+        return controller.getTickCount();
+    }
+}
@@ -0,0 +1,64 @@
+package org.derekn.p2pSim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the initial connection graph with each topology generator, single-threaded
+ * and on the common pool. Peers are created once per trial and disconnected before every
+ * invocation, so only graph construction is timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class TopologyBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int peers;
+
+    @Param({"er:8", "ba:3", "ws:6:0.1", "regular:6"})
+    String topology;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private final List<PeerNode> swarm = new ArrayList<>();
+    private TopologyGenerator generator;
+
+    @Setup
+    public void createPeers() {
+        generator = TopologyGenerator.parse(topology);
+        for (int i = 0; i < peers; i++) {
+            swarm.add(new Leecher(i, 0, 0, 1, RandomStream.derive(42L, RandomStream.Purpose.BANDWIDTH, i)));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void disconnect() {
+        for (PeerNode peer : swarm) peer.disconnectAll();
+    }
+
+    @Benchmark
+    public List<PeerNode> connect() {
+        generator.connect(swarm, RandomStream.derive(42L, RandomStream.Purpose.TOPOLOGY),
+                parallel ? ForkJoinPool.commonPool() : null);
+        return swarm;
+    }
+}
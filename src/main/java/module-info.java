@@ -1,6 +1,7 @@
 module org.derekn.p2pSim {
     requires javafx.controls;
     requires javafx.fxml;
+    requires jdk.jfr;
 
     opens org.derekn.p2pSim to javafx.fxml;
     exports org.derekn.p2pSim;
@@ -0,0 +1,74 @@
+package org.derekn.p2pSim;
+
+/**
+ * Rate at which new peers arrive over simulated time. Arrivals within a tick are a Poisson
+ * draw around the rate at that tick, so any process here is a non-homogeneous Poisson
+ * process sampled once per tick.
+ */
+@FunctionalInterface
+public interface ArrivalProcess {
+    /**
+     * @param tick Tick number, from 1
+     * @return Mean number of arrivals during the tick, never negative
+     */
+    double rateAt(int tick);
+
+    /**
+     * Parses an arrival specification:
+     * <ul>
+     *   <li>{@code poisson:RATE}, a constant mean of RATE arrivals per tick;</li>
+     *   <li>{@code flash:BASE:PEAK:AT:DECAY}, a base rate plus a flash crowd of PEAK arrivals
+     *       per tick starting at tick AT and decaying exponentially with time constant DECAY
+     *       ticks;</li>
+     *   <li>{@code diurnal:MEAN:AMPLITUDE:PERIOD[:PEAK]}, a daily cycle around MEAN arrivals
+     *       per tick that swings by the fraction AMPLITUDE over PERIOD ticks and is highest at
+     *       tick PEAK, by default half a period in.</li>
+     * </ul>
+     *
+     * @param spec Process name followed by colon-separated parameters
+     * @return Matching arrival process
+     */
+    static ArrivalProcess parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            return switch (parts[0]) {
+                case "poisson" -> {
+                    double rate = nonNegative(parts, 1, "rate");
+                    yield tick -> rate;
+                }
+                case "flash" -> {
+                    double base = nonNegative(parts, 1, "base rate");
+                    double peak = nonNegative(parts, 2, "peak rate");
+                    double at = nonNegative(parts, 3, "start tick");
+                    double decay = positive(parts, 4, "decay");
+                    yield tick -> tick < at ? base : base + peak * Math.exp(-(tick - at) / decay);
+                }
+                case "diurnal" -> {
+                    double mean = nonNegative(parts, 1, "mean rate");
+                    double amplitude = nonNegative(parts, 2, "amplitude");
+                    if (amplitude > 1) throw new IllegalArgumentException("Amplitude must be at most 1: " + spec);
+                    double period = positive(parts, 3, "period");
+                    double peakTick = parts.length > 4 ? Double.parseDouble(parts[4]) : period / 2;
+                    yield tick -> mean * (1 + amplitude * Math.cos(2 * Math.PI * (tick - peakTick) / period));
+                }
+                default -> throw new IllegalArgumentException("Unknown arrival process: " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Missing parameters in arrival process: " + spec);
+        }
+    }
+
+    private static double nonNegative(String[] parts, int index, String name) {
+        double value = Double.parseDouble(parts[index]);
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Arrival " + name + " must be a finite value of at least 0: " + value);
+        }
+        return value;
+    }
+
+    private static double positive(String[] parts, int index, String name) {
+        double value = nonNegative(parts, index, name);
+        if (value == 0) throw new IllegalArgumentException("Arrival " + name + " must be positive");
+        return value;
+    }
+}
@@ -0,0 +1,37 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One direction of a peer's network connection (its uplink or its downlink),
+ * shared by every transfer currently using it.
+ */
+class BandwidthLink {
+    final PeerNode owner;           // Peer this link belongs to
+    final double capacity;          // Bytes per second
+    final List<Transfer> flows = new ArrayList<>(); // Transfers using this link
+
+    // Scratch state for the allocation pass
+    double remaining;               // Capacity not yet handed to frozen flows
+    int unfrozen;                   // Flows whose rate is not yet fixed
+    int heapIndex = -1;             // Position in the allocation heap, -1 if absent
+    int visitMark;                  // Allocation pass that last visited this link
+    boolean dirty;                  // Flow set changed since the last allocation
+
+    /**
+     * @param owner    Peer this link belongs to
+     * @param capacity Capacity in bytes per second
+     */
+    BandwidthLink(PeerNode owner, double capacity) {
+        this.owner = owner;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Fair share the remaining capacity offers each unfrozen flow
+     */
+    double share() {
+        return remaining / unfrozen;
+    }
+}
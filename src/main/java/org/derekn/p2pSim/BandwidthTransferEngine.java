@@ -0,0 +1,476 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Byte-accurate transfer model. Each chunk transfer takes as long as its size and
+ * allocated rate require, and each peer's uplink and downlink capacity is shared
+ * across its concurrent transfers with max-min fairness.
+ * <p>
+ * Rates are computed by progressive filling: the link offering the smallest fair share
+ * is saturated first, its flows are frozen at that share, and the capacity left on the
+ * other end of each frozen flow is recomputed. An indexed heap keeps this at
+ * O((F + L) log L) for F flows over L links. Max-min allocations are independent across
+ * connected groups of links, so only groups touched by a started, finished or cancelled
+ * transfer are recomputed; the rest keep their rates.
+ */
+public class BandwidthTransferEngine {
+    private final List<Transfer> active = new ArrayList<>(); // In-flight transfers
+    private final List<BandwidthLink> dirtyLinks = new ArrayList<>();
+
+    // Scratch buffers reused by each allocation pass
+    private final List<BandwidthLink> component = new ArrayList<>();
+    private BandwidthLink[] heap = new BandwidthLink[64];
+    private int heapSize;
+    private int visitMark;
+
+    private long totalBytes;        // Bytes delivered since the engine started
+    private double settledBytes;    // Bytes credited by event-mode settlement
+    private long lastAdvanceBytes;  // Bytes delivered by the most recent advance
+    private double elapsedSeconds;  // Simulated time advanced so far
+    private double lastAdvanceSeconds;
+
+    /**
+     * Starts a transfer. Its rate is assigned at the next allocation.
+     * The transfer is added to the receiver's active transfer list until it ends.
+     *
+     * @param t Transfer to start
+     */
+    public void start(Transfer t) {
+        t.engineIndex = active.size();
+        active.add(t);
+
+        BandwidthLink up = t.getSender().uplink();
+        BandwidthLink down = t.getReceiver().downlink();
+        up.flows.add(t);
+        down.flows.add(t);
+        markDirty(up);
+        markDirty(down);
+        t.getReceiver().addTransfer(t);
+    }
+
+    /**
+     * Starts a transfer in event mode, at the given simulated time.
+     *
+     * @param t   Transfer to start
+     * @param now Simulated time in seconds
+     */
+    public void start(Transfer t, double now) {
+        t.lastSettled = now;
+        start(t);
+    }
+
+    /**
+     * Removes a completed transfer in event mode, crediting its final bytes.
+     *
+     * @param t   Transfer that reached its completion time
+     * @param now Simulated time in seconds
+     */
+    public void finish(Transfer t, double now) {
+        settledBytes += t.settle(now);
+        settledBytes += t.addBytes(t.getSizeBytes()); // Floating-point shortfall at the scheduled time
+        if (t.engineIndex >= 0) remove(t);
+    }
+
+    /**
+     * Event mode: recomputes rates for links affected since the last call. Every affected
+     * transfer is first settled up to {@code now} at its old rate; transfers whose rate
+     * changed are passed to the callback so their completion can be rescheduled.
+     *
+     * @param now         Simulated time in seconds
+     * @param rateChanged Called for each transfer whose rate changed
+     */
+    public void reallocateAt(double now, Consumer<Transfer> rateChanged) {
+        if (dirtyLinks.isEmpty()) return;
+        collectDirtyComponent();
+        for (BandwidthLink link : component) {
+            for (Transfer t : link.flows) {
+                settledBytes += t.settle(now);
+                t.previousRate = t.getRate();
+            }
+        }
+        fillComponent();
+        for (BandwidthLink link : component) {
+            // Each flow appears on two links; report it once, from its downlink
+            if (link != link.owner.downlink()) continue;
+            for (Transfer t : link.flows) {
+                if (t.getRate() != t.previousRate) rateChanged.accept(t);
+            }
+        }
+    }
+
+    /**
+     * @return true if transfers started, finished or were cancelled since the last allocation
+     */
+    public boolean hasPendingChanges() {
+        return !dirtyLinks.isEmpty();
+    }
+
+    /**
+     * @return Sum of the current rates of all in-flight transfers, in MB/s
+     */
+    public double getAggregateRateMBps() {
+        double sum = 0;
+        for (Transfer t : active) sum += t.getRate();
+        return sum / Constants.MB;
+    }
+
+    /**
+     * Advances every in-flight transfer by the given amount of simulated time.
+     * Completed transfers are removed and passed to the callback in start order.
+     *
+     * @param seconds    Simulated time to advance
+     * @param onComplete Called for each transfer that finished
+     */
+    public void advance(double seconds, Consumer<Transfer> onComplete) {
+        reallocate();
+
+        double moved = 0;
+        List<Transfer> completed = null;
+        for (Transfer t : active) {
+            moved += t.addBytes(t.getRate() * seconds);
+            if (t.isComplete()) {
+                if (completed == null) completed = new ArrayList<>();
+                completed.add(t);
+            }
+        }
+
+        lastAdvanceBytes = Math.round(moved);
+        totalBytes += lastAdvanceBytes;
+        lastAdvanceSeconds = seconds;
+        elapsedSeconds += seconds;
+
+        if (completed != null) {
+            for (Transfer t : completed) {
+                remove(t);
+                onComplete.accept(t);
+            }
+        }
+    }
+
+    /**
+     * Cancels every transfer the peer is sending or receiving, e.g. when it leaves.
+     * Cost is proportional to the peer's own transfers.
+     *
+     * @param peer Departing peer
+     */
+    public void cancelPeer(PeerNode peer) {
+        for (Transfer t : transfersOf(peer)) {
+            if (t.engineIndex >= 0) remove(t);
+        }
+    }
+
+    /**
+     * @param peer Peer to look up
+     * @return Snapshot of the transfers the peer is sending or receiving
+     */
+    public List<Transfer> transfersOf(PeerNode peer) {
+        List<Transfer> affected = new ArrayList<>(peer.uplink().flows);
+        affected.addAll(peer.downlink().flows);
+        return affected;
+    }
+
+    /**
+     * @return Number of in-flight transfers
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * @return Read-only view of the in-flight transfers
+     */
+    public List<Transfer> getActiveTransfers() {
+        return Collections.unmodifiableList(active);
+    }
+
+    /**
+     * @return Bytes delivered since the engine started
+     */
+    public long getTotalBytes() {
+        return totalBytes + Math.round(settledBytes);
+    }
+
+    /**
+     * Event mode: bytes delivered up to the given time, including bytes of in-flight
+     * transfers that have not been settled yet.
+     *
+     * @param now Simulated time in seconds
+     * @return Bytes delivered
+     */
+    public long getTotalBytesAt(double now) {
+        double unsettled = 0;
+        for (Transfer t : active) unsettled += t.bytesAt(now) - t.getBytesDone();
+        return totalBytes + Math.round(settledBytes + unsettled);
+    }
+
+    /**
+     * @return Aggregate throughput of the most recent advance, in MB/s
+     */
+    public double getCurrentThroughputMBps() {
+        return lastAdvanceSeconds == 0 ? 0 : lastAdvanceBytes / lastAdvanceSeconds / Constants.MB;
+    }
+
+    /**
+     * @return Average aggregate throughput since the engine started, in MB/s
+     */
+    public double getAverageThroughputMBps() {
+        return elapsedSeconds == 0 ? 0 : getTotalBytes() / elapsedSeconds / Constants.MB;
+    }
+
+    /**
+     * Writes the in-flight transfers and the order in which every link and receiver lists
+     * them. Allocation visits flows in that order, so keeping it makes a restored run
+     * compute bit-identical rates.
+     *
+     * @param out   Checkpoint being written
+     * @param peers Live peers, whose links hold the transfers
+     */
+    void writeTo(CheckpointWriter out, PeerRegistry peers) {
+        out.putLong(totalBytes);
+        out.putDouble(settledBytes);
+        out.putLong(lastAdvanceBytes);
+        out.putDouble(elapsedSeconds);
+        out.putDouble(lastAdvanceSeconds);
+
+        out.putInt(active.size());
+        for (Transfer t : active) {
+            out.putInt(t.getSender().getId());
+            out.putInt(t.getReceiver().getId());
+            out.putInt(t.getChunk());
+            out.putLong(t.getSizeBytes());
+            out.putDouble(t.getBytesDone());
+            out.putDouble(t.getRate());
+            out.putDouble(t.previousRate);
+            out.putDouble(t.lastSettled);
+            out.putInt(t.version);
+        }
+
+        for (PeerNode peer : peers) {
+            writeIndices(out, peer.uplink().flows);
+            writeIndices(out, peer.downlink().flows);
+            writeIndices(out, peer.getActiveTransfers());
+        }
+
+        // Links of departed peers are dirty too, but carry no flows and can be dropped
+        int live = 0;
+        for (BandwidthLink link : dirtyLinks) {
+            if (peers.contains(link.owner)) live++;
+        }
+        out.putInt(live);
+        for (BandwidthLink link : dirtyLinks) {
+            if (!peers.contains(link.owner)) continue;
+            out.putInt(link.owner.getId());
+            out.putBoolean(link == link.owner.uplink());
+        }
+    }
+
+    /**
+     * Restores the state written by {@link #writeTo} into an idle engine.
+     *
+     * @param in    Checkpoint being read
+     * @param peers Restored peers, without any transfers yet
+     */
+    void readFrom(CheckpointReader in, PeerRegistry peers) {
+        totalBytes = in.getLong();
+        settledBytes = in.getDouble();
+        lastAdvanceBytes = in.getLong();
+        elapsedSeconds = in.getDouble();
+        lastAdvanceSeconds = in.getDouble();
+
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            PeerNode sender = peers.byId(in.getInt());
+            PeerNode receiver = peers.byId(in.getInt());
+            int chunk = in.getInt();
+            Transfer t = new Transfer(sender, receiver, chunk, in.getLong());
+            t.addBytes(in.getDouble());
+            t.setRate(in.getDouble());
+            t.previousRate = in.getDouble();
+            t.lastSettled = in.getDouble();
+            t.version = in.getInt();
+            t.engineIndex = i;
+            active.add(t);
+        }
+
+        for (PeerNode peer : peers) {
+            for (int k = in.getInt(); k > 0; k--) peer.uplink().flows.add(active.get(in.getInt()));
+            for (int k = in.getInt(); k > 0; k--) peer.downlink().flows.add(active.get(in.getInt()));
+            for (int k = in.getInt(); k > 0; k--) peer.addTransfer(active.get(in.getInt()));
+        }
+
+        for (int k = in.getInt(); k > 0; k--) {
+            PeerNode owner = peers.byId(in.getInt());
+            markDirty(in.getBoolean() ? owner.uplink() : owner.downlink());
+        }
+    }
+
+    private static void writeIndices(CheckpointWriter out, List<Transfer> transfers) {
+        out.putInt(transfers.size());
+        for (Transfer t : transfers) out.putInt(t.engineIndex);
+    }
+
+    private void remove(Transfer t) {
+        // Swap-remove from the active list
+        int index = t.engineIndex;
+        Transfer last = active.remove(active.size() - 1);
+        if (last != t) {
+            active.set(index, last);
+            last.engineIndex = index;
+        }
+        t.engineIndex = -1;
+
+        BandwidthLink up = t.getSender().uplink();
+        BandwidthLink down = t.getReceiver().downlink();
+        up.flows.remove(t);
+        down.flows.remove(t);
+        markDirty(up);
+        markDirty(down);
+        t.getReceiver().removeTransfer(t);
+    }
+
+    private void markDirty(BandwidthLink link) {
+        if (!link.dirty) {
+            link.dirty = true;
+            dirtyLinks.add(link);
+        }
+    }
+
+    /**
+     * Recomputes max-min fair rates for every link group reachable from a dirty link.
+     */
+    void reallocate() {
+        if (dirtyLinks.isEmpty()) return;
+        collectDirtyComponent();
+        fillComponent();
+    }
+
+    // Gathers every link connected through flows to a dirty link
+    private void collectDirtyComponent() {
+        visitMark++;
+
+        // Collect the connected groups of links that contain a change
+        component.clear();
+        for (BandwidthLink link : dirtyLinks) {
+            link.dirty = false;
+            if (link.visitMark != visitMark) {
+                link.visitMark = visitMark;
+                component.add(link);
+            }
+        }
+        dirtyLinks.clear();
+        for (int i = 0; i < component.size(); i++) {
+            for (Transfer t : component.get(i).flows) {
+                visit(t.getSender().uplink());
+                visit(t.getReceiver().downlink());
+            }
+        }
+    }
+
+    // Progressive filling over the collected links
+    private void fillComponent() {
+        heapSize = 0;
+        for (BandwidthLink link : component) {
+            link.remaining = link.capacity;
+            link.unfrozen = link.flows.size();
+            for (Transfer t : link.flows) t.frozen = false;
+            if (link.unfrozen > 0) heapPush(link);
+        }
+
+        while (heapSize > 0) {
+            BandwidthLink bottleneck = heapPop();
+            double share = Math.max(0, bottleneck.share());
+            for (Transfer t : bottleneck.flows) {
+                if (t.frozen) continue;
+                t.frozen = true;
+                t.setRate(share);
+
+                BandwidthLink up = t.getSender().uplink();
+                BandwidthLink other = up == bottleneck ? t.getReceiver().downlink() : up;
+                other.remaining -= share;
+                other.unfrozen--;
+                if (other.heapIndex >= 0) {
+                    if (other.unfrozen == 0) {
+                        heapRemove(other);
+                    } else {
+                        heapUpdate(other);
+                    }
+                }
+            }
+            bottleneck.unfrozen = 0;
+        }
+    }
+
+    private void visit(BandwidthLink link) {
+        if (link.visitMark != visitMark) {
+            link.visitMark = visitMark;
+            component.add(link);
+        }
+    }
+
+    // Indexed binary min-heap of links keyed by fair share
+
+    private void heapPush(BandwidthLink link) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        heap[heapSize] = link;
+        link.heapIndex = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private BandwidthLink heapPop() {
+        BandwidthLink top = heap[0];
+        heapRemove(top);
+        return top;
+    }
+
+    private void heapRemove(BandwidthLink link) {
+        int i = link.heapIndex;
+        BandwidthLink last = heap[--heapSize];
+        heap[heapSize] = null;
+        link.heapIndex = -1;
+        if (i < heapSize) {
+            heap[i] = last;
+            last.heapIndex = i;
+            heapUpdate(last);
+        }
+    }
+
+    private void heapUpdate(BandwidthLink link) {
+        siftUp(link.heapIndex);
+        siftDown(link.heapIndex);
+    }
+
+    private void siftUp(int i) {
+        BandwidthLink link = heap[i];
+        double key = link.share();
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].share() <= key) break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = link;
+        link.heapIndex = i;
+    }
+
+    private void siftDown(int i) {
+        BandwidthLink link = heap[i];
+        double key = link.share();
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1].share() < heap[child].share()) child++;
+            if (heap[child].share() >= key) break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = link;
+        link.heapIndex = i;
+    }
+}
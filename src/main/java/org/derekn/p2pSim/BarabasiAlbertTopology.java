@@ -0,0 +1,65 @@
+package org.derekn.p2pSim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Barabási–Albert preferential attachment: peers join one at a time and connect to
+ * m existing peers chosen with probability proportional to their degree, producing a
+ * scale-free graph with a few well-connected hubs. Degree-proportional sampling uses
+ * an array holding every edge endpoint, so generation is O(n·m).
+ * The process is inherently sequential, so the pool is not used.
+ */
+public class BarabasiAlbertTopology implements TopologyGenerator {
+    private final int edgesPerPeer; // m: connections made by each joining peer
+
+    /**
+     * @param edgesPerPeer Number of connections each joining peer makes
+     */
+    public BarabasiAlbertTopology(int edgesPerPeer) {
+        if (edgesPerPeer < 1) throw new IllegalArgumentException("edgesPerPeer must be at least 1");
+        this.edgesPerPeer = edgesPerPeer;
+    }
+
+    @Override
+    public void connect(List<PeerNode> peers, RandomStream rng, ForkJoinPool pool) {
+        int n = peers.size();
+        int m = Math.min(edgesPerPeer, n - 1);
+        if (m < 1) return;
+
+        // Every edge contributes both endpoints, so a uniform pick is degree-proportional
+        int[] endpoints = new int[2 * (m * (m + 1) / 2 + (n - m - 1) * m)];
+        int count = 0;
+
+        // Seed graph: a clique of the first m + 1 peers
+        for (int v = 1; v <= m; v++) {
+            for (int u = 0; u < v; u++) {
+                peers.get(v).connectTo(peers.get(u));
+                endpoints[count++] = u;
+                endpoints[count++] = v;
+            }
+        }
+
+        int[] chosen = new int[m];
+        for (int v = m + 1; v < n; v++) {
+            PeerNode peer = peers.get(v);
+            int picked = 0;
+            while (picked < m) {
+                int target = endpoints[rng.nextInt(count)];
+                if (!contains(chosen, picked, target)) chosen[picked++] = target;
+            }
+            for (int k = 0; k < m; k++) {
+                peer.connectTo(peers.get(chosen[k]));
+                endpoints[count++] = chosen[k];
+                endpoints[count++] = v;
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+}
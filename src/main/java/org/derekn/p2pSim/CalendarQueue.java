@@ -0,0 +1,150 @@
+package org.derekn.p2pSim;
+
+/**
+ * Calendar queue (Brown, 1988): an O(1) amortised priority queue for event times.
+ * <p>
+ * Time is divided into "days" of fixed width, and day {@code d} maps to bucket
+ * {@code d mod buckets}, like days on a calendar wrapping around each year. Each bucket
+ * is a short sorted list, so insertion touches one bucket and removal walks forward from
+ * the current day. The number of buckets doubles or halves with the event count, and the
+ * day width is re-estimated from the spacing of the earliest events on each resize,
+ * keeping a few events per bucket regardless of the event density.
+ */
+public class CalendarQueue implements EventQueue {
+    private static final int MIN_BUCKETS = 16;
+    private static final int WIDTH_SAMPLE = 25; // Events sampled to estimate the day width
+
+    private SimEvent[] buckets = new SimEvent[MIN_BUCKETS]; // Sorted list heads
+    private double width = 1.0; // Day width in simulated seconds
+    private long day;           // Current day; its bucket is day mod buckets.length
+    private int size;
+
+    @Override
+    public void add(SimEvent event) {
+        insert(event);
+        size++;
+        if (size > 2 * buckets.length) resize(buckets.length * 2);
+    }
+
+    @Override
+    public SimEvent poll() {
+        SimEvent head = peek();
+        if (head == null) return null;
+
+        int b = bucketOf(day);
+        buckets[b] = head.next;
+        head.next = null;
+        size--;
+        if (size < buckets.length / 2 - 2 && buckets.length > MIN_BUCKETS) resize(buckets.length / 2);
+        return head;
+    }
+
+    /**
+     * Returns the earliest event, advancing the current day past empty days.
+     * Only moves the day pointer forward, so it is safe between insertions.
+     */
+    @Override
+    public SimEvent peek() {
+        if (size == 0) return null;
+
+        // Walk at most one year of days looking for an event due that day
+        for (int step = 0; step < buckets.length; step++) {
+            SimEvent head = buckets[bucketOf(day)];
+            if (head != null && dayOf(head.time) <= day) return head;
+            day++;
+        }
+
+        // Nothing within a year: jump directly to the earliest event
+        SimEvent min = null;
+        for (SimEvent head : buckets) {
+            if (head != null && (min == null || head.compareTo(min) < 0)) min = head;
+        }
+        day = dayOf(min.time);
+        return min;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void insert(SimEvent event) {
+        long d = dayOf(event.time);
+        if (d < day) day = d; // Allows scheduling earlier than the current day
+        int b = bucketOf(d);
+
+        SimEvent head = buckets[b];
+        if (head == null || event.compareTo(head) < 0) {
+            event.next = head;
+            buckets[b] = event;
+            return;
+        }
+        SimEvent prev = head;
+        while (prev.next != null && prev.next.compareTo(event) <= 0) prev = prev.next;
+        event.next = prev.next;
+        prev.next = event;
+    }
+
+    /**
+     * Rebuilds the calendar with a new bucket count and a day width estimated from the
+     * spacing of the earliest pending events.
+     */
+    private void resize(int newBucketCount) {
+        int total = size;
+
+        // Take the earliest events in order to sample their spacing
+        int sampleCount = Math.min(total, WIDTH_SAMPLE);
+        SimEvent[] all = new SimEvent[total];
+        for (int i = 0; i < sampleCount; i++) all[i] = poll0();
+        int n = sampleCount;
+        for (SimEvent head : buckets) {
+            for (SimEvent e = head; e != null; e = e.next) all[n++] = e;
+        }
+
+        double newWidth = estimateWidth(all, sampleCount);
+        if (newWidth > 0) width = newWidth;
+
+        buckets = new SimEvent[newBucketCount];
+        day = total > 0 ? dayOf(all[0].time) : 0;
+        for (int i = 0; i < total; i++) {
+            all[i].next = null;
+            insert(all[i]);
+        }
+        size = total;
+    }
+
+    // Removes the earliest event without triggering a resize
+    private SimEvent poll0() {
+        SimEvent head = peek();
+        buckets[bucketOf(day)] = head.next;
+        head.next = null;
+        size--;
+        return head;
+    }
+
+    // Three times the average gap between the sampled events, ignoring outlying gaps
+    private static double estimateWidth(SimEvent[] sorted, int count) {
+        if (count < 2) return 0;
+        double average = (sorted[count - 1].time - sorted[0].time) / (count - 1);
+        if (average <= 0) return 0;
+
+        double sum = 0;
+        int gaps = 0;
+        for (int i = 1; i < count; i++) {
+            double gap = sorted[i].time - sorted[i - 1].time;
+            if (gap <= 2 * average) {
+                sum += gap;
+                gaps++;
+            }
+        }
+        return gaps == 0 || sum == 0 ? 3 * average : 3 * sum / gaps;
+    }
+
+    private long dayOf(double time) {
+        return (long) Math.floor(time / width);
+    }
+
+    private int bucketOf(long d) {
+        return (int) Math.floorMod(d, (long) buckets.length);
+    }
+}
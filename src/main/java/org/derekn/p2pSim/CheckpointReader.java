@@ -0,0 +1,179 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a checkpoint written by {@link CheckpointWriter} through a read-only memory
+ * mapping, so loading copies straight from the page cache instead of through read calls.
+ * Files larger than one mapping can address are mapped one window at a time. A checkpoint
+ * embedded in a larger file is read from its own region of that file.
+ * <p>
+ * Reads past the end of the file or a bad header fail with an
+ * {@link IllegalStateException}; I/O errors while moving the window surface as
+ * {@link UncheckedIOException}.
+ */
+class CheckpointReader implements AutoCloseable {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final String source;     // File name for error messages
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long end;          // File offset just past the checkpoint
+    private MappedByteBuffer window;
+    private long windowStart; // File offset of the window's first byte
+
+    /**
+     * Opens the file and checks its header.
+     *
+     * @param file Checkpoint file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    CheckpointReader(Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ), true, 0, -1, file.toString());
+    }
+
+    /**
+     * Reads a checkpoint embedded in a region of an open file, leaving the channel open.
+     *
+     * @param channel Channel to read from
+     * @param start   File offset of the checkpoint
+     * @param length  Length of the checkpoint in bytes
+     * @param source  Name of the checkpoint for error messages
+     * @throws IOException if the region cannot be mapped
+     */
+    CheckpointReader(FileChannel channel, long start, long length, String source) throws IOException {
+        this(channel, false, start, length, source);
+    }
+
+    private CheckpointReader(FileChannel channel, boolean ownsChannel, long start, long length, String source)
+            throws IOException {
+        this.source = source;
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        try {
+            this.end = length < 0 ? channel.size() : start + length;
+            map(start);
+            if (getInt() != CheckpointWriter.MAGIC) throw new IllegalStateException(source + " is not a checkpoint");
+            int version = getInt();
+            if (version != CheckpointWriter.VERSION) {
+                throw new IllegalStateException("Unsupported checkpoint version " + version + " in " + source);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    int getByte() {
+        ensure(1);
+        return window.get();
+    }
+
+    boolean getBoolean() {
+        return getByte() != 0;
+    }
+
+    int getInt() {
+        ensure(4);
+        return window.getInt();
+    }
+
+    long getLong() {
+        ensure(8);
+        return window.getLong();
+    }
+
+    double getDouble() {
+        ensure(8);
+        return window.getDouble();
+    }
+
+    /**
+     * @return Length-prefixed UTF-8 string
+     */
+    String getString() {
+        byte[] bytes = new byte[getInt()];
+        ensure(bytes.length);
+        window.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Random stream continuing from the captured state
+     */
+    RandomStream getStream() {
+        long seed = getLong();
+        return RandomStream.restore(seed, getLong());
+    }
+
+    /**
+     * Fills an int array.
+     *
+     * @param values Destination array
+     * @param count  Number of leading elements to read
+     */
+    void getInts(int[] values, int count) {
+        for (int i = 0; i < count; ) {
+            ensure(4);
+            int n = Math.min(count - i, window.remaining() / 4);
+            window.asIntBuffer().get(values, i, n);
+            window.position(window.position() + n * 4);
+            i += n;
+        }
+    }
+
+    /**
+     * Fills a long array.
+     *
+     * @param values Destination array, read in full
+     */
+    void getLongs(long[] values) {
+        for (int i = 0; i < values.length; ) {
+            ensure(8);
+            int n = Math.min(values.length - i, window.remaining() / 8);
+            window.asLongBuffer().get(values, i, n);
+            window.position(window.position() + n * 8);
+            i += n;
+        }
+    }
+
+    /**
+     * Checks that everything has been read up to the end marker.
+     */
+    void finish() {
+        if (getInt() != CheckpointWriter.END_MARKER) {
+            throw new IllegalStateException("Checkpoint " + source + " is corrupt: end marker missing");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) channel.close();
+    }
+
+    // Moves the window forward when fewer than the requested bytes are left in it
+    private void ensure(int bytes) {
+        if (window.remaining() >= bytes) return;
+        long position = windowStart + window.position();
+        if (end - position < bytes) throw new IllegalStateException("Checkpoint " + source + " is truncated");
+        try {
+            map(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(long position) throws IOException {
+        long length = Math.min(WINDOW_BYTES, end - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = position;
+    }
+}
@@ -0,0 +1,212 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a simulation checkpoint as a stream of little-endian primitives through a large
+ * direct buffer, so the file channel sees few, big writes however many small fields are
+ * put. Read back with {@link CheckpointReader}.
+ * <p>
+ * A checkpoint starts with {@link #MAGIC} and {@link #VERSION} and ends with
+ * {@link #END_MARKER}; a file cut short is detected by the missing marker. A checkpoint
+ * file is written to a temporary sibling and moved over the target only once complete and
+ * on disk, so a crash while saving leaves the previous checkpoint intact. A checkpoint
+ * can also be embedded in a larger file, such as a keyframe of a {@link TraceRecorder}.
+ */
+class CheckpointWriter implements AutoCloseable {
+    static final int MAGIC = 0x50325043;      // "P2PC"
+    static final int VERSION = 2;             // Bumped whenever the layout changes
+    static final int END_MARKER = 0x454E4421; // "END!"
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final Path file; // Target of a file opened by this writer, or null for a caller's channel
+    private final Path temp; // Where that file is written until finished
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Starts a checkpoint that creates or replaces the file when finished, and writes the
+     * header.
+     *
+     * @param file Checkpoint file
+     * @throws IOException if the temporary file cannot be created
+     */
+    CheckpointWriter(Path file) throws IOException {
+        this(file, Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp"));
+    }
+
+    private CheckpointWriter(Path file, Path temp) throws IOException {
+        this(openTemp(temp), file, temp);
+    }
+
+    /**
+     * Writes a checkpoint at the channel's current position, leaving the channel open.
+     *
+     * @param channel Channel to write to
+     */
+    CheckpointWriter(FileChannel channel) {
+        this(channel, null, null);
+    }
+
+    private CheckpointWriter(FileChannel channel, Path file, Path temp) {
+        this.channel = channel;
+        this.file = file;
+        this.temp = temp;
+        putInt(MAGIC);
+        putInt(VERSION);
+    }
+
+    void putByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    void putBoolean(boolean value) {
+        putByte(value ? 1 : 0);
+    }
+
+    void putInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    void putDouble(double value) {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     *
+     * @param value String to write
+     */
+    void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        for (byte b : bytes) putByte(b);
+    }
+
+    /**
+     * Writes the state of a random stream.
+     *
+     * @param stream Stream to capture
+     */
+    void putStream(RandomStream stream) {
+        putLong(stream.getSeed());
+        putLong(stream.getGamma());
+    }
+
+    /**
+     * Writes part of an int array, without a length prefix.
+     *
+     * @param values Source array
+     * @param count  Number of leading elements to write
+     */
+    void putInts(int[] values, int count) {
+        for (int i = 0; i < count; ) {
+            ensure(4);
+            int n = Math.min(count - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, i, n);
+            buffer.position(buffer.position() + n * 4);
+            i += n;
+        }
+    }
+
+    /**
+     * Writes a whole long array, without a length prefix.
+     *
+     * @param values Source array
+     */
+    void putLongs(long[] values) {
+        putLongs(values, 0, values.length);
+    }
+
+    /**
+     * Writes part of a long array, without a length prefix.
+     *
+     * @param values Source array
+     * @param from   Index of the first element to write
+     * @param count  Number of elements to write
+     */
+    void putLongs(long[] values, int from, int count) {
+        for (int i = 0; i < count; ) {
+            ensure(8);
+            int n = Math.min(count - i, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(values, from + i, n);
+            buffer.position(buffer.position() + n * 8);
+            i += n;
+        }
+    }
+
+    /**
+     * Writes the end marker and everything still buffered. A file opened by this writer is
+     * then forced to disk, closed and atomically moved over the target.
+     *
+     * @throws IOException if writing fails
+     */
+    void finish() throws IOException {
+        try {
+            putInt(END_MARKER);
+            drain();
+            if (file == null) return;
+            channel.force(false);
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes a file opened by this writer. If {@link #finish()} did not complete, the
+     * temporary file is deleted and the target left as it was.
+     */
+    @Override
+    public void close() throws IOException {
+        if (file == null) return;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static FileChannel openTemp(Path temp) throws IOException {
+        try {
+            return FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) drain();
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
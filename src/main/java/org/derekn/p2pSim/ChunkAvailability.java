@@ -0,0 +1,246 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Swarm-wide count of how many peers hold each chunk, kept up to date incrementally
+ * as chunks are received and peers join or leave.
+ * <p>
+ * Chunks are kept in an array sorted by count, with the start of each count's bucket
+ * recorded, so raising or lowering a count is an O(1) swap to a bucket boundary and the
+ * rarest chunks are always at the front. Each non-empty bucket is also kept as a bitmap,
+ * so a large bucket can be searched for chunks a peer may download a word at a time
+ * rather than a chunk at a time. Peers holding the shared full bitmap (seeders) add to
+ * every chunk equally and are tracked as a single counter instead.
+ */
+public class ChunkAvailability {
+    private final int totalChunks;
+    private final int words;      // Words per bucket bitmap
+    private final int[] counts;   // Holders per chunk, excluding full-bitmap holders
+    private final int[] order;    // Chunks sorted by ascending count
+    private final int[] position; // Chunk -> index in order
+    private int[] bucketStart;    // Count k occupies order[bucketStart[k] .. bucketStart[k + 1])
+    private long[][] bucketBits;  // Chunks of count k by index, null while the bucket is empty
+    private final List<long[]> spareBits = new ArrayList<>(); // Cleared bitmaps of emptied buckets
+    private int fullHolders;      // Peers holding the shared full bitmap
+
+    /**
+     * @param totalChunks Total number of chunks in the file
+     */
+    public ChunkAvailability(int totalChunks) {
+        this.totalChunks = totalChunks;
+        this.words = ChunkBitmap.wordCount(totalChunks);
+        this.counts = new int[totalChunks];
+        this.order = new int[totalChunks];
+        this.position = new int[totalChunks];
+        for (int c = 0; c < totalChunks; c++) {
+            order[c] = c;
+            position[c] = c;
+        }
+        this.bucketStart = new int[16];
+        Arrays.fill(bucketStart, 1, bucketStart.length, totalChunks); // Everything starts at count 0
+        this.bucketBits = new long[bucketStart.length][];
+        for (int c = 0; c < totalChunks; c++) bits(0)[c >>> 6] |= 1L << c;
+    }
+
+    /**
+     * Records that a peer received a chunk.
+     *
+     * @param chunk Chunk index
+     */
+    public void increment(int chunk) {
+        int k = counts[chunk];
+        if (k + 2 >= bucketStart.length) growBuckets(k + 2);
+
+        // Swap the chunk to the end of bucket k, then shrink bucket k by one
+        int end = bucketStart[k + 1] - 1;
+        swap(position[chunk], end);
+        bucketStart[k + 1]--;
+        counts[chunk] = k + 1;
+        move(chunk, k, k + 1);
+    }
+
+    /**
+     * Records that a holder of a chunk left.
+     *
+     * @param chunk Chunk index
+     */
+    public void decrement(int chunk) {
+        int k = counts[chunk];
+        if (k == 0) throw new IllegalStateException("Chunk " + chunk + " has no holders to remove");
+
+        // Swap the chunk to the start of bucket k, then grow bucket k - 1 by one
+        int start = bucketStart[k];
+        swap(position[chunk], start);
+        bucketStart[k]++;
+        counts[chunk] = k - 1;
+        move(chunk, k, k - 1);
+    }
+
+    /**
+     * Adds every chunk held by a joining peer. O(1) for seeders sharing the full bitmap,
+     * otherwise proportional to the chunks the peer holds.
+     *
+     * @param peer Joining peer
+     */
+    public void addPeer(PeerNode peer) {
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        if (chunks.isShared()) {
+            fullHolders++;
+            return;
+        }
+        for (int c = chunks.nextSetBit(0); c >= 0; c = chunks.nextSetBit(c + 1)) increment(c);
+    }
+
+    /**
+     * Removes every chunk held by a departing peer.
+     *
+     * @param peer Departing peer
+     */
+    public void removePeer(PeerNode peer) {
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        if (chunks.isShared()) {
+            fullHolders--;
+            return;
+        }
+        for (int c = chunks.nextSetBit(0); c >= 0; c = chunks.nextSetBit(c + 1)) decrement(c);
+    }
+
+    /**
+     * @param chunk Chunk index
+     * @return Number of live peers holding the chunk
+     */
+    public int count(int chunk) {
+        return counts[chunk] + fullHolders;
+    }
+
+    /**
+     * Picks the rarest chunk that the source holds, the wanter lacks and is not excluded.
+     * Goes through the buckets from the rarest and stops at the first with an eligible
+     * chunk; ties within that bucket are broken by a rotation derived from the wanter's ID,
+     * so leechers spread across equally rare chunks deterministically. A bucket costs the
+     * smaller of its size and the bitmap's word count, so a pick is sub-linear in the
+     * number of chunks unless the swarm holds them at very many different counts.
+     *
+     * @param wanter   Chunks the downloading peer already owns
+     * @param source   Chunks the uploading peer owns
+     * @param exclude  Chunks already claimed by the downloader this tick
+     * @param wanterId ID of the downloading peer, used for tie-breaking
+     * @return Chunk index, or -1 if the source has nothing eligible
+     */
+    public int rarestWanted(ChunkBitmap wanter, ChunkBitmap source, ChunkBitmap exclude, int wanterId) {
+        for (int from = 0; from < totalChunks; ) {
+            int k = counts[order[from]];
+            int to = bucketStart[k + 1];
+            int chunk = firstWantedIn(k, from, to - from, wanter, source, exclude, wanterId);
+            if (chunk >= 0) return chunk;
+            from = to;
+        }
+        return -1;
+    }
+
+    // First eligible chunk of bucket k in the wanter's rotation of it, or -1
+    private int firstWantedIn(int k, int from, int length, ChunkBitmap wanter, ChunkBitmap source,
+                              ChunkBitmap exclude, int wanterId) {
+        int offset = Math.floorMod(wanterId * 0x9E3779B9, length);
+        // Walking the rotation finds a chunk quickly when many are eligible
+        int steps = Math.min(length, words);
+        for (int j = 0; j < steps; j++) {
+            int candidate = order[from + (offset + j) % length];
+            if (eligible(candidate, wanter, source, exclude)) return candidate;
+        }
+        if (steps == length) return -1;
+
+        // Few are: take the one earliest in the rotation from a pass over the words
+        long[] bits = bucketBits[k];
+        int best = -1;
+        int bestRank = length;
+        for (int w = 0; w < words; w++) {
+            long word = bits[w] & wanter.wantedWord(w, source, exclude);
+            while (word != 0) {
+                int c = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int rank = Math.floorMod(position[c] - from - offset, length);
+                if (rank < bestRank) {
+                    best = c;
+                    bestRank = rank;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the counts together with their sort order. The order depends on the history
+     * of changes and decides rarest-first ties, so it is kept rather than rebuilt.
+     *
+     * @param out Checkpoint being written
+     */
+    void writeTo(CheckpointWriter out) {
+        out.putInt(fullHolders);
+        out.putInts(counts, totalChunks);
+        out.putInts(order, totalChunks);
+        out.putInt(bucketStart.length);
+        out.putInts(bucketStart, bucketStart.length);
+    }
+
+    /**
+     * Replaces the counts with those written by {@link #writeTo}.
+     *
+     * @param in Checkpoint being read
+     */
+    void readFrom(CheckpointReader in) {
+        fullHolders = in.getInt();
+        in.getInts(counts, totalChunks);
+        in.getInts(order, totalChunks);
+        for (int i = 0; i < totalChunks; i++) position[order[i]] = i;
+        bucketStart = new int[in.getInt()];
+        in.getInts(bucketStart, bucketStart.length);
+        bucketBits = new long[bucketStart.length][];
+        spareBits.clear();
+        for (int c = 0; c < totalChunks; c++) bits(counts[c])[c >>> 6] |= 1L << c;
+    }
+
+    private static boolean eligible(int chunk, ChunkBitmap wanter, ChunkBitmap source, ChunkBitmap exclude) {
+        return source.get(chunk) && !wanter.get(chunk) && !exclude.get(chunk);
+    }
+
+    private void swap(int i, int j) {
+        int a = order[i];
+        int b = order[j];
+        order[i] = b;
+        order[j] = a;
+        position[b] = i;
+        position[a] = j;
+    }
+
+    // Moves a chunk between bucket bitmaps after its count changed
+    private void move(int chunk, int from, int to) {
+        long bit = 1L << chunk;
+        bucketBits[from][chunk >>> 6] &= ~bit;
+        if (bucketStart[from] == bucketStart[from + 1]) {
+            spareBits.add(bucketBits[from]); // Every bit is clear again
+            bucketBits[from] = null;
+        }
+        bits(to)[chunk >>> 6] |= bit;
+    }
+
+    // Bitmap of bucket k, taken from the spares if it was empty
+    private long[] bits(int k) {
+        long[] bits = bucketBits[k];
+        if (bits == null) {
+            bits = spareBits.isEmpty() ? new long[words] : spareBits.remove(spareBits.size() - 1);
+            bucketBits[k] = bits;
+        }
+        return bits;
+    }
+
+    private void growBuckets(int minLength) {
+        int oldLength = bucketStart.length;
+        bucketStart = Arrays.copyOf(bucketStart, Math.max(minLength + 1, oldLength * 2));
+        Arrays.fill(bucketStart, oldLength, bucketStart.length, totalChunks);
+        bucketBits = Arrays.copyOf(bucketBits, bucketStart.length);
+    }
+}
@@ -0,0 +1,388 @@
+package org.derekn.p2pSim;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Word-packed bitmap recording which chunks of a file a peer owns.
+ * One bit per chunk keeps memory at totalChunks / 8 bytes per peer, and the
+ * number of set bits is cached so completeness checks are O(1).
+ * Seeders share a single immutable "full" bitmap per chunk count.
+ * <p>
+ * A bitmap normally owns its words, but can be relocated into a region of a larger
+ * array shared with other bitmaps, so that the chunks of a whole swarm are packed
+ * together (see {@link PeerColumns}).
+ */
+public class ChunkBitmap {
+    // Shared immutable full bitmaps, keyed by chunk count
+    private static final ConcurrentHashMap<Integer, ChunkBitmap> FULL_BITMAPS = new ConcurrentHashMap<>();
+
+    private long[] words;           // Packed chunk bits, 64 chunks per word, from base on
+    private int base;              // Index of the first word in words
+    private final int wordLength;  // Number of words
+    private final int totalChunks; // Number of valid bits
+    private final boolean shared;  // True for the immutable full bitmaps
+    private int cardinality;       // Cached count of set bits
+
+    /**
+     * Constructs an empty bitmap for the given number of chunks.
+     *
+     * @param totalChunks Total number of chunks in the file
+     */
+    public ChunkBitmap(int totalChunks) {
+        this(new long[wordCount(totalChunks)], totalChunks, 0, false);
+    }
+
+    private ChunkBitmap(long[] words, int totalChunks, int cardinality, boolean shared) {
+        this.words = words;
+        this.wordLength = words.length;
+        this.totalChunks = totalChunks;
+        this.cardinality = cardinality;
+        this.shared = shared;
+    }
+
+    /**
+     * Returns the shared immutable bitmap with every chunk set.
+     *
+     * @param totalChunks Total number of chunks in the file
+     * @return Full bitmap shared by all seeders with this chunk count
+     */
+    public static ChunkBitmap full(int totalChunks) {
+        return FULL_BITMAPS.computeIfAbsent(totalChunks, n -> {
+            long[] words = new long[wordCount(n)];
+            Arrays.fill(words, -1L);
+            if ((n & 63) != 0) {
+                words[words.length - 1] = (1L << n) - 1; // Clear bits past the last chunk
+            }
+            return new ChunkBitmap(words, n, n, true);
+        });
+    }
+
+    /**
+     * @param totalChunks Number of chunks
+     * @return Number of 64-bit words needed to hold that many bits
+     */
+    static int wordCount(int totalChunks) {
+        return (totalChunks + 63) >>> 6;
+    }
+
+    /**
+     * Checks whether a chunk is present.
+     *
+     * @param chunkIndex Index of the chunk
+     * @return true if the bit is set
+     */
+    public boolean get(int chunkIndex) {
+        if (chunkIndex < 0 || chunkIndex >= totalChunks) return false;
+        return (words[base + (chunkIndex >>> 6)] & (1L << chunkIndex)) != 0;
+    }
+
+    /**
+     * Marks a chunk as present.
+     * Setting a chunk on a shared full bitmap is a no-op since every bit is already set.
+     *
+     * @param chunkIndex Index of the chunk
+     * @return true if the chunk was newly added
+     */
+    public boolean set(int chunkIndex) {
+        if (chunkIndex < 0 || chunkIndex >= totalChunks) {
+            throw new IndexOutOfBoundsException("Chunk " + chunkIndex + " out of range 0.." + (totalChunks - 1));
+        }
+        int w = base + (chunkIndex >>> 6);
+        long mask = 1L << chunkIndex;
+        if ((words[w] & mask) != 0) return false;
+        if (shared) throw new UnsupportedOperationException("Shared full bitmap is immutable");
+
+        words[w] |= mask;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Clears a chunk bit. Only used on scratch bitmaps, never on peer-owned chunk sets.
+     *
+     * @param chunkIndex Index of the chunk
+     */
+    void clear(int chunkIndex) {
+        if (shared) throw new UnsupportedOperationException("Shared full bitmap is immutable");
+        int w = base + (chunkIndex >>> 6);
+        long mask = 1L << chunkIndex;
+        if ((words[w] & mask) != 0) {
+            words[w] &= ~mask;
+            cardinality--;
+        }
+    }
+
+    /**
+     * Adds every chunk of another bitmap. Only used on scratch bitmaps, never on peer-owned
+     * chunk sets.
+     *
+     * @param other Bitmap tracking the same number of chunks
+     */
+    void or(ChunkBitmap other) {
+        if (shared) throw new UnsupportedOperationException("Shared full bitmap is immutable");
+        for (int i = 0; i < wordLength; i++) {
+            long before = words[base + i];
+            long after = before | other.words[other.base + i];
+            if (after != before) {
+                words[base + i] = after;
+                cardinality += Long.bitCount(after) - Long.bitCount(before);
+            }
+        }
+    }
+
+    /**
+     * @return Number of chunks present
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return Total number of chunks this bitmap tracks
+     */
+    public int size() {
+        return totalChunks;
+    }
+
+    /**
+     * @return true if every chunk is present
+     */
+    public boolean isFull() {
+        return cardinality == totalChunks;
+    }
+
+    /**
+     * @return true if this is one of the shared immutable full bitmaps
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Finds the next present chunk at or after the given index.
+     *
+     * @param from Index to start searching from
+     * @return Index of the next set bit, or -1 if none
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) from = 0;
+        if (from >= totalChunks) return -1;
+        int w = from >>> 6;
+        long word = words[base + w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                return index < totalChunks ? index : -1;
+            }
+            if (++w == wordLength) return -1;
+            word = words[base + w];
+        }
+    }
+
+    /**
+     * Finds the next missing chunk at or after the given index.
+     *
+     * @param from Index to start searching from
+     * @return Index of the next clear bit, or -1 if none
+     */
+    public int nextClearBit(int from) {
+        if (from < 0) from = 0;
+        if (from >= totalChunks) return -1;
+        int w = from >>> 6;
+        long word = ~words[base + w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                return index < totalChunks ? index : -1;
+            }
+            if (++w == wordLength) return -1;
+            word = ~words[base + w];
+        }
+    }
+
+    /**
+     * Finds the first chunk at or after the given index that the source has and this
+     * bitmap lacks. Scans a word at a time rather than a chunk at a time.
+     *
+     * @param source Bitmap of the peer offering chunks
+     * @param from   Index to start searching from
+     * @return Index of the first wanted chunk, or -1 if the source has nothing new
+     */
+    public int nextWantedFrom(ChunkBitmap source, int from) {
+        if (from < 0) from = 0;
+        if (from >= totalChunks) return -1;
+        int w = from >>> 6;
+        long word = source.words[source.base + w] & ~words[base + w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                return index < totalChunks ? index : -1;
+            }
+            if (++w == wordLength) return -1;
+            word = source.words[source.base + w] & ~words[base + w];
+        }
+    }
+
+    /**
+     * Finds the first chunk at or after the given index that the source has, this bitmap
+     * lacks, and the exclusion bitmap does not contain.
+     *
+     * @param source  Bitmap of the peer offering chunks
+     * @param exclude Chunks already claimed elsewhere (e.g. earlier in the same tick)
+     * @param from    Index to start searching from
+     * @return Index of the first wanted chunk, or -1 if none
+     */
+    public int nextWantedFrom(ChunkBitmap source, ChunkBitmap exclude, int from) {
+        if (from < 0) from = 0;
+        if (from >= totalChunks) return -1;
+        int w = from >>> 6;
+        long word = source.words[source.base + w] & ~words[base + w] & ~exclude.words[exclude.base + w]
+                & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                return index < totalChunks ? index : -1;
+            }
+            if (++w == wordLength) return -1;
+            word = source.words[source.base + w] & ~words[base + w] & ~exclude.words[exclude.base + w];
+        }
+    }
+
+    /**
+     * Returns one word of the chunks that the source has, this bitmap lacks, and the
+     * exclusion bitmap does not contain, for callers combining it with bitmaps of their own.
+     *
+     * @param word    Word index, below {@link #wordCount} of the chunk count
+     * @param source  Bitmap of the peer offering chunks
+     * @param exclude Chunks already claimed elsewhere
+     * @return Chunks {@code 64 * word} to {@code 64 * word + 63}, lowest bit first
+     */
+    long wantedWord(int word, ChunkBitmap source, ChunkBitmap exclude) {
+        return source.words[source.base + word] & ~words[base + word] & ~exclude.words[exclude.base + word];
+    }
+
+    /**
+     * @return A mutable copy of this bitmap
+     */
+    public ChunkBitmap copy() {
+        return new ChunkBitmap(Arrays.copyOfRange(words, base, base + wordLength), totalChunks, cardinality, false);
+    }
+
+    /**
+     * Moves the bits into a region of a shared array; later changes are made there.
+     *
+     * @param column Array holding the bitmaps of many peers
+     * @param base   Index of the region's first word, at least {@link #wordCount} words long
+     */
+    void relocate(long[] column, int base) {
+        if (shared) throw new UnsupportedOperationException("Shared full bitmap is immutable");
+        System.arraycopy(words, this.base, column, base, wordLength);
+        this.words = column;
+        this.base = base;
+    }
+
+    /**
+     * Moves the bits out of a shared array into an array of their own, so the region can be reused.
+     */
+    void detach() {
+        if (shared) return;
+        words = Arrays.copyOfRange(words, base, base + wordLength);
+        base = 0;
+    }
+
+    /**
+     * Writes this bitmap to a checkpoint; a shared full bitmap takes one byte.
+     *
+     * @param out Checkpoint being written
+     */
+    void writeTo(CheckpointWriter out) {
+        out.putBoolean(shared);
+        if (!shared) out.putLongs(words, base, wordLength);
+    }
+
+    /**
+     * Reads a bitmap written by {@link #writeTo}.
+     *
+     * @param in          Checkpoint being read
+     * @param totalChunks Total number of chunks in the file
+     * @return The bitmap; the shared full bitmap if that is what was written
+     */
+    static ChunkBitmap readFrom(CheckpointReader in, int totalChunks) {
+        if (in.getBoolean()) return full(totalChunks);
+        long[] words = new long[wordCount(totalChunks)];
+        in.getLongs(words);
+        int cardinality = 0;
+        for (long word : words) cardinality += Long.bitCount(word);
+        return new ChunkBitmap(words, totalChunks, cardinality, false);
+    }
+
+    /**
+     * Returns a read-only set view of the present chunks.
+     * The view reflects later changes to the bitmap and allocates nothing up front.
+     *
+     * @return Set view of owned chunk indices
+     */
+    public Set<Integer> asSet() {
+        return new ChunkSetView(false);
+    }
+
+    /**
+     * Returns a read-only set view of the missing chunks.
+     *
+     * @return Set view of missing chunk indices
+     */
+    public Set<Integer> complementView() {
+        return new ChunkSetView(true);
+    }
+
+    /**
+     * Lightweight read-only view over the bitmap, or over its complement.
+     */
+    private class ChunkSetView extends AbstractSet<Integer> {
+        private final boolean complement;
+
+        ChunkSetView(boolean complement) {
+            this.complement = complement;
+        }
+
+        @Override
+        public int size() {
+            return complement ? totalChunks - cardinality : cardinality;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Integer i) || i < 0 || i >= totalChunks) return false;
+            return get(i) != complement;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    return complement ? nextClearBit(from) : nextSetBit(from);
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Integer next() {
+                    if (next < 0) throw new NoSuchElementException();
+                    int current = next;
+                    next = advance(current + 1);
+                    return current;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayDeque;
+
+/**
+ * Tracks whether every chunk can still reach the download target. Without arrivals a
+ * target that lost access to some chunk is unrecoverable the moment it happens instead of
+ * after many idle ticks; with them, an arrival may link it back to a holder.
+ * <p>
+ * Chunks only travel through leechers: seeders never receive and supernodes never hold
+ * anything. The target's relay set is therefore the target plus every leecher linked to it
+ * by a path of leechers, and a chunk is reachable while some member of the relay set or a
+ * neighbour of one holds it. The set is kept as a union of the members' bitmaps and a
+ * count of links from members to full-file holders, both of which only grow on connections
+ * and received chunks, so those are applied incrementally. A departure can split the set
+ * or take chunks with it, which a union cannot undo; it marks the state stale and the next
+ * query rebuilds it with a breadth-first search from the target.
+ * <p>
+ * The search stops as soon as the peers searched so far prove every chunk reachable, and
+ * the members are then just those peers. That is usually a few hops to the nearest full
+ * holder, so most departures under churn are of non-members and leave the proof intact,
+ * and the searches that do run are short. Only a target that cannot be proven served
+ * makes the search cover the whole relay set.
+ */
+final class ChunkReachability {
+    private final PeerNode target;
+    private final int totalChunks;
+    private final IdMap members = new IdMap();            // IDs of the relay set, mapped to 0
+    private final ArrayDeque<PeerNode> frontier = new ArrayDeque<>(); // Search queue, empty between calls
+    private ChunkBitmap covered;  // Chunks held by the relay set and neighbours other than full holders
+    private int fullLinks;        // Links from members to peers holding the whole file
+    private boolean stale = true; // Rebuild before the next query
+    private boolean partial;      // The search stopped early; members only prove reachability
+    private int rebuilds;         // Full searches so far
+
+    /**
+     * @param target      Peer whose download is tracked
+     * @param totalChunks Number of chunks in the file
+     */
+    ChunkReachability(PeerNode target, int totalChunks) {
+        this.target = target;
+        this.totalChunks = totalChunks;
+    }
+
+    /**
+     * @return true if every chunk is held by the target or a peer it can still get it from
+     */
+    boolean allReachable() {
+        if (stale || partial && !proven()) rebuild();
+        return proven();
+    }
+
+    /**
+     * @return Number of chunks no peer within the target's reach holds
+     */
+    int unreachableChunks() {
+        if (stale || partial && !proven()) rebuild();
+        return fullLinks > 0 ? 0 : totalChunks - covered.cardinality();
+    }
+
+    /**
+     * @return Full searches since creation, for diagnostics
+     */
+    int getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * Forces a full search on the next query, after changes not reported here.
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Records a chunk arriving at a peer.
+     *
+     * @param peer  Receiving peer
+     * @param chunk Chunk index
+     */
+    void received(PeerNode peer, int chunk) {
+        if (!stale && members.containsKey(peer.getId())) covered.set(chunk);
+    }
+
+    /**
+     * Records a new connection. Connecting a member to an outside leecher merges that
+     * leecher's whole relay set into the target's, unless reachability is already proven.
+     *
+     * @param a One end
+     * @param b Other end
+     */
+    void connected(PeerNode a, PeerNode b) {
+        if (stale || a == b) return;
+        boolean inA = members.containsKey(a.getId()), inB = members.containsKey(b.getId());
+        if (inA == inB) return;
+        PeerNode outside = inA ? b : a;
+        if (outside instanceof Leecher) {
+            if (!partial) absorb(outside);
+        } else {
+            addSource(outside);
+        }
+    }
+
+    /**
+     * Records a peer about to leave; call before its connections are dropped.
+     *
+     * @param peer Departing peer
+     */
+    void departed(PeerNode peer) {
+        if (stale) return;
+        if (members.containsKey(peer.getId())) {
+            stale = true;
+            return;
+        }
+        if (peer instanceof Leecher) return; // Outside leechers take nothing from the members' union
+        int links = 0;
+        for (NetworkNode neighbor : peer.getConnections()) {
+            if (members.containsKey(neighbor.getId())) links++;
+        }
+        if (links == 0) return;
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        if (chunks.isShared()) {
+            fullLinks -= links;
+        } else if (chunks.cardinality() > 0) {
+            stale = true; // Its chunks are mixed into the union
+        }
+    }
+
+    private boolean proven() {
+        return fullLinks > 0 || covered.isFull();
+    }
+
+    // Searches the relay set from the target until it proves every chunk reachable or runs out
+    private void rebuild() {
+        members.clear();
+        covered = new ChunkBitmap(totalChunks);
+        fullLinks = 0;
+        stale = false;
+        partial = false;
+        rebuilds++;
+        members.put(target.getId(), 0);
+        frontier.add(target);
+        search(true);
+    }
+
+    // Adds a leecher and every leecher reachable from it through non-members
+    private void absorb(PeerNode start) {
+        members.put(start.getId(), 0);
+        frontier.add(start);
+        search(false);
+    }
+
+    // Takes peers off the frontier, adding their chunks and their neighbours
+    private void search(boolean stopWhenProven) {
+        while (!frontier.isEmpty()) {
+            PeerNode peer = frontier.poll();
+            covered.or(peer.getChunkBitmap());
+            for (NetworkNode neighbor : peer.getConnections()) {
+                if (members.containsKey(neighbor.getId())) continue;
+                if (neighbor instanceof Leecher leecher) {
+                    members.put(leecher.getId(), 0);
+                    frontier.add(leecher);
+                } else if (neighbor instanceof PeerNode other) {
+                    addSource(other);
+                }
+            }
+            if (stopWhenProven && proven() && !frontier.isEmpty()) {
+                // Leechers still queued are not part of the proof, so departures skip them
+                while (!frontier.isEmpty()) members.remove(frontier.poll().getId());
+                partial = true;
+            }
+        }
+    }
+
+    // Counts a neighbour that serves chunks but never relays them
+    private void addSource(PeerNode peer) {
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        if (chunks.isShared()) {
+            fullLinks++;
+        } else {
+            covered.or(chunks);
+        }
+    }
+}
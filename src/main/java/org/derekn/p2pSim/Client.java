@@ -13,7 +13,19 @@ public class Client extends Leecher {
      * @param totalChunks Total number of chunks in the file
      */
     public Client(int id, double x, double y, int totalChunks) {
-        super(id, x, y, totalChunks);
+        this(id, x, y, totalChunks, RandomStream.unseeded());
+    }
+
+    /**
+     * Constructs a new Client node using the given bandwidth stream.
+     * @param id Unique identifier
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param totalChunks Total number of chunks in the file
+     * @param bandwidthRng Stream used to randomize speeds
+     */
+    public Client(int id, double x, double y, int totalChunks, RandomStream bandwidthRng) {
+        super(id, x, y, totalChunks, bandwidthRng);
         this.canDisconnect = false;
     }
 
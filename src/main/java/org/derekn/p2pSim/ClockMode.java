@@ -0,0 +1,23 @@
+package org.derekn.p2pSim;
+
+/**
+ * How simulated time advances.
+ */
+public enum ClockMode {
+    /** Every peer is visited once per fixed-length tick. */
+    TICK,
+    /** Time jumps from one scheduled event to the next; idle peers cost nothing. */
+    EVENT;
+
+    /**
+     * @param name "tick" or "event"
+     * @return Matching mode
+     */
+    public static ClockMode parse(String name) {
+        return switch (name) {
+            case "tick" -> TICK;
+            case "event" -> EVENT;
+            default -> throw new IllegalArgumentException("Unknown clock mode: " + name);
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package org.derekn.p2pSim;
+
+/**
+ * Confidence intervals for the outcomes of repeated runs: Student's t interval for a
+ * mean, and the Wilson score interval for a proportion, which stays sensible when no or
+ * every run succeeded. Quantiles are computed with closed-form approximations accurate to
+ * well below the noise of a few dozen runs.
+ */
+final class Confidence {
+    private Confidence() {
+    }
+
+    /**
+     * @param sd         Sample standard deviation
+     * @param n          Sample size, at least 2
+     * @param confidence Confidence level, such as 0.95
+     * @return Half-width of the two-sided t interval for the mean
+     */
+    static double meanHalfWidth(double sd, int n, double confidence) {
+        return studentQuantile((1 + confidence) / 2, n - 1) * sd / Math.sqrt(n);
+    }
+
+    /**
+     * @param successes  Runs with the outcome
+     * @param n          Runs, at least 1
+     * @param confidence Confidence level, such as 0.95
+     * @return Half-width of the Wilson score interval for the proportion
+     */
+    static double proportionHalfWidth(int successes, int n, double confidence) {
+        double z = normalQuantile((1 + confidence) / 2);
+        double p = (double) successes / n;
+        double z2n = z * z / n;
+        return z / (1 + z2n) * Math.sqrt(p * (1 - p) / n + z2n / (4 * n));
+    }
+
+    /**
+     * Inverse of the standard normal distribution (Acklam's rational approximation,
+     * relative error below 1.2e-9).
+     *
+     * @param p Probability in (0, 1)
+     * @return Value below which the probability mass is p
+     */
+    static double normalQuantile(double p) {
+        if (!(p > 0 && p < 1)) throw new IllegalArgumentException("Probability must be in (0, 1): " + p);
+        final double low = 0.02425;
+        if (p < low) return tail(Math.sqrt(-2 * Math.log(p)));
+        if (p > 1 - low) return -tail(Math.sqrt(-2 * Math.log(1 - p)));
+        double q = p - 0.5, r = q * q;
+        return (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r
+                + 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q
+                / (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r
+                + 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+    }
+
+    /**
+     * Inverse of Student's t distribution, by the Cornish-Fisher expansion around the
+     * normal quantile; within 1% from 2 degrees of freedom up.
+     *
+     * @param p  Probability in (0, 1)
+     * @param df Degrees of freedom, at least 1
+     * @return Value below which the probability mass is p
+     */
+    static double studentQuantile(double p, int df) {
+        double z = normalQuantile(p);
+        double z2 = z * z, z3 = z2 * z, z5 = z3 * z2, z7 = z5 * z2, z9 = z7 * z2;
+        double v = df;
+        return z + (z3 + z) / (4 * v)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v)
+                + (79 * z9 + 776 * z7 + 1482 * z5 - 1920 * z3 - 945 * z) / (92160 * v * v * v * v);
+    }
+
+    // Lower tail of the normal quantile, for q = sqrt(-2 ln p)
+    private static double tail(double q) {
+        return (((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q
+                - 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00)
+                / ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q
+                + 3.754408661907416e+00) * q + 1);
+    }
+}
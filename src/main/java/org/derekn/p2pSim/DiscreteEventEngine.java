@@ -0,0 +1,330 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event-driven clock for {@link SimulationController}. Instead of visiting every peer on
+ * every tick, simulated time jumps straight to the next scheduled event:
+ * <ul>
+ *   <li>TRANSFER_COMPLETE at the moment a transfer's last byte arrives at its current rate;</li>
+ *   <li>PEER_JOIN and PEER_LEAVE as Poisson arrivals matching the tick model's churn rates;
+ *       under session churn the controller applies arrivals and departures at each tick
+ *       boundary instead, through {@link #joined} and {@link #leave};</li>
+ *   <li>RECHOKE, a periodic sweep that starts a transfer on every idle connection.</li>
+ * </ul>
+ * Between sweeps, new transfers are started only where something changed: when a chunk
+ * arrives, its receiver asks the same sender for another chunk and its neighbours may ask
+ * the receiver for the new one; a joining peer asks its new neighbours; and receivers of a
+ * departing peer re-ask their remaining neighbours. Peers with nothing happening cost nothing.
+ * <p>
+ * Transfer bytes are settled lazily. After a change the bandwidth engine reallocates only
+ * the affected link groups, and any transfer whose rate changed gets a new completion event;
+ * its previous event becomes stale through the transfer's version. With a rate quantum of
+ * zero, rates are recomputed after every batch of simultaneous events, which is exact. In a
+ * busy, well-connected swarm every link group spans most of the swarm, so a small positive
+ * quantum batches the reallocations: changes within the quantum share one reallocation, and
+ * new transfers wait at most that long for their first rate.
+ */
+class DiscreteEventEngine {
+    private final SimulationController controller;
+    private final BandwidthTransferEngine bandwidth;
+    private final TransferPlanner planner;
+    private final ChunkAvailability selection; // Counts for rarest-first, or null for sequential
+    private final EventQueue queue;
+    private final RandomStream churnRng;
+    private final double joinRate;  // Mean arrivals per tick
+    private final double leaveRate; // Mean departures per tick
+    private final double tickSeconds;
+    private final double rechokeSeconds;
+    private final double rateQuantum; // Longest delay before changed rates are recomputed
+    private final ChunkBitmap pending; // Scratch: chunks in flight to the peer being scheduled
+
+    private double now;  // Current simulated time in seconds
+    private long seq;    // Sequence number of the next scheduled event
+    private long processed; // Events handled so far, including stale ones
+    private double reallocateAt = Double.POSITIVE_INFINITY; // When pending rate changes are applied
+
+    /**
+     * @param controller     Controller owning the swarm
+     * @param bandwidth      Transfer engine moving the bytes
+     * @param planner        Planner used for the periodic full sweep
+     * @param selection      Chunk counts for rarest-first, or null for sequential selection
+     * @param queue          Pending-event set
+     * @param churnRng       Stream for arrival and departure times
+     * @param joinRate       Mean arrivals per tick, as in the tick model
+     * @param leaveRate      Mean departures per tick, as in the tick model
+     * @param totalChunks    Total number of chunks in the file
+     * @param tickSeconds    Length of one tick, which sets the churn rates
+     * @param rechokeSeconds Interval between full sweeps
+     * @param rateQuantum    Longest delay in seconds before changed rates are recomputed; 0 is exact
+     */
+    DiscreteEventEngine(SimulationController controller, BandwidthTransferEngine bandwidth,
+                        TransferPlanner planner, ChunkAvailability selection, EventQueue queue,
+                        RandomStream churnRng, double joinRate, double leaveRate, int totalChunks,
+                        double tickSeconds, double rechokeSeconds, double rateQuantum) {
+        this.controller = controller;
+        this.bandwidth = bandwidth;
+        this.planner = planner;
+        this.selection = selection;
+        this.queue = queue;
+        this.churnRng = churnRng;
+        this.joinRate = joinRate;
+        this.leaveRate = leaveRate;
+        this.tickSeconds = tickSeconds;
+        this.rechokeSeconds = rechokeSeconds;
+        this.rateQuantum = rateQuantum;
+        this.pending = new ChunkBitmap(totalChunks);
+    }
+
+    /**
+     * Schedules the first rechoke sweep and the first arrival and departure of a new run.
+     */
+    void scheduleInitialEvents() {
+        schedule(0, SimEvent.Type.RECHOKE, null, 0);
+        scheduleChurn(SimEvent.Type.PEER_LEAVE, leaveRate);
+        scheduleChurn(SimEvent.Type.PEER_JOIN, joinRate);
+    }
+
+    /**
+     * Writes the clock and every pending event. Completion events refer to transfers by
+     * their position in the bandwidth engine; stale ones whose transfer has already ended
+     * are kept, marked with -1, so the restored run processes the same event count.
+     *
+     * @param out Checkpoint being written
+     */
+    void writeTo(CheckpointWriter out) {
+        out.putDouble(now);
+        out.putLong(seq);
+        out.putLong(processed);
+        out.putDouble(reallocateAt);
+
+        // Drain the queue in order and put every event back; ordering is by time and sequence only
+        List<SimEvent> drained = new ArrayList<>(queue.size());
+        for (SimEvent event = queue.poll(); event != null; event = queue.poll()) drained.add(event);
+        out.putInt(drained.size());
+        for (SimEvent event : drained) {
+            out.putDouble(event.time);
+            out.putLong(event.seq);
+            out.putByte(event.type.ordinal());
+            out.putInt(event.transfer == null ? -1 : event.transfer.engineIndex);
+            out.putInt(event.version);
+            queue.add(event);
+        }
+    }
+
+    /**
+     * Restores the state written by {@link #writeTo} into an engine with an empty queue.
+     * The bandwidth engine's transfers must already be restored.
+     *
+     * @param in        Checkpoint being read
+     * @param transfers In-flight transfers, in the order they were written
+     */
+    void readFrom(CheckpointReader in, List<Transfer> transfers) {
+        now = in.getDouble();
+        seq = in.getLong();
+        processed = in.getLong();
+        reallocateAt = in.getDouble();
+
+        Transfer ended = new Transfer(null, null); // Stands in for transfers of stale events
+        SimEvent.Type[] types = SimEvent.Type.values();
+        for (int k = in.getInt(); k > 0; k--) {
+            double time = in.getDouble();
+            long eventSeq = in.getLong();
+            SimEvent.Type type = types[in.getByte()];
+            int index = in.getInt();
+            int version = in.getInt();
+            Transfer transfer = type != SimEvent.Type.TRANSFER_COMPLETE ? null
+                    : index >= 0 ? transfers.get(index) : ended;
+            queue.add(new SimEvent(time, eventSeq, type, transfer, version));
+        }
+    }
+
+    /**
+     * Processes every event due up to the given time, then moves the clock there.
+     *
+     * @param until Simulated time in seconds
+     */
+    void runUntil(double until) {
+        while (true) {
+            SimEvent event = queue.peek();
+            double next = event == null ? Double.POSITIVE_INFINITY : event.time;
+
+            // Apply pending rate changes once every event before their due time is handled
+            if (reallocateAt < next && reallocateAt <= until) {
+                now = Math.max(now, reallocateAt);
+                reallocate();
+                continue;
+            }
+            if (next > until) break;
+
+            queue.poll();
+            now = event.time;
+            processed++;
+            handle(event);
+            if (reallocateAt == Double.POSITIVE_INFINITY && bandwidth.hasPendingChanges()) {
+                reallocateAt = now + rateQuantum;
+            }
+        }
+        if (until > now) now = until;
+    }
+
+    /**
+     * @return Current simulated time in seconds
+     */
+    double now() {
+        return now;
+    }
+
+    /**
+     * @return Number of events processed so far
+     */
+    long getProcessedCount() {
+        return processed;
+    }
+
+    /**
+     * @return Number of events waiting in the queue, including stale completions
+     */
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    private void handle(SimEvent event) {
+        switch (event.type) {
+            case TRANSFER_COMPLETE -> complete(event);
+            case PEER_JOIN -> {
+                joined(controller.addRandomLeecher());
+                scheduleChurn(SimEvent.Type.PEER_JOIN, joinRate);
+            }
+            case PEER_LEAVE -> {
+                PeerNode leaving = controller.pickDepartingPeer();
+                if (leaving != null) leave(leaving);
+                scheduleChurn(SimEvent.Type.PEER_LEAVE, leaveRate);
+            }
+            case RECHOKE -> {
+                rechoke();
+                schedule(now + rechokeSeconds, SimEvent.Type.RECHOKE, null, 0);
+            }
+        }
+    }
+
+    private void complete(SimEvent event) {
+        Transfer t = event.transfer;
+        if (event.version != t.version || t.engineIndex < 0) return; // Rescheduled or cancelled
+
+        bandwidth.finish(t, now);
+        PeerNode receiver = t.getReceiver();
+        PeerNode sender = t.getSender();
+        boolean fresh = !receiver.hasChunk(t.getChunk());
+        controller.commitTransfer(t);
+
+        trySchedule(receiver, sender);
+        if (!fresh) return;
+
+        // Neighbours lacking the new chunk may now fetch it from the receiver
+        for (NetworkNode neighbor : receiver.getConnections()) {
+            if (neighbor instanceof Leecher other && !other.hasChunk(t.getChunk())) {
+                trySchedule(other, receiver);
+            }
+        }
+    }
+
+    /**
+     * Starts transfers for a peer that just joined and is connected: it asks its neighbours
+     * for chunks, and if it brought chunks, its neighbours ask it.
+     *
+     * @param joined New peer
+     */
+    void joined(PeerNode joined) {
+        for (NetworkNode neighbor : joined.getConnections()) {
+            if (neighbor instanceof PeerNode sender) trySchedule(joined, sender);
+        }
+        if (joined.getOwnedChunkCount() == 0) return;
+        for (NetworkNode neighbor : joined.getConnections()) {
+            if (neighbor instanceof Leecher receiver) trySchedule(receiver, joined);
+        }
+    }
+
+    /**
+     * Removes a departing peer through the controller and lets the receivers it served look
+     * elsewhere.
+     *
+     * @param leaving Peer leaving the swarm
+     */
+    void leave(PeerNode leaving) {
+        // Receivers served by the departing peer lose those transfers and look elsewhere
+        List<PeerNode> served = new ArrayList<>();
+        for (Transfer t : bandwidth.transfersOf(leaving)) {
+            if (t.getSender() == leaving) served.add(t.getReceiver());
+        }
+        controller.departPeer(leaving);
+
+        for (PeerNode receiver : served) {
+            for (NetworkNode neighbor : receiver.getConnections()) {
+                if (neighbor instanceof PeerNode sender) trySchedule(receiver, sender);
+            }
+        }
+    }
+
+    // Full sweep over the swarm, as one tick of the bandwidth model would do
+    private void rechoke() {
+        List<PeerNode> peers = controller.getPeers();
+        planner.plan(peers);
+        for (int i = 0; i < peers.size(); i++) {
+            PeerNode receiver = peers.get(i);
+            for (int k = 0; k < planner.countFor(i); k++) {
+                start(planner.senderAt(i, k), receiver, planner.chunkAt(i, k));
+            }
+        }
+        planner.release();
+    }
+
+    /**
+     * Starts a transfer from sender to receiver if they are connected, the sender is not
+     * already serving the receiver, and the sender has a chunk the receiver still needs.
+     */
+    private void trySchedule(PeerNode receiver, PeerNode sender) {
+        if (!(receiver instanceof Leecher leecher) || receiver.hasCompleteFile()) return;
+        if (!receiver.isConnectedTo(sender.getId())) return;
+
+        List<Transfer> inFlight = receiver.getActiveTransfers();
+        for (Transfer t : inFlight) {
+            if (t.getSender() == sender) return;
+        }
+
+        for (Transfer t : inFlight) pending.set(t.getChunk());
+        int chunk = leecher.selectChunkFrom(sender, pending, selection);
+        for (Transfer t : inFlight) pending.clear(t.getChunk());
+
+        if (chunk >= 0) start(sender, receiver, chunk);
+    }
+
+    private void start(PeerNode sender, PeerNode receiver, int chunk) {
+        bandwidth.start(new Transfer(sender, receiver, chunk, controller.getChunkBytes(chunk)), now);
+    }
+
+    // Reallocates rates and reschedules every transfer whose completion time moved
+    private void reallocate() {
+        reallocateAt = Double.POSITIVE_INFINITY;
+        bandwidth.reallocateAt(now, t -> {
+            t.version++;
+            double at = t.completionTime(now);
+            if (at != Double.POSITIVE_INFINITY) schedule(at, SimEvent.Type.TRANSFER_COMPLETE, t, t.version);
+        });
+    }
+
+    private void schedule(double time, SimEvent.Type type, Transfer transfer, int version) {
+        queue.add(new SimEvent(time, seq++, type, transfer, version));
+    }
+
+    // Schedules the next arrival or departure; a rate of zero turns that kind of churn off
+    private void scheduleChurn(SimEvent.Type type, double ratePerTick) {
+        if (ratePerTick > 0) schedule(now + nextArrival(ratePerTick), type, null, 0);
+    }
+
+    // Exponential gap until the next arrival of a Poisson process with the given per-tick rate
+    private double nextArrival(double ratePerTick) {
+        return -Math.log(1 - churnRng.nextDouble()) * tickSeconds / ratePerTick;
+    }
+}
@@ -0,0 +1,119 @@
+package org.derekn.p2pSim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Growable list of undirected edges between peer positions, stored as two int arrays.
+ * Topology generators fill edge lists, possibly in parallel, and then apply them
+ * to the peers in a fixed order.
+ */
+public class EdgeList {
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int size;
+
+    /**
+     * Generates edges for a range of peer positions.
+     */
+    @FunctionalInterface
+    public interface BlockGenerator {
+        /**
+         * @param start First peer position of the block
+         * @param end   End of the block (exclusive)
+         * @param rng   Stream owned by this block
+         * @param out   List to append edges to
+         */
+        void generate(int start, int end, RandomStream rng, EdgeList out);
+    }
+
+    /**
+     * Appends an edge.
+     *
+     * @param u Position of one endpoint
+     * @param v Position of the other endpoint
+     */
+    public void add(int u, int v) {
+        if (size == from.length) {
+            from = Arrays.copyOf(from, size * 2);
+            to = Arrays.copyOf(to, size * 2);
+        }
+        from[size] = u;
+        to[size] = v;
+        size++;
+    }
+
+    /**
+     * @return Number of edges
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Connects the peers for every edge, in insertion order.
+     *
+     * @param peers Peers indexed by position
+     */
+    public void applyTo(List<PeerNode> peers) {
+        for (int i = 0; i < size; i++) {
+            peers.get(from[i]).connectTo(peers.get(to[i]));
+        }
+    }
+
+    /**
+     * Splits {@code [0, n)} into fixed-size blocks, each with its own stream split from
+     * {@code rng}, generates them (in parallel if a pool is given) and applies the edges
+     * in block order. Block boundaries do not depend on the pool, so results are identical
+     * for any thread count.
+     *
+     * @param peers     Peers indexed by position
+     * @param blockSize Number of positions per block
+     * @param rng       Parent stream to split block streams from
+     * @param pool      Pool to run blocks on, or null for the calling thread
+     * @param generator Edge generator for one block
+     */
+    public static void generateBlocks(List<PeerNode> peers, int blockSize, RandomStream rng,
+                                      ForkJoinPool pool, BlockGenerator generator) {
+        int n = peers.size();
+        int blocks = (n + blockSize - 1) / blockSize;
+        EdgeList[] results = new EdgeList[blocks];
+        RandomStream[] streams = new RandomStream[blocks];
+        for (int b = 0; b < blocks; b++) {
+            streams[b] = rng.split();
+            results[b] = new EdgeList();
+        }
+
+        if (pool == null || blocks <= 1) {
+            for (int b = 0; b < blocks; b++) {
+                generator.generate(b * blockSize, Math.min(n, (b + 1) * blockSize), streams[b], results[b]);
+            }
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<RecursiveAction> tasks = new ArrayList<>(blocks);
+                    for (int b = 0; b < blocks; b++) {
+                        int block = b;
+                        tasks.add(new RecursiveAction() {
+                            @Override
+                            protected void compute() {
+                                generator.generate(block * blockSize, Math.min(n, (block + 1) * blockSize),
+                                        streams[block], results[block]);
+                            }
+                        });
+                    }
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        }
+
+        for (EdgeList edges : results) {
+            edges.applyTo(peers);
+        }
+    }
+}
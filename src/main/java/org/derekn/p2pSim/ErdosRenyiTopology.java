@@ -0,0 +1,75 @@
+package org.derekn.p2pSim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Erdős–Rényi G(n, p) random graph: each pair of peers is connected independently
+ * with probability p. Instead of flipping a coin for every pair, the gap to the next
+ * connected pair is drawn from a geometric distribution (Batagelj–Brandes), so
+ * generation takes O(n + edges) time.
+ */
+public class ErdosRenyiTopology implements TopologyGenerator {
+    public static final double DEFAULT_MEAN_DEGREE = 8;
+    private static final double MAX_PROBABILITY = 0.36; // Density of the original per-pair 20% coin flips
+    private static final int BLOCK_SIZE = 4096;         // Rows per parallel block
+
+    private final double probability;  // Fixed edge probability, or NaN when derived from mean degree
+    private final double meanDegree;   // Target mean degree when probability is NaN
+
+    /**
+     * Constructs a generator with a fixed edge probability.
+     *
+     * @param probability Probability that any pair of peers is connected
+     */
+    public ErdosRenyiTopology(double probability) {
+        this(probability, Double.NaN);
+    }
+
+    private ErdosRenyiTopology(double probability, double meanDegree) {
+        this.probability = probability;
+        this.meanDegree = meanDegree;
+    }
+
+    /**
+     * Constructs a generator whose edge probability is chosen per swarm so that peers
+     * average the given degree. Small swarms are capped at the original density.
+     *
+     * @param meanDegree Target average number of connections per peer
+     * @return Generator
+     */
+    public static ErdosRenyiTopology withMeanDegree(double meanDegree) {
+        return new ErdosRenyiTopology(Double.NaN, meanDegree);
+    }
+
+    /**
+     * @param n Number of peers
+     * @return Edge probability used for a swarm of that size
+     */
+    public double probabilityFor(int n) {
+        if (!Double.isNaN(probability)) return probability;
+        return n <= 1 ? 0 : Math.min(MAX_PROBABILITY, meanDegree / (n - 1));
+    }
+
+    @Override
+    public void connect(List<PeerNode> peers, RandomStream rng, ForkJoinPool pool) {
+        double p = probabilityFor(peers.size());
+        if (p <= 0) return;
+        double logQ = Math.log1p(-p);
+
+        EdgeList.generateBlocks(peers, BLOCK_SIZE, rng, pool, (start, end, blockRng, out) -> {
+            // Walk pairs (v, w) with w < v row by row, skipping geometric gaps
+            int v = Math.max(start, 1);
+            long w = -1;
+            while (v < end) {
+                double r = blockRng.nextDouble();
+                w += 1 + (long) Math.floor(Math.log1p(-r) / logQ);
+                while (w >= v && v < end) {
+                    w -= v;
+                    v++;
+                }
+                if (v < end) out.add(v, (int) w);
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package org.derekn.p2pSim;
+
+/**
+ * Kinds of simulation event that can be written to the {@link EventLog}.
+ * Categories are enabled individually through a bitmask.
+ */
+public enum EventCategory {
+    /** A peer joined the swarm, including the initial peers. */
+    JOIN,
+    /** A peer left the swarm. */
+    LEAVE,
+    /** A chunk finished arriving at a peer. */
+    TRANSFER,
+    /** The download target completed the file. */
+    COMPLETE,
+    /** Per-tick state of the download target; verbose, for debugging stalls. */
+    TARGET;
+
+    /** Mask with every category enabled. */
+    public static final int ALL = (1 << values().length) - 1;
+
+    /**
+     * @return Bit of this category in a category mask
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Parses a category mask. {@code true} or {@code all} enables every category,
+     * {@code false} or {@code none} disables logging, and otherwise the value is a
+     * comma-separated list of category names, e.g. {@code join,leave,complete}.
+     *
+     * @param value Mask description
+     * @return Category mask
+     */
+    public static int parseMask(String value) {
+        switch (value) {
+            case "true", "all" -> {
+                return ALL;
+            }
+            case "false", "none", "" -> {
+                return 0;
+            }
+        }
+        int mask = 0;
+        for (String name : value.split(",")) {
+            mask |= parse(name.trim()).bit();
+        }
+        return mask;
+    }
+
+    /**
+     * @param name "join", "leave", "transfer", "complete" or "target"
+     * @return Matching category
+     */
+    public static EventCategory parse(String name) {
+        return switch (name) {
+            case "join" -> JOIN;
+            case "leave" -> LEAVE;
+            case "transfer" -> TRANSFER;
+            case "complete" -> COMPLETE;
+            case "target" -> TARGET;
+            default -> throw new IllegalArgumentException("Unknown log category: " + name);
+        };
+    }
+}
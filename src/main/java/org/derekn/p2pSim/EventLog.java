@@ -0,0 +1,222 @@
+package org.derekn.p2pSim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured simulation event sink that keeps console and disk I/O off the tick loop.
+ * <p>
+ * Events are recorded as primitive fields into a preallocated ring buffer and formatted
+ * as {@code key=value} lines by a background writer thread, which writes them in batches
+ * and flushes whenever it catches up. Each {@link EventCategory} is enabled separately; a
+ * disabled category costs one mask test and records nothing, and call sites guard any
+ * work needed to compute an event's fields with {@link #isEnabled}.
+ * <p>
+ * The buffer has a single producer: events must be logged from one thread at a time,
+ * which is the thread advancing the simulation. When the buffer is full the producer
+ * waits for the writer rather than dropping events, so a log is always complete.
+ */
+public class EventLog implements AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1 << 16;                         // Events, a power of two
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);   // Writer poll interval when idle
+    private static final long FULL_PARK_NS = TimeUnit.MICROSECONDS.toNanos(50);  // Producer wait when full
+    private static final EventLog DISABLED = new EventLog(0, null, false, 1);
+
+    // Field names per category, or null where the category does not use the field
+    private static final String[] NAMES = {"join", "leave", "transfer", "complete", "target"};
+    private static final String[] OTHER_KEYS = {null, null, "from", null, "neighbors"};
+    private static final String[] VALUE_KEYS = {null, null, "chunk", null, "missing"};
+    private static final String[] LABEL_KEYS = {"type", null, null, null, null};
+
+    private final int mask;           // Enabled categories
+    private final int capacityMask;
+
+    // Ring buffer, one slot per event
+    private final byte[] categories;
+    private final int[] ticks;
+    private final int[] peers;
+    private final int[] others;
+    private final long[] values;
+    private final String[] labels;    // Constant strings only, so logging never allocates
+
+    private final AtomicLong head = new AtomicLong(); // Next slot to fill; advanced by the producer
+    private final AtomicLong tail = new AtomicLong(); // Next slot to write; advanced by the writer
+    private final Writer out;
+    private final boolean closeOut;   // Whether closing the log closes the output
+    private final Thread writer;      // Null when disabled
+    private volatile boolean closed;
+    private volatile IOException failure; // First write error; later events are discarded
+    private long producerWaits;       // Times the producer found the buffer full
+
+    private EventLog(int mask, Writer out, boolean closeOut, int capacity) {
+        this.mask = mask;
+        this.capacityMask = capacity - 1;
+        this.categories = new byte[capacity];
+        this.ticks = new int[capacity];
+        this.peers = new int[capacity];
+        this.others = new int[capacity];
+        this.values = new long[capacity];
+        this.labels = new String[capacity];
+        this.out = out;
+        this.closeOut = closeOut;
+        if (mask == 0) {
+            this.writer = null;
+        } else {
+            this.writer = new Thread(this::drain, "event-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Opens a log for the given categories.
+     *
+     * @param mask Enabled categories, see {@link EventCategory#parseMask}
+     * @param file File to write, replacing its contents; null writes to standard output
+     * @return The log; a shared no-op log if the mask is 0
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public static EventLog open(int mask, Path file) {
+        if (mask == 0) return DISABLED;
+        if (file == null) {
+            return new EventLog(mask, new BufferedWriter(new OutputStreamWriter(System.out)), false, DEFAULT_CAPACITY);
+        }
+        try {
+            return new EventLog(mask, Files.newBufferedWriter(file), true, DEFAULT_CAPACITY);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open event log " + file, e);
+        }
+    }
+
+    /**
+     * @return Log that records nothing
+     */
+    public static EventLog disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @param category Event category
+     * @return true if events of that category are recorded
+     */
+    public boolean isEnabled(EventCategory category) {
+        return (mask & category.bit()) != 0;
+    }
+
+    /**
+     * Records an event if its category is enabled.
+     *
+     * @param category Event category
+     * @param tick     Tick at which the event happened
+     * @param peer     Peer the event is about
+     * @param other    Second peer or count, depending on the category
+     * @param value    Chunk or count, depending on the category
+     * @param label    Constant string such as a node type, or null
+     */
+    public void log(EventCategory category, int tick, int peer, int other, long value, String label) {
+        if ((mask & category.bit()) == 0) return;
+
+        long h = head.get();
+        while (h - tail.get() > capacityMask) {
+            producerWaits++;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NS);
+        }
+        int slot = (int) h & capacityMask;
+        categories[slot] = (byte) category.ordinal();
+        ticks[slot] = tick;
+        peers[slot] = peer;
+        others[slot] = other;
+        values[slot] = value;
+        labels[slot] = label;
+        head.lazySet(h + 1); // Publishes the slot to the writer
+    }
+
+    /**
+     * @return Number of times logging had to wait for the writer to free space
+     */
+    public long getProducerWaits() {
+        return producerWaits;
+    }
+
+    /**
+     * Writes every recorded event and stops the writer thread. Closes the output if the
+     * log opened it, otherwise flushes it.
+     *
+     * @throws UncheckedIOException if writing the log failed
+     */
+    @Override
+    public void close() {
+        if (writer == null || closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (closeOut) out.close();
+            else out.flush();
+        } catch (IOException e) {
+            if (failure == null) failure = e;
+        }
+        if (failure != null) throw new UncheckedIOException("Event log write failed", failure);
+    }
+
+    // Writer thread: formats and writes events until closed and drained
+    private void drain() {
+        StringBuilder line = new StringBuilder(128);
+        while (true) {
+            long t = tail.get();
+            long h = head.get();
+            if (t == h) {
+                if (closed) {
+                    if (head.get() == t) break; // Nothing was added after close
+                    continue;
+                }
+                flush();
+                LockSupport.parkNanos(this, IDLE_PARK_NS);
+                continue;
+            }
+            for (; t < h; t++) {
+                if (failure == null) write(line, (int) t & capacityMask);
+            }
+            tail.lazySet(h); // Frees the slots for the producer
+        }
+    }
+
+    private void write(StringBuilder line, int slot) {
+        int category = categories[slot];
+        line.setLength(0);
+        line.append("tick=").append(ticks[slot])
+                .append(" event=").append(NAMES[category])
+                .append(" peer=").append(peers[slot]);
+        if (OTHER_KEYS[category] != null) line.append(' ').append(OTHER_KEYS[category]).append('=').append(others[slot]);
+        if (VALUE_KEYS[category] != null) line.append(' ').append(VALUE_KEYS[category]).append('=').append(values[slot]);
+        if (LABEL_KEYS[category] != null) line.append(' ').append(LABEL_KEYS[category]).append('=').append(labels[slot]);
+        line.append('\n');
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void flush() {
+        if (failure != null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+}
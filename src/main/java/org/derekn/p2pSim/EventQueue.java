@@ -0,0 +1,47 @@
+package org.derekn.p2pSim;
+
+/**
+ * Pending-event set for the discrete-event engine, ordered by time then sequence.
+ */
+public interface EventQueue {
+    /**
+     * @param event Event to schedule
+     */
+    void add(SimEvent event);
+
+    /**
+     * Removes and returns the earliest event.
+     *
+     * @return Earliest event, or null if empty
+     */
+    SimEvent poll();
+
+    /**
+     * @return Earliest event without removing it, or null if empty
+     */
+    SimEvent peek();
+
+    /**
+     * @return Number of pending events
+     */
+    int size();
+
+    /**
+     * @return true if no events are pending
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param name "calendar" or "heap"
+     * @return New empty queue of that kind
+     */
+    static EventQueue create(String name) {
+        return switch (name) {
+            case "calendar" -> new CalendarQueue();
+            case "heap" -> new HeapEventQueue();
+            default -> throw new IllegalArgumentException("Unknown event queue: " + name);
+        };
+    }
+}
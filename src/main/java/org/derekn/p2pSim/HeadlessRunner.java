@@ -0,0 +1,176 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Headless entry point that runs a simulation without JavaFX as fast as the CPU allows.
+ * Parameters come from {@code --key=value} arguments or a {@code --config} properties file,
+ * and a JSON summary is printed when the run ends. With {@code --metrics} a second JSON line
+ * follows with activity counters and latency percentiles of each tick phase.
+ * <p>
+ * {@code --checkpoint=path} saves the final state of the run, and {@code --restore=path}
+ * continues from a saved state instead of building a new swarm; {@code --max-ticks} then
+ * still counts from the start of the original run. {@code --trace=path} records the run for
+ * replay in the GUI, with a keyframe every {@code --trace-keyframes} ticks. {@code --file=path}
+ * splits a real file into pieces of {@code --chunk-size} and hashes them, and the run uses
+ * those pieces as its chunks; with {@code --transfer-model=live} they are then really sent
+ * between the peers over loopback, and a last JSON line compares each peer's measured speeds
+ * with its modelled ones.
+ * <p>
+ * Example: {@code java -cp p2p-sim.jar org.derekn.p2pSim.HeadlessRunner --peers=5000 --chunks=200}
+ */
+public class HeadlessRunner {
+    public static void main(String[] args) {
+        SimulationConfig config;
+        try {
+            config = SimulationConfig.fromArgs(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: HeadlessRunner [--config=file] [--peers=N] [--chunks=N] "
+                    + "[--max-ticks=N] [--threads=N] [--peer-store=objects|columnar] [--seed=N] "
+                    + "[--seeder-ratio=0.3] [--join-rate=0.1] [--leave-rate=0.05] "
+                    + "[--arrivals=rates|poisson:R|flash:R:PEAK:AT:DECAY|diurnal:R:AMP:PERIOD[:PEAK]] "
+                    + "[--session=pareto:1.5:40] [--linger=exp:60] [--join-seeder-ratio=0] "
+                    + "[--join-supernode-ratio=0] [--join-degree=3] "
+                    + "[--topology=er:8|ba:3|ws:6:0.1|regular:6] [--selection=rarest|sequential] "
+                    + "[--transfer-model=instant|bandwidth|live] [--chunk-size=1MB] [--file-size=B] [--tick-ms=N] "
+                    + "[--clock=tick|event] [--event-queue=calendar|heap] [--rechoke-ms=N] [--rate-quantum-ms=N] "
+                    + "[--log[=all|join,leave,transfer,complete,target]] [--log-file=path] [--metrics] "
+                    + "[--file=path] [--restore=path] [--checkpoint=path] [--trace=path] [--trace-keyframes=N]");
+            System.exit(2);
+            return;
+        }
+
+        SimulationController controller;
+        try {
+            controller = createController(config);
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            System.err.println("Cannot create simulation: " + e);
+            System.exit(1);
+            return;
+        }
+        RunResult result;
+        try {
+            result = run(controller, config.getMaxTicks());
+            if (config.getCheckpointFile() != null) controller.saveCheckpoint(config.getCheckpointFile());
+        } catch (IOException e) {
+            System.err.println("Cannot write checkpoint " + config.getCheckpointFile() + ": " + e);
+            System.exit(1);
+            return;
+        } finally {
+            controller.close();
+        }
+        System.out.println(result.toJson());
+        if (config.isMetricsReported()) {
+            System.out.println(controller.getMetrics().toJson(controller.getTotalBytesTransferred()));
+        }
+        if (controller.getLoopback() != null) System.out.println(controller.getLoopback().toJson());
+    }
+
+    /**
+     * Builds a controller from the configuration and runs it to completion.
+     *
+     * @param config Simulation parameters
+     * @return Outcome and timing of the run
+     * @throws IOException if the configuration names a checkpoint that cannot be read
+     */
+    public static RunResult run(SimulationConfig config) throws IOException {
+        return run(config, () -> false);
+    }
+
+    /**
+     * Builds a controller from the configuration and runs it until it completes or is cancelled.
+     *
+     * @param config    Simulation parameters
+     * @param cancelled Polled before every tick; the run is abandoned once it returns true
+     * @return Outcome and timing of the run
+     * @throws IOException if the configuration names a checkpoint that cannot be read
+     * @throws CancellationException if the run was cancelled
+     */
+    public static RunResult run(SimulationConfig config, BooleanSupplier cancelled) throws IOException {
+        SimulationController controller = createController(config);
+        try {
+            return run(controller, config.getMaxTicks(), cancelled);
+        } finally {
+            controller.close();
+        }
+    }
+
+    /**
+     * Builds a new swarm, or restores one if the configuration names a checkpoint. A
+     * configured source file is hashed first and its pieces become the chunks.
+     *
+     * @param config Simulation parameters
+     * @return Controller ready to run
+     * @throws IOException if the checkpoint or the source file cannot be read
+     */
+    public static SimulationController createController(SimulationConfig config) throws IOException {
+        if (config.getSourceFile() != null && config.getManifest() == null) {
+            config.setManifest(new PieceHasher(config.getSourceFile(), config.getChunkSizeBytes())
+                    .hash(config.getParallelism()));
+        }
+        if (config.getRestoreFile() == null) return new SimulationController(config);
+        SimulationController controller = SimulationController.restore(config.getRestoreFile(), config);
+        if (config.getTransferModel() == TransferModel.LIVE && config.getManifest() == null) {
+            controller.close();
+            throw new IllegalArgumentException("Live transfers need a --file to send");
+        }
+        return controller;
+    }
+
+    /**
+     * Ticks a controller back-to-back until the download completes, stalls,
+     * or the tick limit is reached.
+     *
+     * @param controller Controller to run
+     * @param maxTicks   Maximum number of ticks to execute
+     * @return Outcome and timing of the run
+     */
+    public static RunResult run(SimulationController controller, int maxTicks) {
+        return run(controller, maxTicks, () -> false);
+    }
+
+    /**
+     * Ticks a controller back-to-back until the download completes, stalls, the tick limit
+     * is reached or the run is cancelled.
+     *
+     * @param controller Controller to run
+     * @param maxTicks   Maximum number of ticks to execute
+     * @param cancelled  Polled before every tick; the run is abandoned once it returns true
+     * @return Outcome and timing of the run
+     * @throws CancellationException if the run was cancelled
+     */
+    public static RunResult run(SimulationController controller, int maxTicks, BooleanSupplier cancelled) {
+        controller.startSimulation();
+
+        boolean stalled = false;
+        long peerTicks = 0;
+        long start = System.nanoTime();
+
+        while (controller.isRunning() && controller.getTickCount() < maxTicks) {
+            if (cancelled.getAsBoolean()) {
+                controller.stopSimulation();
+                throw new CancellationException("Run cancelled at tick " + controller.getTickCount());
+            }
+            peerTicks += controller.getPeers().size();
+            controller.tick();
+
+            if (controller.isRunning() && controller.downloadFailed()) {
+                stalled = true;
+                controller.stopSimulation();
+            }
+        }
+
+        long wallNanos = System.nanoTime() - start;
+        controller.stopSimulation();
+
+        PeerNode target = controller.getDownloadTarget();
+        return new RunResult(controller.getTickCount(), target.hasCompleteFile(), stalled, wallNanos,
+                peerTicks, controller.getPeers().size(), target.getOwnedChunkCount(),
+                target.getChunkBitmap().size(), controller.getSeed(),
+                controller.getTotalBytesTransferred(),
+                controller.getTickCount() * controller.getTickDurationMs());
+    }
+}
@@ -0,0 +1,30 @@
+package org.derekn.p2pSim;
+
+import java.util.PriorityQueue;
+
+/**
+ * Binary-heap event queue with O(log n) insertion and removal.
+ */
+public class HeapEventQueue implements EventQueue {
+    private final PriorityQueue<SimEvent> heap = new PriorityQueue<>();
+
+    @Override
+    public void add(SimEvent event) {
+        heap.add(event);
+    }
+
+    @Override
+    public SimEvent poll() {
+        return heap.poll();
+    }
+
+    @Override
+    public SimEvent peek() {
+        return heap.peek();
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+}
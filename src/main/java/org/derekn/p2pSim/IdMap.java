@@ -0,0 +1,144 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from peer IDs to non-negative ints. Peer IDs are never reused, so
+ * under churn they grow without bound while the live peers stay few; a table indexed by
+ * ID would grow with the largest ID ever issued, whereas this one stays proportional to
+ * the entries present, shrinking as they are removed. Linear probing keeps lookups to a
+ * couple of adjacent reads, and removal shifts entries back instead of leaving tombstones.
+ */
+final class IdMap {
+    private static final int MIN_CAPACITY = 16;
+    private static final int EMPTY = -1; // Key of an unused entry; peer IDs are never negative
+
+    private int[] keys = emptyKeys(MIN_CAPACITY);
+    private int[] values = new int[MIN_CAPACITY];
+    private int size;
+
+    /**
+     * @param id Peer ID
+     * @return Value stored for the ID, or -1 if there is none
+     */
+    int get(int id) {
+        int slot = find(id);
+        return slot < 0 ? -1 : values[slot];
+    }
+
+    /**
+     * @param id Peer ID
+     * @return true if a value is stored for the ID
+     */
+    boolean containsKey(int id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Stores a value for an ID, replacing any value it had.
+     *
+     * @param id    Peer ID, not negative
+     * @param value Value to store, not negative
+     */
+    void put(int id, int value) {
+        if (id < 0) throw new IllegalArgumentException("Negative peer ID: " + id);
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = value;
+        if (++size * 2 > keys.length) resize(keys.length * 2);
+    }
+
+    /**
+     * @param id Peer ID
+     * @return true if the ID had a value
+     */
+    boolean remove(int id) {
+        int hole = find(id);
+        if (hole < 0) return false;
+        // Backward-shift deletion: move back every entry whose home does not lie cyclically in (hole, slot]
+        int mask = keys.length - 1;
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (keys[slot] == EMPTY) break;
+            int home = hash(keys[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = EMPTY;
+        if (--size * 8 < keys.length && keys.length > MIN_CAPACITY) resize(keys.length / 2);
+        return true;
+    }
+
+    /**
+     * Removes every entry, keeping the capacity.
+     */
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * @return Number of IDs with a value
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Every ID with a value, in no particular order
+     */
+    int[] keys() {
+        int[] ids = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) ids[n++] = key;
+        }
+        return ids;
+    }
+
+    // Linear-probe lookup; returns the slot holding the ID or -1
+    private int find(int id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(id) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) return slot;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = emptyKeys(capacity);
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int[] emptyKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int hash(int id) {
+        return id * 0x9E3779B9 ^ (id >>> 16);
+    }
+}
@@ -0,0 +1,102 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of durations in nanoseconds.
+ * <p>
+ * Values are bucketed by their power of two, and each power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so any recorded value is reported within about
+ * 6% of its true value across the whole range of a {@code long}. Recording is a few integer
+ * operations on a preallocated array, cheap enough to wrap every phase of every tick.
+ * <p>
+ * A histogram has a single writer. Other threads may read it while it is written; they
+ * see a slightly stale but usable picture.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * Adds one value.
+     *
+     * @param nanos Duration; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[indexOf(v)]++;
+        count++;
+        sum += v;
+        if (v > max) max = v;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Sum of all recorded values
+     */
+    public long getTotal() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return Mean of all recorded values, or 0 if none were recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values fall.
+     *
+     * @param percentile Percentage in [0, 100]
+     * @return Upper bound of the bucket holding that rank, capped at the maximum; 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    // Values below SUB_BUCKETS map to themselves; larger ones to (power, top bits below the leading one)
+    private static int indexOf(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        int sub = (int) (v >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -13,7 +13,19 @@ public class Leecher extends PeerNode {
      * @param totalChunks Total number of chunks in the file
      */
     public Leecher(int id, double x, double y, int totalChunks) {
-        super(id, x, y, totalChunks);
+        this(id, x, y, totalChunks, RandomStream.unseeded());
+    }
+
+    /**
+     * Constructs a new Leecher using the given bandwidth stream.
+     * @param id Unique identifier
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @param totalChunks Total number of chunks in the file
+     * @param bandwidthRng Stream used to randomize speeds
+     */
+    public Leecher(int id, double x, double y, int totalChunks, RandomStream bandwidthRng) {
+        super(id, x, y, totalChunks, bandwidthRng);
     }
 
     /**
@@ -29,12 +41,36 @@ public class Leecher extends PeerNode {
      * @return true if a chunk was downloaded, false otherwise
      */
     public boolean downloadFrom(PeerNode peer) {
-        for (int chunk : peer.getOwnedChunks()) {
-            if (!this.ownedChunks.contains(chunk)) {
-                this.receiveChunk(chunk);
-                return true; // One chunk per tick
-            }
-        }
-        return false;
+        int chunk = ownedChunks.nextWantedFrom(peer.getChunkBitmap(), 0);
+        if (chunk < 0) return false;
+
+        this.receiveChunk(chunk); // One chunk per tick
+        return true;
+    }
+
+    /**
+     * Chooses the chunk this leecher would download from the given peer without
+     * changing any state. Safe to call concurrently while no peer is being modified.
+     *
+     * @param peer    Source peer node
+     * @param pending Chunks already selected by this leecher in the current tick
+     * @return Index of the chosen chunk, or -1 if the peer has nothing useful
+     */
+    public int selectChunkFrom(PeerNode peer, ChunkBitmap pending) {
+        return ownedChunks.nextWantedFrom(peer.getChunkBitmap(), pending, 0);
+    }
+
+    /**
+     * Chooses the rarest chunk in the swarm that the given peer can provide,
+     * without changing any state.
+     *
+     * @param peer         Source peer node
+     * @param pending      Chunks already selected by this leecher in the current tick
+     * @param availability Swarm-wide chunk counts, or null for sequential selection
+     * @return Index of the chosen chunk, or -1 if the peer has nothing useful
+     */
+    public int selectChunkFrom(PeerNode peer, ChunkBitmap pending, ChunkAvailability availability) {
+        if (availability == null) return selectChunkFrom(peer, pending);
+        return availability.rarestWanted(ownedChunks, peer.getChunkBitmap(), pending, id);
     }
 }
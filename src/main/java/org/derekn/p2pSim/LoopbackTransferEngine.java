@@ -0,0 +1,487 @@
+package org.derekn.p2pSim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Live transfer model: moves every chunk the planner selects as real bytes between the
+ * peers over loopback TCP, and measures how fast that actually goes.
+ * <p>
+ * A peer gets a listening socket on 127.0.0.1 the first time it is asked for a chunk. The
+ * chunks are the pieces of the file described by a {@link PieceManifest}, and a peer serves
+ * a piece straight from that file with {@link FileChannel#transferTo}, so the bytes go from
+ * the page cache to the socket without passing through the heap; every peer's copy of the
+ * file is the source file itself. The receiver hashes what arrives and only keeps the chunk
+ * if it matches the manifest. Accept loops, server connections and fetches each run on a
+ * virtual thread with plain blocking I/O.
+ * <p>
+ * Connections between a pair of peers are kept open and reused, up to
+ * {@value #MAX_IDLE_CONNECTIONS} idle ones, and at most {@value #MAX_IN_FLIGHT} fetches run at
+ * once, which bounds the sockets in use. Each peer also holds a listening socket while it
+ * serves, so the swarm size is limited by the process's file descriptor limit.
+ * <p>
+ * For every peer the engine records the bytes it received and sent, the time it was busy
+ * doing so and the latency from request to first byte, so the modelled upload and download
+ * speeds can be compared with what one machine really achieves. Apart from the endpoints,
+ * the engine is used by the thread advancing the simulation.
+ */
+public class LoopbackTransferEngine implements AutoCloseable {
+    private static final int MAX_IN_FLIGHT = 256;          // Fetches running at once
+    private static final int MAX_IDLE_CONNECTIONS = 512;   // Open connections kept between fetches
+    private static final int BUFFER_BYTES = 64 * 1024;     // Receive buffer of one fetch
+    private static final long NO_CHUNK = -1;               // Reply length for a chunk the peer does not have
+
+    private final PieceManifest manifest;
+    private final FileChannel source;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final BlockingQueue<Lane> lanes = new ArrayBlockingQueue<>(MAX_IN_FLIGHT); // Free buffers and digests
+    private final Map<Integer, Endpoint> endpoints = new HashMap<>();  // Listening peers by ID
+    private final LinkedHashMap<Long, SocketChannel> idle = new LinkedHashMap<>(64, 0.75f, true); // By pair; guarded by itself
+
+    // Measurements; written by the simulation thread only
+    private final Map<Integer, PeerStats> stats = new HashMap<>(); // By peer ID, kept after peers leave
+    private final LatencyHistogram latency = new LatencyHistogram(); // Request to first byte, all fetches
+    private long transfers;
+    private long failures;
+    private long bytes;
+    private long wallNanos; // Time spent moving chunks, summed over ticks
+    private int round;      // Number of batches moved so far
+
+    /**
+     * @param manifest Pieces the chunks stand for
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    LoopbackTransferEngine(PieceManifest manifest) {
+        this.manifest = manifest;
+        try {
+            this.source = FileChannel.open(manifest.getFile(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + manifest.getFile(), e);
+        }
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) lanes.add(new Lane());
+    }
+
+    /**
+     * Sends every transfer of a plan over loopback and waits until all have finished.
+     *
+     * @param peers   Live peers, in the slot order the plan refers to
+     * @param planner Plan of the current tick
+     * @return For each planned transfer, in slot order and then plan order, whether the
+     *         chunk arrived intact
+     */
+    boolean[] transfer(PeerRegistry peers, TransferPlanner planner) {
+        long start = System.nanoTime();
+        List<Fetch> fetches = new ArrayList<>();
+        for (int i = 0; i < peers.size(); i++) {
+            PeerNode receiver = peers.get(i);
+            for (int k = 0; k < planner.countFor(i); k++) {
+                PeerNode sender = planner.senderAt(i, k);
+                fetches.add(new Fetch(receiver, sender, planner.chunkAt(i, k), endpoint(sender).address));
+            }
+        }
+
+        List<Future<?>> running = new ArrayList<>(fetches.size());
+        for (Fetch fetch : fetches) running.add(threads.submit(fetch));
+        try {
+            for (Future<?> f : running) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while moving chunks", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Chunk fetch failed", e.getCause());
+        }
+        wallNanos += System.nanoTime() - start;
+
+        round++;
+        boolean[] delivered = new boolean[fetches.size()];
+        for (int n = 0; n < fetches.size(); n++) {
+            Fetch fetch = fetches.get(n);
+            delivered[n] = fetch.ok;
+            PeerStats receiver = statsOf(fetch.receiver);
+            if (!fetch.ok) {
+                failures++;
+                receiver.failures++;
+                continue;
+            }
+            long size = manifest.getPieceBytes(fetch.chunk);
+            transfers++;
+            bytes += size;
+            latency.record(fetch.firstByte - fetch.start);
+            receiver.latency.record(fetch.firstByte - fetch.start);
+            receiver.download.add(round, fetch.start, fetch.end, size);
+            statsOf(fetch.sender).upload.add(round, fetch.start, fetch.end, size);
+        }
+        return delivered;
+    }
+
+    /**
+     * Closes a departing peer's endpoint and every connection to or from it.
+     *
+     * @param peer Peer leaving the swarm
+     */
+    void remove(PeerNode peer) {
+        Endpoint endpoint = endpoints.remove(peer.getId());
+        if (endpoint != null) endpoint.close();
+        synchronized (idle) {
+            Iterator<Map.Entry<Long, SocketChannel>> it = idle.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, SocketChannel> e = it.next();
+                long key = e.getKey();
+                if ((int) (key >>> 32) == peer.getId() || (int) key == peer.getId()) {
+                    closeQuietly(e.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Chunks delivered intact so far
+     */
+    public long getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * @return Fetches that failed or delivered bytes not matching the manifest
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return Bytes delivered intact so far
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Summarizes the measurements as JSON: swarm-wide throughput and latency percentiles,
+     * then each peer's measured upload and download speed next to its modelled one. The
+     * {@code uploadScale} and {@code downloadScale} fields are the medians of measured over
+     * modelled speed, the factors that would bring the model in line with this machine.
+     *
+     * @return Single-line JSON object
+     */
+    public String toJson() {
+        List<PeerStats> peers = new ArrayList<>(stats.values());
+        peers.sort(Comparator.comparingInt(p -> p.id));
+        List<Double> uploadRatios = new ArrayList<>();
+        List<Double> downloadRatios = new ArrayList<>();
+        for (PeerStats p : peers) {
+            if (p.upload.bytes > 0) uploadRatios.add(p.upload.kbPerSecond() / p.uploadSpeed);
+            if (p.download.bytes > 0) downloadRatios.add(p.download.kbPerSecond() / p.downloadSpeed);
+        }
+
+        StringBuilder json = new StringBuilder(256 + 160 * peers.size());
+        json.append(String.format(Locale.ROOT,
+                "{\"live\":{\"transfers\":%d,\"failures\":%d,\"bytes\":%d,\"throughputMBps\":%.1f,"
+                        + "\"latencyUs\":{\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"max\":%.1f},"
+                        + "\"uploadScale\":%.2f,\"downloadScale\":%.2f,\"peers\":[",
+                transfers, failures, bytes, wallNanos == 0 ? 0 : bytes * 1e9 / wallNanos / Constants.MB,
+                latency.getPercentile(50) / 1e3, latency.getPercentile(90) / 1e3,
+                latency.getPercentile(99) / 1e3, latency.getMax() / 1e3,
+                median(uploadRatios), median(downloadRatios)));
+        for (int n = 0; n < peers.size(); n++) {
+            PeerStats p = peers.get(n);
+            if (n > 0) json.append(',');
+            json.append(String.format(Locale.ROOT,
+                    "{\"id\":%d,\"type\":\"%s\",\"uploadKBps\":%.1f,\"measuredUploadKBps\":%.1f,"
+                            + "\"downloadKBps\":%.1f,\"measuredDownloadKBps\":%.1f,\"p50Us\":%.1f,\"p99Us\":%.1f,"
+                            + "\"failures\":%d}",
+                    p.id, p.type, p.uploadSpeed, p.upload.kbPerSecond(), p.downloadSpeed, p.download.kbPerSecond(),
+                    p.latency.getPercentile(50) / 1e3, p.latency.getPercentile(99) / 1e3, p.failures));
+        }
+        return json.append("]}}").toString();
+    }
+
+    /**
+     * Closes every endpoint and connection and the source file.
+     */
+    @Override
+    public void close() {
+        for (Endpoint endpoint : endpoints.values()) endpoint.close();
+        endpoints.clear();
+        synchronized (idle) {
+            for (SocketChannel channel : idle.values()) closeQuietly(channel);
+            idle.clear();
+        }
+        threads.close(); // Waits for the accept and serve loops to see their sockets closed
+        try {
+            source.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close " + manifest.getFile(), e);
+        }
+    }
+
+    // Endpoint of a peer, opened the first time it is asked for a chunk
+    private Endpoint endpoint(PeerNode peer) {
+        Endpoint endpoint = endpoints.get(peer.getId());
+        if (endpoint == null) {
+            try {
+                endpoint = new Endpoint(peer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open an endpoint for peer " + peer.getId(), e);
+            }
+            endpoints.put(peer.getId(), endpoint);
+        }
+        return endpoint;
+    }
+
+    private PeerStats statsOf(PeerNode peer) {
+        return stats.computeIfAbsent(peer.getId(), id -> new PeerStats(peer));
+    }
+
+    private static long pairKey(int receiverId, int senderId) {
+        return (long) receiverId << 32 | (senderId & 0xFFFFFFFFL);
+    }
+
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) return 0;
+        Collections.sort(values);
+        int mid = values.size() / 2;
+        return values.size() % 2 == 1 ? values.get(mid) : (values.get(mid - 1) + values.get(mid)) / 2;
+    }
+
+    private static void closeQuietly(AutoCloseable channel) {
+        try {
+            channel.close();
+        } catch (Exception e) {
+            // Already broken; nothing left to release
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Connection closed");
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * A peer's listening socket and the connections it accepted. Each connection answers
+     * requests of {@code [chunk:int]} with {@code [length:long]} followed by the piece,
+     * or a length of {@value #NO_CHUNK} if the peer does not have it.
+     */
+    private final class Endpoint {
+        private final PeerNode peer;
+        private final ServerSocketChannel server;
+        private final InetSocketAddress address;
+        private final Set<SocketChannel> accepted = ConcurrentHashMap.newKeySet();
+
+        Endpoint(PeerNode peer) throws IOException {
+            this.peer = peer;
+            this.server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.address = (InetSocketAddress) server.getLocalAddress();
+            threads.submit(this::accept);
+        }
+
+        private void accept() {
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (IOException e) {
+                    return; // Closed because the peer left
+                }
+                accepted.add(channel);
+                threads.submit(() -> serve(channel));
+            }
+        }
+
+        private void serve(SocketChannel channel) {
+            ByteBuffer request = ByteBuffer.allocate(4);
+            ByteBuffer reply = ByteBuffer.allocate(8);
+            try (channel) {
+                while (true) {
+                    request.clear();
+                    if (channel.read(request) < 0) return; // Receiver closed the connection
+                    readFully(channel, request);
+                    int chunk = request.getInt(0);
+                    // Requests only arrive while the simulation thread waits for them, so the chunks hold still
+                    long length = chunk >= 0 && chunk < manifest.getPieceCount() && peer.hasChunk(chunk)
+                            ? manifest.getPieceBytes(chunk) : NO_CHUNK;
+                    writeFully(channel, reply.clear().putLong(length).flip());
+                    if (length == NO_CHUNK) continue;
+
+                    long position = chunk * manifest.getPieceSize();
+                    for (long sent = 0; sent < length; ) {
+                        sent += source.transferTo(position + sent, length - sent, channel);
+                    }
+                }
+            } catch (IOException e) {
+                // Connection reset or endpoint closed; the receiver sees a failed fetch
+            } finally {
+                accepted.remove(channel);
+            }
+        }
+
+        void close() {
+            closeQuietly(server);
+            for (SocketChannel channel : accepted) closeQuietly(channel);
+        }
+    }
+
+    /**
+     * One chunk moving from a sender to a receiver, run on its own virtual thread.
+     */
+    private final class Fetch implements Runnable {
+        final PeerNode receiver;
+        final PeerNode sender;
+        final int chunk;
+        final InetSocketAddress address;
+        long start;     // Request about to be sent, including connecting if needed
+        long firstByte; // Reply header received
+        long end;       // Last byte received and hashed
+        boolean ok;     // Arrived intact
+
+        Fetch(PeerNode receiver, PeerNode sender, int chunk, InetSocketAddress address) {
+            this.receiver = receiver;
+            this.sender = sender;
+            this.chunk = chunk;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            Lane lane;
+            try {
+                lane = lanes.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long key = pairKey(receiver.getId(), sender.getId());
+            SocketChannel channel;
+            synchronized (idle) {
+                channel = idle.remove(key);
+            }
+            try {
+                start = System.nanoTime();
+                if (channel == null) channel = SocketChannel.open(address);
+                ok = fetch(channel, lane);
+                end = System.nanoTime();
+                if (ok) release(key, channel);
+                else closeQuietly(channel);
+            } catch (IOException e) {
+                if (channel != null) closeQuietly(channel);
+            } finally {
+                lanes.add(lane);
+            }
+        }
+
+        private boolean fetch(SocketChannel channel, Lane lane) throws IOException {
+            writeFully(channel, lane.buffer.clear().putInt(chunk).flip());
+            readFully(channel, lane.buffer.clear().limit(8));
+            firstByte = System.nanoTime();
+            long length = lane.buffer.getLong(0);
+            if (length != manifest.getPieceBytes(chunk)) return false;
+
+            lane.digest.reset();
+            for (long left = length; left > 0; ) {
+                lane.buffer.clear().limit((int) Math.min(lane.buffer.capacity(), left));
+                readFully(channel, lane.buffer);
+                left -= lane.buffer.flip().remaining();
+                lane.digest.update(lane.buffer);
+            }
+            return manifest.matches(chunk, lane.digest.digest());
+        }
+
+        // Keeps a working connection for the next chunk between the same peers
+        private void release(long key, SocketChannel channel) {
+            SocketChannel evicted = null;
+            synchronized (idle) {
+                idle.put(key, channel);
+                if (idle.size() > MAX_IDLE_CONNECTIONS) {
+                    Iterator<SocketChannel> eldest = idle.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+            }
+            if (evicted != null) closeQuietly(evicted);
+        }
+    }
+
+    /**
+     * Receive buffer and digest of one running fetch.
+     */
+    private static final class Lane {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final MessageDigest digest;
+
+        Lane() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    }
+
+    /**
+     * What one peer achieved over loopback.
+     */
+    private static final class PeerStats {
+        final int id;
+        final String type;
+        final double uploadSpeed;   // Modelled, in KB/s
+        final double downloadSpeed; // Modelled, in KB/s
+        final Activity upload = new Activity();
+        final Activity download = new Activity();
+        final LatencyHistogram latency = new LatencyHistogram(); // Of fetches the peer made
+        long failures;
+
+        PeerStats(PeerNode peer) {
+            this.id = peer.getId();
+            this.type = peer.getNodeType();
+            this.uploadSpeed = peer.getUploadSpeed();
+            this.downloadSpeed = peer.getDownloadSpeed();
+        }
+    }
+
+    /**
+     * Bytes moved in one direction and the time spent moving them. Transfers of the same
+     * batch overlap, so a batch counts from its first start to its last end rather than
+     * the sum of its transfers.
+     */
+    private static final class Activity {
+        long bytes;
+        long busyNanos; // Closed batches
+        int round;      // Batch of the open interval, 0 if none
+        long first;
+        long last;
+
+        void add(int batch, long start, long end, long size) {
+            bytes += size;
+            if (batch != round) {
+                busyNanos += last - first;
+                round = batch;
+                first = start;
+                last = end;
+            } else {
+                first = Math.min(first, start);
+                last = Math.max(last, end);
+            }
+        }
+
+        double kbPerSecond() {
+            long nanos = busyNanos + last - first;
+            return nanos == 0 ? 0 : bytes / 1024.0 / (nanos / 1e9);
+        }
+    }
+}
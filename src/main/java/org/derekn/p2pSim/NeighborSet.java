@@ -0,0 +1,109 @@
+package org.derekn.p2pSim;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Adjacency set of a node keyed by primitive peer IDs.
+ * Neighbours are kept densely packed for fast iteration, and an {@link IdMap} from
+ * ID to position gives O(1) membership tests, insertion and swap-removal.
+ * Exposed to callers as a read-only list of neighbouring nodes.
+ */
+public class NeighborSet extends AbstractList<NetworkNode> implements RandomAccess {
+    private static final int LINEAR_SCAN_LIMIT = 8; // Below this size the ID array is scanned directly
+
+    private NetworkNode[] nodes = new NetworkNode[4]; // Dense neighbour references
+    private int[] ids = new int[4];                   // Dense neighbour IDs, parallel to nodes
+    private int size;
+    private IdMap index;                              // ID -> position; null while small
+
+    /**
+     * @param id Peer ID
+     * @return true if the peer with this ID is a neighbour
+     */
+    public boolean containsId(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof NetworkNode node && indexOf(node.getId()) >= 0;
+    }
+
+    /**
+     * @param i Position in the set
+     * @return ID of the neighbour at that position
+     */
+    public int idAt(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i);
+        return ids[i];
+    }
+
+    @Override
+    public NetworkNode get(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i);
+        return nodes[i];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a neighbour if not already present.
+     *
+     * @param node Node to add
+     * @return true if the node was added
+     */
+    boolean addNode(NetworkNode node) {
+        int id = node.getId();
+        if (indexOf(id) >= 0) return false;
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        ids[size] = id;
+        nodes[size] = node;
+        size++;
+
+        if (index != null) {
+            index.put(id, size - 1);
+        } else if (size > LINEAR_SCAN_LIMIT) {
+            index = new IdMap();
+            for (int i = 0; i < size; i++) index.put(ids[i], i);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a neighbour by ID, moving the last neighbour into its position.
+     *
+     * @param id Peer ID to remove
+     * @return true if the neighbour was present
+     */
+    boolean removeId(int id) {
+        int pos = indexOf(id);
+        if (pos < 0) return false;
+
+        int last = --size;
+        if (index != null) index.remove(id);
+        if (pos != last) {
+            ids[pos] = ids[last];
+            nodes[pos] = nodes[last];
+            if (index != null) index.put(ids[pos], pos);
+        }
+        nodes[last] = null;
+        return true;
+    }
+
+    private int indexOf(int id) {
+        if (index != null) return index.get(id);
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) return i;
+        }
+        return -1;
+    }
+}
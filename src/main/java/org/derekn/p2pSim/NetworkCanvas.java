@@ -0,0 +1,392 @@
+package org.derekn.p2pSim;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.util.Arrays;
+
+/**
+ * Immediate-mode renderer that draws the swarm onto a single {@link Canvas}.
+ * <p>
+ * The canvas draws a {@link RenderSnapshot} published by the simulation thread, so it never
+ * reads the live model. What it draws depends on how much of the swarm the {@link Viewport}
+ * shows. The snapshot's {@link SpatialGrid} limits every pass to the grid cells on screen,
+ * so the cost of a frame follows what is visible rather than the size of the swarm:
+ * <ul>
+ *   <li>Zoomed in, individual peers are drawn in a few batched passes: the visible nodes'
+ *       edges as one stroked path, nodes grouped by type so the fill colour changes only
+ *       once per type, and labels in a single text pass.</li>
+ *   <li>Zoomed out past {@link #DETAIL_LIMIT} visible peers, the swarm is drawn as density
+ *       tiles coloured by the average progress of their peers, and connections are bundled
+ *       into one line per pair of coarse regions, weighted by how many edges it carries.</li>
+ * </ul>
+ * It redraws only when given a newer snapshot, after a resize or when the viewport moves,
+ * and drawing allocates nothing in steady state. Moving transfers are drawn on a
+ * {@link TransferLayer} stacked above it, so animating them never redraws the swarm.
+ */
+public class NetworkCanvas extends Canvas {
+    private static final Color[] TYPE_COLORS = { // Indexed by RenderSnapshot node type
+            Color.PINK, Color.LIME, Color.ROYALBLUE, Color.GOLD, Color.GRAY
+    };
+    private static final double[] TYPE_RADII = {12, 10, 8, 14, 6};
+    private static final double MAX_RADIUS = 14;
+    private static final double MIN_NODE_SCALE = 0.25;  // Nodes shrink when zoomed out, down to this factor
+    private static final double LABEL_MIN_SCALE = 0.75; // Below this node scale labels no longer fit
+    private static final Color EDGE_COLOR = Color.web("#777777");
+    private static final Font LABEL_FONT = Font.font(10);
+    private static final Font OVERLAY_FONT = Font.font("monospace", 14);
+    private static final int LABEL_LIMIT = 20_000;  // Above this many visible nodes labels are skipped
+    static final int DETAIL_LIMIT = 50_000;         // Above this many visible nodes density tiles are drawn
+
+    // Density tiles and edge bundles
+    private static final double TILE_PIXELS = 6;   // Minimum tile size on screen
+    private static final int DENSITY_LEVELS = 16;
+    private static final int PROGRESS_LEVELS = 8;
+    private static final Color[] TILE_COLORS = tileColors();     // [progress * DENSITY_LEVELS + density]
+    private static final Color[] BUNDLE_COLORS = bundleColors(); // By density level
+
+    private final Viewport viewport;
+    private long drawnVersion = -1;               // Version of the snapshot on screen
+    private long drawnRevision = -1;              // Viewport revision on screen
+    private boolean dirty = true;                 // Redraw even if nothing else changed
+    private boolean detailed = true;              // Whether individual peers are on screen
+    private String overlaySource;                 // Report text the overlay lines were split from
+    private String[] overlayLines;                // Report lines drawn on top, or null
+    private String[] countLabels = new String[0]; // Cached chunk-count strings
+
+    // Scratch buffers reused across frames
+    private int[] visible = new int[256];         // Visible node indices, grouped by type
+    private int[] candidates = new int[256];
+    private final int[] typeStart = new int[RenderSnapshot.TYPE_COUNT + 1];
+    private final int[] typeNext = new int[RenderSnapshot.TYPE_COUNT];
+    private int[] tileCount = new int[64];
+    private double[] tileProgress = new double[64];
+    private final LatencyHistogram drawTimes = new LatencyHistogram(); // FX thread only
+    private final byte[] bundleLevels = new byte[SpatialGrid.REGION_COUNT * SpatialGrid.REGION_COUNT]; // -1 for no bundle
+
+    /**
+     * @param viewport Zoom and pan state to draw with
+     */
+    public NetworkCanvas(Viewport viewport) {
+        this.viewport = viewport;
+        widthProperty().addListener((obs, oldVal, newVal) -> dirty = true);
+        heightProperty().addListener((obs, oldVal, newVal) -> dirty = true);
+    }
+
+    /**
+     * Draws the snapshot unless it is already on screen and nothing else changed.
+     *
+     * @param snapshot Latest snapshot
+     */
+    public void render(RenderSnapshot snapshot) {
+        if (!dirty && snapshot.getVersion() == drawnVersion && viewport.getRevision() == drawnRevision) return;
+        dirty = false;
+        drawnVersion = snapshot.getVersion();
+        drawnRevision = viewport.getRevision();
+
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        draw(snapshot);
+        drawTimes.record(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = snapshot.getVersion();
+            event.nodes = snapshot.getNodeCount();
+            event.detailed = detailed;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return Time taken by each redraw; read on the FX thread
+     */
+    public LatencyHistogram getDrawTimes() {
+        return drawTimes;
+    }
+
+    /**
+     * Forces the next {@link #render} to redraw, e.g. when a new run starts.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * @return true if the last frame drew individual peers, false if it drew density tiles
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    private void draw(RenderSnapshot s) {
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, getWidth(), getHeight());
+
+        // Visible layout rectangle, widened so nodes straddling the border are kept
+        double scale = viewport.getScale();
+        double nodeScale = Math.max(MIN_NODE_SCALE, Math.min(1, scale));
+        double margin = MAX_RADIUS * nodeScale / scale;
+        double minX = viewport.toLayoutX(0) - margin;
+        double minY = viewport.toLayoutY(0) - margin;
+        double maxX = viewport.toLayoutX(getWidth()) + margin;
+        double maxY = viewport.toLayoutY(getHeight()) + margin;
+
+        SpatialGrid grid = s.grid;
+        int c0 = grid.column(minX), c1 = grid.column(maxX);
+        int r0 = grid.row(minY), r1 = grid.row(maxY);
+
+        // Nodes in the visible cells; each row of cells is one contiguous range of the index
+        int inCells = 0;
+        for (int r = r0; r <= r1; r++) {
+            inCells += grid.cellStart[r * grid.columns + c1 + 1] - grid.cellStart[r * grid.columns + c0];
+        }
+        detailed = inCells <= DETAIL_LIMIT;
+
+        if (detailed) {
+            drawPeers(gc, s, c0, c1, r0, r1, minX, minY, maxX, maxY, nodeScale);
+        } else {
+            drawBundles(gc, grid);
+            drawTiles(gc, grid, c0, c1, r0, r1);
+            drawTarget(gc, s);
+        }
+        drawOverlay(gc, s);
+    }
+
+    /**
+     * Detail level: edges, nodes and labels of the peers inside the visible rectangle.
+     */
+    private void drawPeers(GraphicsContext gc, RenderSnapshot s, int c0, int c1, int r0, int r1,
+                           double minX, double minY, double maxX, double maxY, double nodeScale) {
+        double[] nodeX = s.nodeX;
+        double[] nodeY = s.nodeY;
+        SpatialGrid grid = s.grid;
+
+        // Collect visible nodes, then group them by type
+        int count = 0;
+        Arrays.fill(typeStart, 0);
+        for (int r = r0; r <= r1; r++) {
+            int from = grid.cellStart[r * grid.columns + c0];
+            int to = grid.cellStart[r * grid.columns + c1 + 1];
+            if (candidates.length < count + to - from) candidates = Arrays.copyOf(candidates, Math.max(count + to - from, candidates.length * 2));
+            for (int j = from; j < to; j++) {
+                int i = grid.cellNodes[j];
+                if (nodeX[i] >= minX && nodeX[i] <= maxX && nodeY[i] >= minY && nodeY[i] <= maxY) {
+                    candidates[count++] = i;
+                    typeStart[s.nodeType[i] + 1]++;
+                }
+            }
+        }
+        if (visible.length < count) visible = new int[Math.max(count, visible.length * 2)];
+        for (int t = 0; t < RenderSnapshot.TYPE_COUNT; t++) typeStart[t + 1] += typeStart[t];
+        System.arraycopy(typeStart, 0, typeNext, 0, RenderSnapshot.TYPE_COUNT);
+        for (int k = 0; k < count; k++) visible[typeNext[s.nodeType[candidates[k]]]++] = candidates[k];
+
+        // Pass 1: edges of the visible nodes as a single path. An edge between two visible
+        // nodes is drawn from its lower end only; edges with both ends off screen are culled.
+        int[] adjStart = s.adjStart;
+        int[] adjacent = s.adjacent;
+        gc.setStroke(EDGE_COLOR);
+        gc.setLineWidth(1.0);
+        gc.beginPath();
+        for (int k = 0; k < count; k++) {
+            int i = visible[k];
+            double sx = viewport.toScreenX(nodeX[i]);
+            double sy = viewport.toScreenY(nodeY[i]);
+            for (int e = adjStart[i]; e < adjStart[i + 1]; e++) {
+                int j = adjacent[e];
+                boolean otherVisible = nodeX[j] >= minX && nodeX[j] <= maxX && nodeY[j] >= minY && nodeY[j] <= maxY;
+                if (otherVisible && j < i) continue;
+                gc.moveTo(sx, sy);
+                gc.lineTo(viewport.toScreenX(nodeX[j]), viewport.toScreenY(nodeY[j]));
+            }
+        }
+        gc.stroke();
+
+        // Pass 2: nodes, one fill colour per type, then all outlines
+        for (int type = 0; type < RenderSnapshot.TYPE_COUNT; type++) {
+            gc.setFill(TYPE_COLORS[type]);
+            double r = TYPE_RADII[type] * nodeScale;
+            for (int k = typeStart[type]; k < typeStart[type + 1]; k++) {
+                int i = visible[k];
+                gc.fillOval(viewport.toScreenX(nodeX[i]) - r, viewport.toScreenY(nodeY[i]) - r, 2 * r, 2 * r);
+            }
+        }
+        gc.setStroke(Color.WHITE);
+        for (int type = 0; type < RenderSnapshot.TYPE_COUNT; type++) {
+            double r = TYPE_RADII[type] * nodeScale;
+            for (int k = typeStart[type]; k < typeStart[type + 1]; k++) {
+                int i = visible[k];
+                gc.strokeOval(viewport.toScreenX(nodeX[i]) - r, viewport.toScreenY(nodeY[i]) - r, 2 * r, 2 * r);
+            }
+        }
+
+        // Pass 3: chunk count labels, once nodes are large enough to hold them
+        if (count <= LABEL_LIMIT && nodeScale >= LABEL_MIN_SCALE) {
+            gc.setFill(Color.BLACK);
+            gc.setFont(LABEL_FONT);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+            for (int k = 0; k < count; k++) {
+                int i = visible[k];
+                gc.fillText(countLabel(s.nodeChunks[i]), viewport.toScreenX(nodeX[i]), viewport.toScreenY(nodeY[i]));
+            }
+        }
+    }
+
+    /**
+     * Overview level: one line per pair of regions, between the regions' centres of mass,
+     * with colour and width growing with the number of edges bundled into it.
+     */
+    private void drawBundles(GraphicsContext gc, SpatialGrid grid) {
+        int regions = SpatialGrid.REGION_COUNT;
+        int[] counts = grid.bundleCounts;
+        int max = 0;
+        for (int count : counts) max = Math.max(max, count);
+        if (max == 0) return;
+        double logMax = Math.log1p(max);
+        for (int i = 0; i < counts.length; i++) {
+            bundleLevels[i] = counts[i] == 0 ? -1 : (byte) densityLevel(counts[i], logMax);
+        }
+
+        // One path per density level, so stroke settings change at most DENSITY_LEVELS times
+        for (int level = 0; level < DENSITY_LEVELS; level++) {
+            gc.setStroke(BUNDLE_COLORS[level]);
+            gc.setLineWidth(0.5 + 3.5 * level / (DENSITY_LEVELS - 1));
+            gc.beginPath();
+            boolean any = false;
+            for (int a = 0; a < regions; a++) {
+                int row = a * regions;
+                for (int b = a + 1; b < regions; b++) {
+                    if (bundleLevels[row + b] != level) continue;
+                    gc.moveTo(viewport.toScreenX(grid.regionSumX[a] / grid.regionNodes[a]),
+                            viewport.toScreenY(grid.regionSumY[a] / grid.regionNodes[a]));
+                    gc.lineTo(viewport.toScreenX(grid.regionSumX[b] / grid.regionNodes[b]),
+                            viewport.toScreenY(grid.regionSumY[b] / grid.regionNodes[b]));
+                    any = true;
+                }
+            }
+            if (any) gc.stroke();
+        }
+    }
+
+    /**
+     * Overview level: the visible cells merged into tiles at least {@link #TILE_PIXELS} wide,
+     * coloured by their peers' average progress and shaded by how many peers they hold.
+     */
+    private void drawTiles(GraphicsContext gc, SpatialGrid grid, int c0, int c1, int r0, int r1) {
+        double scale = viewport.getScale();
+        int k = Math.max(1, (int) Math.ceil(TILE_PIXELS / (grid.cellSize * scale))); // Cells per tile side
+        int tc0 = c0 / k, tr0 = r0 / k;
+        int tileColumns = c1 / k - tc0 + 1;
+        int tileRows = r1 / k - tr0 + 1;
+        int tiles = tileColumns * tileRows;
+        if (tileCount.length < tiles) {
+            tileCount = new int[Math.max(tiles, tileCount.length * 2)];
+            tileProgress = new double[tileCount.length];
+        }
+        Arrays.fill(tileCount, 0, tiles, 0);
+        Arrays.fill(tileProgress, 0, tiles, 0);
+
+        int max = 0;
+        for (int r = r0; r <= r1; r++) {
+            int tileRow = (r / k - tr0) * tileColumns;
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * grid.columns + c;
+                int tile = tileRow + c / k - tc0;
+                tileCount[tile] += grid.cellStart[cell + 1] - grid.cellStart[cell];
+                tileProgress[tile] += grid.cellProgress[cell];
+                max = Math.max(max, tileCount[tile]);
+            }
+        }
+        if (max == 0) return;
+        double logMax = Math.log1p(max);
+
+        double size = k * grid.cellSize;
+        double pixels = size * scale + 0.5; // Slight overlap hides seams between tiles
+        for (int tr = 0; tr < tileRows; tr++) {
+            double sy = viewport.toScreenY((tr0 + tr) * size);
+            for (int tc = 0; tc < tileColumns; tc++) {
+                int tile = tr * tileColumns + tc;
+                int count = tileCount[tile];
+                if (count == 0) continue;
+                int progress = (int) Math.round((PROGRESS_LEVELS - 1) * tileProgress[tile] / count);
+                gc.setFill(TILE_COLORS[progress * DENSITY_LEVELS + densityLevel(count, logMax)]);
+                gc.fillRect(viewport.toScreenX((tc0 + tc) * size), sy, pixels, pixels);
+            }
+        }
+    }
+
+    // The download target stays visible at every zoom level
+    private void drawTarget(GraphicsContext gc, RenderSnapshot s) {
+        if (s.targetIndex < 0) return;
+        double r = TYPE_RADII[RenderSnapshot.CLIENT];
+        double x = viewport.toScreenX(s.nodeX[s.targetIndex]);
+        double y = viewport.toScreenY(s.nodeY[s.targetIndex]);
+        gc.setFill(TYPE_COLORS[RenderSnapshot.CLIENT]);
+        gc.fillOval(x - r, y - r, 2 * r, 2 * r);
+        gc.setStroke(Color.WHITE);
+        gc.setLineWidth(1.0);
+        gc.strokeOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    // Report overlay once the run has ended
+    private void drawOverlay(GraphicsContext gc, RenderSnapshot s) {
+        String report = s.getReport();
+        if (report == null) return;
+        if (!report.equals(overlaySource)) {
+            overlaySource = report;
+            overlayLines = report.split("\n");
+        }
+        gc.setFill(Color.WHITE);
+        gc.setFont(OVERLAY_FONT);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.BASELINE);
+        for (int i = 0; i < overlayLines.length; i++) {
+            gc.fillText(overlayLines[i], 20, 40 + i * 18);
+        }
+    }
+
+    // Label strings are created once per distinct count and reused
+    private String countLabel(int count) {
+        if (count >= countLabels.length) countLabels = Arrays.copyOf(countLabels, Math.max(count + 1, countLabels.length * 2));
+        String label = countLabels[count];
+        if (label == null) {
+            label = String.valueOf(count);
+            countLabels[count] = label;
+        }
+        return label;
+    }
+
+    // Logarithmic so sparse areas stay visible next to dense ones
+    private static int densityLevel(int count, double logMax) {
+        return (int) ((DENSITY_LEVELS - 1) * Math.log1p(count) / logMax);
+    }
+
+    // From leecher blue at no progress to seeder green when complete, more opaque when denser
+    private static Color[] tileColors() {
+        Color[] colors = new Color[PROGRESS_LEVELS * DENSITY_LEVELS];
+        for (int p = 0; p < PROGRESS_LEVELS; p++) {
+            Color base = Color.ROYALBLUE.interpolate(Color.LIME, (double) p / (PROGRESS_LEVELS - 1));
+            for (int d = 0; d < DENSITY_LEVELS; d++) {
+                double opacity = 0.2 + 0.8 * d / (DENSITY_LEVELS - 1);
+                colors[p * DENSITY_LEVELS + d] = new Color(base.getRed(), base.getGreen(), base.getBlue(), opacity);
+            }
+        }
+        return colors;
+    }
+
+    private static Color[] bundleColors() {
+        Color[] colors = new Color[DENSITY_LEVELS];
+        for (int d = 0; d < DENSITY_LEVELS; d++) {
+            double opacity = 0.15 + 0.6 * d / (DENSITY_LEVELS - 1);
+            colors[d] = new Color(EDGE_COLOR.getRed(), EDGE_COLOR.getGreen(), EDGE_COLOR.getBlue(), opacity);
+        }
+        return colors;
+    }
+}
@@ -1,6 +1,5 @@
 package org.derekn.p2pSim;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -12,7 +11,7 @@ public abstract class NetworkNode {
     protected final int id; // Unique ID assigned to each node
     protected double x;     // X-coordinate of the node in 2D space
     protected double y;     // Y-coordinate of the node in 2D space
-    protected List<NetworkNode> connections; // List of nodes this node is connected to
+    protected NeighborSet connections; // Nodes this node is connected to, indexed by ID
     protected boolean canDisconnect = true;  // Flag to indicate if the node can be disconnected
 
     /**
@@ -26,7 +25,7 @@ public abstract class NetworkNode {
         this.id = id;
         this.x = x;
         this.y = y;
-        this.connections = new ArrayList<>(); // Initialize connections list
+        this.connections = new NeighborSet(); // Initialize connections set
     }
 
     /**
@@ -40,17 +39,27 @@ public abstract class NetworkNode {
 
     /**
      * Establishes a bidirectional connection between this node and another.
-     * Ensures both nodes list each other in their connection lists.
+     * Ensures both nodes list each other in their connection sets.
+     * Runs in O(1) expected time; connecting a node to itself is ignored.
      *
      * @param otherNode The node to connect to
+     * @return true if the connection is new
      */
-    public void connectTo(NetworkNode otherNode) {
-        if (!connections.contains(otherNode)) {
-            connections.add(otherNode); // Add connection if not already present
-        }
-        if (!otherNode.connections.contains(this)) {
-            otherNode.connections.add(this); // Ensure mutual connection
-        }
+    public boolean connectTo(NetworkNode otherNode) {
+        if (otherNode == this) return false;
+        boolean added = connections.addNode(otherNode); // Add connection if not already present
+        otherNode.connections.addNode(this);            // Ensure mutual connection
+        return added;
+    }
+
+    /**
+     * Checks whether this node is connected to the node with the given ID.
+     *
+     * @param nodeId ID of the other node
+     * @return true if connected
+     */
+    public boolean isConnectedTo(int nodeId) {
+        return connections.containsId(nodeId);
     }
 
     /**
@@ -77,19 +86,37 @@ public abstract class NetworkNode {
      * @param otherNode The node to disconnect from
      */
     public void disconnectFrom(NetworkNode otherNode) {
-        connections.remove(otherNode); // Remove connection from this node
-        otherNode.connections.remove(this); // Remove connection from the other node
+        connections.removeId(otherNode.getId()); // Remove connection from this node
+        otherNode.connections.removeId(id);      // Remove connection from the other node
+    }
+
+    /**
+     * Removes every connection of this node. Cost is proportional to its degree.
+     */
+    public void disconnectAll() {
+        while (!connections.isEmpty()) {
+            disconnectFrom(connections.get(connections.size() - 1));
+        }
     }
 
     /**
      * Retrieves all nodes this node is connected to.
      *
-     * @return List of connected nodes
+     * @return Read-only list of connected nodes
      */
     public List<NetworkNode> getConnections() {
         return connections;
     }
 
+    /**
+     * Retrieves the ID-indexed adjacency set of this node.
+     *
+     * @return Neighbour set
+     */
+    public NeighborSet getNeighborSet() {
+        return connections;
+    }
+
     /**
      * @return X-coordinate of the node
      */
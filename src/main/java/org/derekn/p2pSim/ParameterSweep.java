@@ -0,0 +1,466 @@
+package org.derekn.p2pSim;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent replications of every combination of a set of parameter values and
+ * streams the outcome of each run, and aggregates per combination, to CSV files.
+ * <p>
+ * Parameters are {@code --key=value} arguments as for {@link HeadlessRunner}. A value listing
+ * alternatives, such as {@code --peers=1000,5000}, or a numeric range
+ * {@code from..to[:step]}, such as {@code --seeder-ratio=0.1..0.5:0.1}, makes the parameter
+ * an axis of the sweep, and every combination of the axes' values is a point. Replication
+ * {@code r} of every point uses seed {@code seed + r}, so points are compared on the same
+ * random draws.
+ * <p>
+ * Runs are the unit of parallelism: each is single-threaded unless {@code --threads} says
+ * otherwise, and they are spread over a work-stealing pool of {@code --sweep-threads}
+ * workers. A run's row is written as soon as it ends, and a point's summary row (mean,
+ * median and 95th percentile of the ticks to completion, stall rate, and confidence
+ * intervals of both) as soon as its last run ends, so partial results of a long sweep are
+ * usable.
+ * <p>
+ * With {@code --target-ci} the number of replications adapts to each point: after
+ * {@code --min-replications} runs, a point stops as soon as the half-width of the
+ * confidence interval of its mean ticks to completion is below that fraction of the mean
+ * and the half-width of the interval of its stall rate below {@code --target-stall-ci}, or
+ * when {@code --replications} runs are done. Runs of the point still in flight are then
+ * abandoned at their next tick. Quiet points stop after a handful of runs, and the workers
+ * go to the noisy ones.
+ */
+public class ParameterSweep {
+    // Parameters naming one output file per run, which the runs of a sweep would overwrite
+    private static final Set<String> PER_RUN_FILES = Set.of("log", "log-file", "trace", "checkpoint");
+    private static final int MAX_POINTS = 100_000;
+    private static final int ADAPTIVE_MAX_REPLICATIONS = 1000; // Cap per point unless --replications is given
+
+    private final List<String> fixed = new ArrayList<>();     // Arguments shared by every run
+    private final List<String> keys = new ArrayList<>();      // Swept parameters, in argument order
+    private final List<List<String>> axes = new ArrayList<>(); // Values of each swept parameter
+    private int replications = 10;          // Per point; the cap in adaptive mode
+    private int minReplications = 5;        // Adaptive mode: runs before the intervals are checked
+    private double targetCi = 0;            // Adaptive mode: target half-width of mean ticks as a fraction of it; 0 = fixed count
+    private double targetStallCi = 0.1;     // Adaptive mode: target half-width of the stall rate
+    private double confidence = 0.95;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = RandomStream.unseeded().nextLong();
+    private Path runsFile = Path.of("sweep-runs.csv");
+    private Path summaryFile = Path.of("sweep-summary.csv");
+
+    private ParameterSweep() {
+        fixed.add("--threads=1"); // Parallelism comes from running many runs at once
+    }
+
+    /**
+     * Builds a sweep from {@code --key=value} arguments. Besides the simulation parameters,
+     * {@code --replications}, {@code --sweep-threads}, {@code --seed}, {@code --out} (runs CSV),
+     * {@code --summary} (aggregates CSV) and the adaptive mode's {@code --target-ci},
+     * {@code --target-stall-ci}, {@code --min-replications} and {@code --confidence}
+     * configure the sweep itself. Every point is
+     * checked up front, so a bad value fails before any run starts.
+     *
+     * @param args Command-line arguments
+     * @return Sweep ready to run
+     * @throws IOException if a referenced config file cannot be read
+     * @throws IllegalArgumentException if an argument or a combination is invalid
+     */
+    public static ParameterSweep fromArgs(String[] args) throws IOException {
+        ParameterSweep sweep = new ParameterSweep();
+        boolean replicationsGiven = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognised argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? "true" : arg.substring(eq + 1);
+
+            switch (key) {
+                case "replications" -> {
+                    sweep.replications = Integer.parseInt(value);
+                    replicationsGiven = true;
+                }
+                case "min-replications" -> sweep.minReplications = Integer.parseInt(value);
+                case "target-ci" -> sweep.targetCi = Double.parseDouble(value);
+                case "target-stall-ci" -> sweep.targetStallCi = Double.parseDouble(value);
+                case "confidence" -> sweep.confidence = Double.parseDouble(value);
+                case "sweep-threads" -> sweep.threads = Integer.parseInt(value);
+                case "seed" -> sweep.seed = Long.decode(value);
+                case "out" -> sweep.runsFile = Path.of(value);
+                case "summary" -> sweep.summaryFile = Path.of(value);
+                default -> {
+                    if (PER_RUN_FILES.contains(key)) {
+                        throw new IllegalArgumentException("--" + key + " cannot be used in a sweep");
+                    }
+                    List<String> values = parseValues(value);
+                    if (values.size() == 1) {
+                        sweep.fixed.add(arg);
+                    } else {
+                        sweep.keys.add(key);
+                        sweep.axes.add(values);
+                    }
+                }
+            }
+        }
+        if (sweep.isAdaptive() && !replicationsGiven) sweep.replications = ADAPTIVE_MAX_REPLICATIONS;
+        if (sweep.replications < 1) throw new IllegalArgumentException("Replications must be positive");
+        if (sweep.minReplications < 2) throw new IllegalArgumentException("Minimum replications must be at least 2");
+        if (sweep.targetCi < 0 || !(sweep.targetStallCi > 0)) {
+            throw new IllegalArgumentException("Confidence interval targets must be positive");
+        }
+        if (!(sweep.confidence > 0 && sweep.confidence < 1)) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1: " + sweep.confidence);
+        }
+        if (sweep.threads < 1) throw new IllegalArgumentException("Sweep threads must be positive");
+        if (sweep.getPointCount() > MAX_POINTS) {
+            throw new IllegalArgumentException("Sweep has more than " + MAX_POINTS + " points");
+        }
+        for (int p = 0; p < sweep.getPointCount(); p++) sweep.configFor(p, 0);
+        return sweep;
+    }
+
+    /**
+     * Splits a parameter value into the values to sweep: a comma-separated list, each item
+     * a single value or a range {@code from..to[:step]} with a default step of 1.
+     *
+     * @param value Parameter value as given
+     * @return Values in order
+     */
+    static List<String> parseValues(String value) {
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",", -1)) {
+            int dots = item.indexOf("..");
+            if (dots < 0) {
+                values.add(item.trim());
+                continue;
+            }
+            int colon = item.indexOf(':', dots);
+            BigDecimal from, to, step;
+            try {
+                from = new BigDecimal(item.substring(0, dots).trim());
+                to = new BigDecimal(item.substring(dots + 2, colon < 0 ? item.length() : colon).trim());
+                step = colon < 0 ? BigDecimal.ONE : new BigDecimal(item.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                values.add(item.trim()); // Not a range, such as a path with ".." in it
+                continue;
+            }
+            if (step.signum() <= 0) throw new IllegalArgumentException("Range step must be positive: " + item);
+            if (to.subtract(from).divide(step, MathContext.DECIMAL64).intValue() > MAX_POINTS) {
+                throw new IllegalArgumentException("Range has too many values: " + item);
+            }
+            for (BigDecimal v = from; v.compareTo(to) <= 0; v = v.add(step)) {
+                values.add(v.stripTrailingZeros().toPlainString());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return Number of parameter combinations
+     */
+    public int getPointCount() {
+        long count = 1;
+        for (List<String> values : axes) count = Math.min(count * values.size(), MAX_POINTS + 1L);
+        return (int) count;
+    }
+
+    /**
+     * @return Replications per point, or the most per point in adaptive mode
+     */
+    public int getReplications() {
+        return replications;
+    }
+
+    /**
+     * @return true if points stop replicating once their confidence intervals are narrow enough
+     */
+    public boolean isAdaptive() {
+        return targetCi > 0;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the replications of every point and writes both CSV files.
+     *
+     * @throws IOException if an output file cannot be written or a run cannot read its input
+     */
+    public void run() throws IOException {
+        try (CsvFile runs = new CsvFile(runsFile); CsvFile summary = new CsvFile(summaryFile)) {
+            List<Object> header = new ArrayList<>(List.of("point", "replication", "seed"));
+            header.addAll(keys);
+            header.addAll(List.of("ticks", "completed", "stalled", "target_chunks", "total_chunks",
+                    "final_peers", "bytes", "wall_ms"));
+            runs.row(header);
+            header = new ArrayList<>(List.of("point"));
+            header.addAll(keys);
+            header.addAll(List.of("runs", "completed", "stalled", "stall_rate", "stall_ci", "mean_ticks",
+                    "ticks_ci", "p50_ticks", "p95_ticks", "mean_wall_ms"));
+            if (isAdaptive()) header.add("converged");
+            summary.row(header);
+
+            new Execution(runs, summary).run();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Configuration of one replication of a point
+    private SimulationConfig configFor(int point, int replication) throws IOException {
+        List<String> args = new ArrayList<>(fixed);
+        List<String> values = valuesOf(point);
+        for (int a = 0; a < keys.size(); a++) args.add("--" + keys.get(a) + "=" + values.get(a));
+        SimulationConfig config = SimulationConfig.fromArgs(args.toArray(new String[0]));
+        config.setSeed(seed + replication);
+        return config;
+    }
+
+    // Value of every axis at a point; the last axis varies fastest
+    private List<String> valuesOf(int point) {
+        String[] values = new String[axes.size()];
+        for (int a = axes.size() - 1; a >= 0; a--) {
+            List<String> axis = axes.get(a);
+            values[a] = axis.get(point % axis.size());
+            point /= axis.size();
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * One sweep in progress: the pool, the output files and the state of every point.
+     */
+    private final class Execution {
+        private final CsvFile runs;
+        private final CsvFile summary;
+        private final ForkJoinPool pool = new ForkJoinPool(threads);
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final AtomicInteger remaining = new AtomicInteger(getPointCount()); // Points not yet done
+
+        Execution(CsvFile runs, CsvFile summary) {
+            this.runs = runs;
+            this.summary = summary;
+        }
+
+        void run() {
+            try {
+                int first = isAdaptive() ? Math.min(minReplications, replications) : replications;
+                for (int p = 0; p < getPointCount(); p++) {
+                    Point point = new Point(p);
+                    for (int r = 0; r < first; r++) launch(point);
+                }
+                finished.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private void launch(Point point) {
+            synchronized (point) {
+                point.launched++;
+            }
+            pool.execute(() -> {
+                try {
+                    runReplication(point);
+                } catch (RuntimeException e) {
+                    finished.completeExceptionally(e);
+                }
+            });
+        }
+
+        private void runReplication(Point point) {
+            int replication;
+            synchronized (point) {
+                // Numbered as they start, not as queued, so a task the pool runs late cannot hold up the prefix
+                if (point.done || finished.isDone()) return;
+                replication = point.started++;
+            }
+            RunResult result;
+            try {
+                result = HeadlessRunner.run(configFor(point.index, replication), () -> point.done || finished.isDone());
+            } catch (CancellationException e) {
+                return; // The point converged while this run was in flight
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<Object> row = new ArrayList<>(List.of(point.index, replication, result.seed()));
+            row.addAll(point.values);
+            row.addAll(List.of(result.ticks(), result.completed(), result.stalled(),
+                    result.targetChunks(), result.totalChunks(), result.finalPeers(),
+                    result.bytesTransferred(), format(result.wallMillis())));
+            List<Object> done = null;
+            boolean more;
+            synchronized (point) {
+                if (point.done) return;
+                runs.row(row);
+                point.record(replication, result);
+                // Tested first so the summary reports convergence reached on the last replication too
+                boolean converged = isAdaptive() && point.converged();
+                if (converged || point.prefix == replications) {
+                    point.done = true;
+                    done = point.summaryRow();
+                }
+                more = !point.done && point.launched < replications;
+            }
+            if (more) launch(point);
+            if (done != null) {
+                summary.row(done);
+                if (remaining.decrementAndGet() == 0) finished.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Outcomes of the replications of one point, collected as they finish. Statistics only
+     * cover replications 0 to {@code prefix - 1}, all finished: stopping on whichever runs
+     * happen to finish first would favour quick runs.
+     */
+    private final class Point {
+        final int index;
+        final List<String> values;
+        RunResult[] results = new RunResult[16]; // By replication; null until finished
+        int launched;           // Replications queued or started
+        int started;            // Replications started
+        int prefix;             // Replications finished without a gap from the first
+        boolean converged;      // Intervals narrow enough as of the last check
+        volatile boolean done;  // Summary written; runs still going are abandoned
+
+        Point(int index) {
+            this.index = index;
+            this.values = valuesOf(index);
+        }
+
+        void record(int replication, RunResult result) {
+            if (replication >= results.length) {
+                results = Arrays.copyOf(results, Math.max(replication + 1, results.length * 2));
+            }
+            results[replication] = result;
+            while (prefix < started && results[prefix] != null) prefix++;
+        }
+
+        /**
+         * @return true if enough runs have finished and both the stall rate's and the mean
+         *         ticks' confidence intervals are within their targets
+         */
+        boolean converged() {
+            if (prefix < minReplications) return false;
+            int stalled = 0, completed = 0;
+            for (int r = 0; r < prefix; r++) {
+                if (results[r].stalled()) stalled++;
+                if (results[r].completed()) completed++;
+            }
+            if (Confidence.proportionHalfWidth(stalled, prefix, confidence) > targetStallCi) return false;
+            // Completion time is undefined if no run completes; the stall rate says all there is
+            if (completed == 0) return converged = true;
+            if (completed < 3) return false;
+            int[] ticks = completionTicks();
+            double mean = Arrays.stream(ticks).average().orElse(0);
+            return converged = Confidence.meanHalfWidth(sd(ticks, mean), ticks.length, confidence) <= targetCi * mean;
+        }
+
+        List<Object> summaryRow() {
+            int stalled = 0;
+            double wallMillis = 0;
+            for (int r = 0; r < prefix; r++) {
+                if (results[r].stalled()) stalled++;
+                wallMillis += results[r].wallMillis();
+            }
+            int[] ticks = completionTicks();
+            Arrays.sort(ticks);
+            int completed = ticks.length;
+            double mean = Arrays.stream(ticks).average().orElse(0);
+
+            List<Object> row = new ArrayList<>(List.of(index));
+            row.addAll(values);
+            row.addAll(List.of(prefix, completed, stalled, format((double) stalled / prefix),
+                    format(Confidence.proportionHalfWidth(stalled, prefix, confidence)),
+                    completed == 0 ? "" : format(mean),
+                    completed < 2 ? "" : format(Confidence.meanHalfWidth(sd(ticks, mean), completed, confidence)),
+                    completed == 0 ? "" : percentile(ticks, 50),
+                    completed == 0 ? "" : percentile(ticks, 95),
+                    format(wallMillis / prefix)));
+            if (isAdaptive()) row.add(converged);
+            return row;
+        }
+
+        // Ticks of the runs in the prefix that completed
+        private int[] completionTicks() {
+            int[] ticks = new int[prefix];
+            int n = 0;
+            for (int r = 0; r < prefix; r++) {
+                if (results[r].completed()) ticks[n++] = results[r].ticks();
+            }
+            return Arrays.copyOf(ticks, n);
+        }
+    }
+
+    // Sample standard deviation
+    private static double sd(int[] values, double mean) {
+        double sum = 0;
+        for (int v : values) sum += (v - mean) * (v - mean);
+        return values.length < 2 ? 0 : Math.sqrt(sum / (values.length - 1));
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static int percentile(int[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * CSV file written one whole row at a time by any thread, flushed after every row so
+     * results can be read while the sweep runs.
+     */
+    private static final class CsvFile implements Closeable {
+        private final BufferedWriter out;
+
+        CsvFile(Path file) throws IOException {
+            this.out = Files.newBufferedWriter(file);
+        }
+
+        synchronized void row(List<?> cells) {
+            try {
+                for (int i = 0; i < cells.size(); i++) {
+                    if (i > 0) out.write(',');
+                    out.write(escape(String.valueOf(cells.get(i))));
+                }
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("CSV write failed", e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private static String escape(String cell) {
+            if (cell.indexOf(',') < 0 && cell.indexOf('"') < 0 && cell.indexOf('\n') < 0) return cell;
+            return '"' + cell.replace("\"", "\"\"") + '"';
+        }
+    }
+}
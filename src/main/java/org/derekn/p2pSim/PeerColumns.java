@@ -0,0 +1,243 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+
+/**
+ * Column-wise storage of the per-peer state that every tick scans, indexed by registry slot.
+ * <p>
+ * Roles, IDs and positions are kept in primitive arrays, and the chunk bitmaps of all
+ * leechers are relocated into one packed array of words, a fixed-size region per slot, so a
+ * scan over the swarm walks memory sequentially instead of following a pointer per peer.
+ * The {@link PeerNode} objects stay the handle the rest of the simulation and the GUI work
+ * with: their chunk bitmaps are views onto the packed words, and nothing else a peer holds
+ * changes after it joins. Adjacency is kept in compressed sparse row form, with neighbours
+ * as slots rather than references. Each slot's list has some room to grow, and only the
+ * lists of slots marked as changed are rewritten before a scan, so joins and departures
+ * cost time in proportion to the degrees involved rather than to the swarm size.
+ * <p>
+ * The {@link PeerRegistry} keeps the columns in step with its slots, including the swap
+ * that moves the last peer into a freed slot, and reports the connections made between
+ * live peers.
+ */
+final class PeerColumns {
+    private final int wordsPerPeer; // Words of one packed chunk bitmap
+
+    private int[] ids = new int[16];
+    private byte[] roles = new byte[16];     // Role codes as in SimulationController#roleCode
+    private double[] x = new double[16];
+    private double[] y = new double[16];
+    private ChunkBitmap[] bitmaps = new ChunkBitmap[16];
+    private long[] chunkWords;               // Packed bitmaps; slot s owns [s * wordsPerPeer, (s + 1) * wordsPerPeer)
+
+    // Adjacency by slot: neighbours of slot s are adjacent[adjStart[s] .. adjStart[s] + degree[s]),
+    // within room[s] entries reserved for it
+    private int[] adjStart = new int[16];
+    private int[] degree = new int[16];
+    private int[] room = new int[16];
+    private int[] adjacent = new int[16];
+    private int adjEnd;              // Entries of adjacent reserved so far
+    private int adjWasted;           // Reserved entries no slot uses any more
+    private boolean adjacencyStale = true; // Rebuild every list, not just the changed ones
+    private boolean[] changed = new boolean[16]; // Slots whose list must be rewritten
+    private int[] changedSlots = new int[16];
+    private int changedCount;
+
+    /**
+     * @param totalChunks Total number of chunks in the file
+     */
+    PeerColumns(int totalChunks) {
+        this.wordsPerPeer = ChunkBitmap.wordCount(totalChunks);
+        this.chunkWords = new long[16 * wordsPerPeer];
+    }
+
+    /**
+     * Fills a slot with a joining peer and moves its chunks into the packed words.
+     *
+     * @param slot Slot the registry gave the peer
+     * @param peer Joining peer
+     */
+    void set(int slot, PeerNode peer) {
+        if (slot == ids.length) grow(slot * 2);
+        touch(slot);
+        ids[slot] = peer.getId();
+        roles[slot] = (byte) SimulationController.roleCode(peer);
+        x[slot] = peer.getX();
+        y[slot] = peer.getY();
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        bitmaps[slot] = chunks;
+        if (!chunks.isShared()) chunks.relocate(chunkWords, slot * wordsPerPeer);
+    }
+
+    /**
+     * Empties a slot. The leaving peer's bitmap moves back into an array of its own, so
+     * transfers and snapshots that still refer to the peer see its chunks unchanged.
+     *
+     * @param slot Slot being freed
+     */
+    void clear(int slot) {
+        bitmaps[slot].detach();
+        bitmaps[slot] = null;
+        adjWasted += room[slot];
+        degree[slot] = 0;
+        room[slot] = 0;
+    }
+
+    /**
+     * Moves the peer in one slot to another, empty slot.
+     *
+     * @param from Slot the peer occupies
+     * @param to   Empty slot to move it to
+     */
+    void move(int from, int to) {
+        ids[to] = ids[from];
+        roles[to] = roles[from];
+        x[to] = x[from];
+        y[to] = y[from];
+        ChunkBitmap chunks = bitmaps[from];
+        bitmaps[to] = chunks;
+        bitmaps[from] = null;
+        if (!chunks.isShared()) chunks.relocate(chunkWords, to * wordsPerPeer);
+
+        adjStart[to] = adjStart[from]; // The list moves along, and may name the freed slot
+        degree[to] = degree[from];
+        room[to] = room[from];
+        degree[from] = 0;
+        room[from] = 0;
+        touch(to);
+    }
+
+    /**
+     * Marks a slot whose list of neighbours no longer matches its peer's neighbour set, or
+     * names a peer that moved to another slot, so it is rewritten before the next scan.
+     *
+     * @param slot Registry slot
+     */
+    void touch(int slot) {
+        if (adjacencyStale || changed[slot]) return;
+        changed[slot] = true;
+        if (changedCount == changedSlots.length) changedSlots = Arrays.copyOf(changedSlots, changedCount * 2);
+        changedSlots[changedCount++] = slot;
+    }
+
+    /**
+     * Brings the adjacency up to date with the peers' neighbour sets: rewrites the lists of
+     * the slots marked since the last call, or all of them when that is cheaper.
+     *
+     * @param peers Registry whose slots the columns mirror
+     */
+    void updateAdjacency(PeerRegistry peers) {
+        int n = peers.size();
+        if (adjacencyStale || changedCount > n / 2 || adjWasted > adjEnd / 2) {
+            adjEnd = 0;
+            for (int s = 0; s < n; s++) {
+                room[s] = 0;
+                writeNeighbors(peers, s);
+            }
+            adjWasted = 0;
+            adjacencyStale = false;
+        } else {
+            for (int k = 0; k < changedCount; k++) {
+                int s = changedSlots[k];
+                if (s < n) writeNeighbors(peers, s); // Slots past the end were freed
+            }
+        }
+        for (int k = 0; k < changedCount; k++) changed[changedSlots[k]] = false;
+        changedCount = 0;
+    }
+
+    int id(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * @param slot Registry slot
+     * @return Role code of the peer, as in {@link SimulationController#roleCode}
+     */
+    int role(int slot) {
+        return roles[slot];
+    }
+
+    /**
+     * @param slot Registry slot
+     * @return true if the peer downloads, that is, is a leecher or the download target
+     */
+    boolean downloads(int slot) {
+        int role = roles[slot];
+        return role == 0 || role == 2;
+    }
+
+    double x(int slot) {
+        return x[slot];
+    }
+
+    double y(int slot) {
+        return y[slot];
+    }
+
+    ChunkBitmap chunks(int slot) {
+        return bitmaps[slot];
+    }
+
+    /**
+     * @param slot Registry slot
+     * @return Index in {@link #neighborAt} of the slot's first neighbour
+     */
+    int neighborStart(int slot) {
+        return adjStart[slot];
+    }
+
+    /**
+     * @param slot Registry slot
+     * @return Index in {@link #neighborAt} just past the slot's last neighbour
+     */
+    int neighborEnd(int slot) {
+        return adjStart[slot] + degree[slot];
+    }
+
+    /**
+     * @param index Position in the adjacency, between a slot's start and end
+     * @return Slot of that neighbour
+     */
+    int neighborAt(int index) {
+        return adjacent[index];
+    }
+
+    // Writes a slot's neighbours in neighbour set order, moving the list to the end if it outgrew its room
+    private void writeNeighbors(PeerRegistry peers, int slot) {
+        NeighborSet neighbors = peers.get(slot).getNeighborSet();
+        int size = neighbors.size();
+        if (size > room[slot]) {
+            adjWasted += room[slot];
+            room[slot] = size + (size >>> 1) + 2;
+            if (adjEnd + room[slot] > adjacent.length) {
+                adjacent = Arrays.copyOf(adjacent, Math.max(adjEnd + room[slot], adjacent.length * 2));
+            }
+            adjStart[slot] = adjEnd;
+            adjEnd += room[slot];
+        }
+        int a = adjStart[slot];
+        for (int k = 0; k < size; k++) {
+            int neighbor = peers.slotOf(neighbors.idAt(k));
+            if (neighbor >= 0) adjacent[a++] = neighbor;
+        }
+        degree[slot] = a - adjStart[slot];
+    }
+
+    // Grows every column; bitmaps already packed are moved into the larger word array
+    private void grow(int capacity) {
+        adjStart = Arrays.copyOf(adjStart, capacity);
+        degree = Arrays.copyOf(degree, capacity);
+        room = Arrays.copyOf(room, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        roles = Arrays.copyOf(roles, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        bitmaps = Arrays.copyOf(bitmaps, capacity);
+        long[] words = new long[Math.multiplyExact(capacity, wordsPerPeer)];
+        for (int s = 0; s < bitmaps.length; s++) {
+            if (bitmaps[s] != null && !bitmaps[s].isShared()) bitmaps[s].relocate(words, s * wordsPerPeer);
+        }
+        chunkWords = words;
+    }
+}
@@ -1,7 +1,6 @@
 package org.derekn.p2pSim;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -11,11 +10,13 @@ import java.util.Set;
  * Handles logic for chunk management and active transfer tracking.
  */
 public abstract class PeerNode extends NetworkNode {
-    protected Set<Integer> ownedChunks; // Chunks currently owned by this peer
+    protected ChunkBitmap ownedChunks;  // Chunks currently owned by this peer
     protected double uploadSpeed;       // Upload speed in KB/s
     protected double downloadSpeed;     // Download speed in KB/s
     protected int totalChunks;          // Total chunks needed to complete the file
     private final List<Transfer> activeTransfers = new ArrayList<>(); // Currently active transfers
+    private BandwidthLink uplink;       // Upload capacity shared by outgoing transfers, created on first use
+    private BandwidthLink downlink;     // Download capacity shared by incoming transfers, created on first use
 
     /**
      * Constructs a new PeerNode instance with specified properties.
@@ -27,13 +28,27 @@ public abstract class PeerNode extends NetworkNode {
      * @param totalChunks Total number of file chunks to be downloaded
      */
     public PeerNode(int id, double x, double y, int totalChunks) {
+        this(id, x, y, totalChunks, RandomStream.unseeded());
+    }
+
+    /**
+     * Constructs a new PeerNode whose speeds are drawn from the given stream.
+     * Passing a stream derived from the simulation seed makes peers reproducible.
+     *
+     * @param id Unique identifier for the peer
+     * @param x X-coordinate of the peer
+     * @param y Y-coordinate of the peer
+     * @param totalChunks Total number of file chunks to be downloaded
+     * @param bandwidthRng Stream used to randomize upload and download speeds
+     */
+    public PeerNode(int id, double x, double y, int totalChunks, RandomStream bandwidthRng) {
         super(id, x, y);
         this.totalChunks = totalChunks;
-        this.ownedChunks = new HashSet<>();
+        this.ownedChunks = new ChunkBitmap(totalChunks);
 
         // Randomized upload/download speeds for simulation realism
-        this.uploadSpeed = 50 + Math.random() * 100;     // Upload speed: 50–150 KB/s
-        this.downloadSpeed = 100 + Math.random() * 200;  // Download speed: 100–300 KB/s
+        this.uploadSpeed = 50 + bandwidthRng.nextDouble() * 100;     // Upload speed: 50–150 KB/s
+        this.downloadSpeed = 100 + bandwidthRng.nextDouble() * 200;  // Download speed: 100–300 KB/s
     }
 
     /**
@@ -43,7 +58,7 @@ public abstract class PeerNode extends NetworkNode {
      * @return true if the chunk is present; false otherwise
      */
     public boolean hasChunk(int chunkIndex) {
-        return ownedChunks.contains(chunkIndex);
+        return ownedChunks.get(chunkIndex);
     }
 
     /**
@@ -52,7 +67,7 @@ public abstract class PeerNode extends NetworkNode {
      * @return true if all chunks are owned; false otherwise
      */
     public boolean hasCompleteFile() {
-        return ownedChunks.size() == totalChunks;
+        return ownedChunks.isFull();
     }
 
     /**
@@ -61,31 +76,45 @@ public abstract class PeerNode extends NetworkNode {
      * @param chunkIndex Index of the chunk to add
      */
     public void receiveChunk(int chunkIndex) {
-        ownedChunks.add(chunkIndex);
+        ownedChunks.set(chunkIndex);
     }
 
     /**
-     * Retrieves the set of chunks this peer owns.
+     * Retrieves a read-only view of the chunks this peer owns.
+     * The view is backed by the chunk bitmap, so no set is copied.
      *
-     * @return Set of chunk indices
+     * @return Set view of chunk indices
      */
     public Set<Integer> getOwnedChunks() {
+        return ownedChunks.asSet();
+    }
+
+    /**
+     * Retrieves the number of chunks this peer owns in O(1).
+     *
+     * @return Owned chunk count
+     */
+    public int getOwnedChunkCount() {
+        return ownedChunks.cardinality();
+    }
+
+    /**
+     * Retrieves the underlying chunk bitmap for word-level scans.
+     *
+     * @return Chunk ownership bitmap
+     */
+    public ChunkBitmap getChunkBitmap() {
         return ownedChunks;
     }
 
     /**
      * Identifies all file chunks that this peer still needs.
+     * Returns a read-only view over the complement of the chunk bitmap.
      *
-     * @return Set of missing chunk indices
+     * @return Set view of missing chunk indices
      */
     public Set<Integer> getMissingChunks() {
-        Set<Integer> missing = new HashSet<>();
-        for (int i = 0; i < totalChunks; i++) {
-            if (!ownedChunks.contains(i)) {
-                missing.add(i); // Add chunk if it's not owned
-            }
-        }
-        return missing;
+        return ownedChunks.complementView();
     }
 
     /**
@@ -124,6 +153,45 @@ public abstract class PeerNode extends NetworkNode {
         activeTransfers.add(t);
     }
 
+    /**
+     * Removes a single transfer from this peer's active transfer list.
+     *
+     * @param t Transfer to stop tracking
+     */
+    public void removeTransfer(Transfer t) {
+        activeTransfers.remove(t);
+    }
+
+    /**
+     * Replaces the randomized speeds and the owned chunks with values read from a
+     * checkpoint. Must be called before the peer's links are first used.
+     *
+     * @param uploadSpeed   Upload speed in KB/s
+     * @param downloadSpeed Download speed in KB/s
+     * @param ownedChunks   Chunks the peer owns
+     */
+    void restore(double uploadSpeed, double downloadSpeed, ChunkBitmap ownedChunks) {
+        this.uploadSpeed = uploadSpeed;
+        this.downloadSpeed = downloadSpeed;
+        this.ownedChunks = ownedChunks;
+    }
+
+    /**
+     * @return Link shared by this peer's outgoing transfers
+     */
+    BandwidthLink uplink() {
+        if (uplink == null) uplink = new BandwidthLink(this, uploadSpeed * Constants.KB);
+        return uplink;
+    }
+
+    /**
+     * @return Link shared by this peer's incoming transfers
+     */
+    BandwidthLink downlink() {
+        if (downlink == null) downlink = new BandwidthLink(this, downloadSpeed * Constants.KB);
+        return downlink;
+    }
+
     /**
      * Clears all active transfer records from this peer.
      * Called at the end of a simulation tick.
@@ -0,0 +1,170 @@
+package org.derekn.p2pSim;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Indexed registry of the live peers in a simulation.
+ * Peers occupy dense slots for fast iteration and uniform random picks, and are
+ * looked up by ID through a hashed ID-to-slot map. IDs are handed out monotonically
+ * and never reused, so the map holds the live peers only rather than every ID issued;
+ * removal swaps the last peer into the freed slot, so both insertion and removal are O(1).
+ * Exposed to callers as a read-only list; slot order changes when peers are removed.
+ * A registry can also keep the peers' hot state in {@link PeerColumns}, in slot order.
+ */
+public class PeerRegistry extends AbstractList<PeerNode> implements RandomAccess {
+    private PeerNode[] slots = new PeerNode[16]; // Live peers, densely packed
+    private int size;
+    private final IdMap slotById = new IdMap();  // Peer ID -> slot of the live peers
+    private int nextId;                          // Next ID to hand out
+    private final PeerColumns columns;           // Column copy of the slots, or null
+
+    public PeerRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param columns Empty columns to keep in step with the slots, or null for none
+     */
+    PeerRegistry(PeerColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Reserves a new peer ID. IDs are never reused, even after the peer leaves.
+     *
+     * @return Fresh peer ID
+     */
+    public int nextId() {
+        return nextId++;
+    }
+
+    /**
+     * Continues ID allocation after a restored registry's last ID.
+     *
+     * @param nextId The ID the next call to {@link #nextId()} should return
+     */
+    void resumeIds(int nextId) {
+        this.nextId = Math.max(this.nextId, nextId);
+    }
+
+    /**
+     * @return The ID that the next call to {@link #nextId()} will return
+     */
+    public int peekNextId() {
+        return nextId;
+    }
+
+    /**
+     * Registers a peer whose ID was obtained from {@link #nextId()}.
+     *
+     * @param peer Peer to add
+     * @return true if the peer was added; false if its ID is already registered
+     */
+    @Override
+    public boolean add(PeerNode peer) {
+        int id = peer.getId();
+        if (slotById.containsKey(id)) return false;
+        if (id >= nextId) nextId = id + 1; // Keep IDs monotonic for externally chosen IDs
+
+        if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+        slots[size] = peer;
+        slotById.put(id, size);
+        if (columns != null) columns.set(size, peer);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a peer by moving the last peer into its slot.
+     * Does not touch the peer's connections.
+     *
+     * @param peer Peer to remove
+     * @return true if the peer was registered
+     */
+    public boolean swapRemove(PeerNode peer) {
+        int id = peer.getId();
+        int slot = slotById.get(id);
+        if (slot < 0 || slots[slot] != peer) return false;
+
+        int last = --size;
+        if (columns != null) {
+            // Neighbours of the leaving peer and of the one moving into its slot name their old slots
+            touchNeighbors(peer);
+            if (slot != last) touchNeighbors(slots[last]);
+            columns.clear(slot);
+        }
+        if (slot != last) {
+            slots[slot] = slots[last];
+            slotById.put(slots[slot].getId(), slot);
+            if (columns != null) columns.move(last, slot);
+        }
+        slots[last] = null;
+        slotById.remove(id);
+        return true;
+    }
+
+    /**
+     * Records a connection made between two live peers. Connections are otherwise only
+     * made before the first scan of the columns, and only dropped as peers leave.
+     *
+     * @param a One end
+     * @param b Other end
+     */
+    void connected(PeerNode a, PeerNode b) {
+        if (columns == null) return;
+        columns.touch(slotOf(a.getId()));
+        columns.touch(slotOf(b.getId()));
+    }
+
+    /**
+     * Looks up a live peer by its ID.
+     *
+     * @param id Peer ID
+     * @return The peer, or null if no live peer has that ID
+     */
+    public PeerNode byId(int id) {
+        int slot = slotById.get(id);
+        return slot < 0 ? null : slots[slot];
+    }
+
+    /**
+     * @param id Peer ID
+     * @return Slot currently holding that peer, or -1 if not live
+     */
+    public int slotOf(int id) {
+        return slotById.get(id);
+    }
+
+    /**
+     * @return Column copy of the slots, or null if this registry keeps none
+     */
+    PeerColumns getColumns() {
+        return columns;
+    }
+
+    private void touchNeighbors(PeerNode peer) {
+        NeighborSet neighbors = peer.getNeighborSet();
+        for (int k = 0; k < neighbors.size(); k++) {
+            int slot = slotOf(neighbors.idAt(k));
+            if (slot >= 0) columns.touch(slot);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof PeerNode peer && byId(peer.getId()) == peer;
+    }
+
+    @Override
+    public PeerNode get(int slot) {
+        if (slot >= size) throw new IndexOutOfBoundsException(slot);
+        return slots[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
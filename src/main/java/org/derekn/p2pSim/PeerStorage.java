@@ -0,0 +1,23 @@
+package org.derekn.p2pSim;
+
+/**
+ * How per-peer state is laid out in memory.
+ */
+public enum PeerStorage {
+    /** Each peer keeps its own state; simplest and fine for small swarms. */
+    OBJECTS,
+    /** State the tick reads is also kept in slot-indexed columns, see {@link PeerColumns}. */
+    COLUMNAR;
+
+    /**
+     * @param name "objects" or "columnar"
+     * @return Matching storage
+     */
+    public static PeerStorage parse(String name) {
+        return switch (name) {
+            case "objects" -> OBJECTS;
+            case "columnar" -> COLUMNAR;
+            default -> throw new IllegalArgumentException("Unknown peer storage: " + name);
+        };
+    }
+}
@@ -0,0 +1,182 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits a file into pieces of a fixed size and hashes each with SHA-256 into a
+ * {@link PieceManifest}.
+ * <p>
+ * The file is read through read-only memory mappings, so it is hashed straight from the
+ * page cache without being copied onto the heap, and files of any size work. Ranges of
+ * pieces are hashed in parallel on a {@link ForkJoinPool}. Progress can be polled from any
+ * thread with {@link #getBytesHashed()} while {@link #hash} runs, and a run can be
+ * cancelled from another thread.
+ */
+public class PieceHasher {
+    private static final long TASK_BYTES = 64L * Constants.MB; // Bytes hashed by one fork-join leaf task
+    private static final long MAP_BYTES = 1L << 30;            // Largest single mapping
+    private static final long PROGRESS_BYTES = Constants.MB;   // Bytes a task hashes between progress updates
+
+    private final Path file;
+    private final long pieceSize;
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile long fileSize;
+
+    /**
+     * @param file      File to hash
+     * @param pieceSize Size of every piece but the last, in bytes
+     */
+    public PieceHasher(Path file, long pieceSize) {
+        if (pieceSize <= 0) throw new IllegalArgumentException("Piece size must be positive");
+        this.file = file;
+        this.pieceSize = pieceSize;
+    }
+
+    /**
+     * Hashes every piece of the file.
+     *
+     * @param parallelism Worker threads; 0 uses the common pool, 1 hashes on the calling thread
+     * @return Manifest of the file's pieces
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is empty
+     * @throws CancellationException if {@link #cancel()} was called
+     */
+    public PieceManifest hash(int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize == 0) throw new IllegalArgumentException(file + " is empty");
+            long pieces = (fileSize + pieceSize - 1) / pieceSize;
+            if (pieces * PieceManifest.HASH_BYTES > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Piece size " + pieceSize + " is too small for " + file);
+            }
+            byte[] hashes = new byte[(int) pieces * PieceManifest.HASH_BYTES];
+
+            HashTask task = new HashTask(channel, hashes, 0, (int) pieces);
+            if (parallelism == 1) {
+                task.compute();
+            } else if (parallelism <= 0) {
+                ForkJoinPool.commonPool().invoke(task);
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(task);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            if (cancelled) throw new CancellationException("Hashing " + file + " was cancelled");
+            return new PieceManifest(file, fileSize, pieceSize, hashes);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stops a running {@link #hash} as soon as the pieces being hashed are done.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return Bytes hashed so far; safe to call from any thread
+     */
+    public long getBytesHashed() {
+        return bytesHashed.get();
+    }
+
+    /**
+     * @return Fraction of the file hashed so far, 0 until the file has been opened
+     */
+    public double getProgress() {
+        long size = fileSize;
+        return size == 0 ? 0 : (double) bytesHashed.get() / size;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Fork-join task that hashes a contiguous range of pieces.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private class HashTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final byte[] hashes;
+        private final int from;
+        private final int to;
+
+        HashTask(FileChannel channel, byte[] hashes, int from, int to) {
+            this.channel = channel;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && (to - from) * pieceSize > TASK_BYTES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask(channel, hashes, from, mid), new HashTask(channel, hashes, mid, to));
+                return;
+            }
+
+            MessageDigest digest = sha256();
+            long end = Math.min(to * pieceSize, fileSize);
+            long position = from * pieceSize;
+            int piece = from;
+            long pieceEnd = Math.min(position + pieceSize, end);
+            long unreported = 0; // Hashed but not yet added to the shared progress
+            try {
+                // Map the range a window at a time; a piece may span windows
+                while (position < end && !cancelled) {
+                    long windowStart = position;
+                    long windowEnd = Math.min(end, windowStart + MAP_BYTES);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            windowEnd - windowStart);
+                    while (position < windowEnd) {
+                        long stop = Math.min(windowEnd, pieceEnd);
+                        window.limit((int) (stop - windowStart)).position((int) (position - windowStart));
+                        digest.update(window);
+                        unreported += stop - position;
+                        position = stop;
+                        if (position == pieceEnd) {
+                            digest.digest(hashes, piece * PieceManifest.HASH_BYTES, PieceManifest.HASH_BYTES);
+                            piece++;
+                            pieceEnd = Math.min(pieceEnd + pieceSize, end);
+                            if (cancelled) break;
+                        }
+                        if (unreported >= PROGRESS_BYTES) {
+                            bytesHashed.addAndGet(unreported);
+                            unreported = 0;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read " + file, e);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                bytesHashed.addAndGet(unreported);
+            }
+        }
+    }
+}
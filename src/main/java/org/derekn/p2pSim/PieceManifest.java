@@ -0,0 +1,93 @@
+package org.derekn.p2pSim;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * The pieces a real file is split into and the SHA-256 hash of each, built by a
+ * {@link PieceHasher}. A simulation given a manifest uses its pieces as chunks, so chunk
+ * {@code i} stands for the bytes of piece {@code i} and is identified by its hash.
+ */
+public class PieceManifest {
+    static final int HASH_BYTES = 32;
+
+    private final Path file;
+    private final long fileSize;
+    private final long pieceSize;   // Size of every piece but the last
+    private final byte[] hashes;    // Piece hashes back to back, HASH_BYTES each
+    private final byte[] rootHash;  // Hash of all piece hashes, identifying the whole file
+
+    /**
+     * @param file      File the pieces were read from
+     * @param fileSize  File size in bytes
+     * @param pieceSize Size of every piece but the last, in bytes
+     * @param hashes    Hashes of all pieces in order, {@link #HASH_BYTES} each
+     */
+    PieceManifest(Path file, long fileSize, long pieceSize, byte[] hashes) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.pieceSize = pieceSize;
+        this.hashes = hashes;
+        try {
+            this.rootHash = MessageDigest.getInstance("SHA-256").digest(hashes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return File the pieces were read from
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return File size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return Size of every piece but the last, in bytes
+     */
+    public long getPieceSize() {
+        return pieceSize;
+    }
+
+    /**
+     * @return Number of pieces
+     */
+    public int getPieceCount() {
+        return hashes.length / HASH_BYTES;
+    }
+
+    /**
+     * @param piece Piece index
+     * @return Size of the piece in bytes; the last piece may be shorter
+     */
+    public long getPieceBytes(int piece) {
+        return Math.min(pieceSize, fileSize - piece * pieceSize);
+    }
+
+    /**
+     * @param piece Piece index
+     * @param hash  SHA-256 of bytes received for the piece
+     * @return true if the hash is the piece's hash
+     */
+    boolean matches(int piece, byte[] hash) {
+        return Arrays.equals(hashes, piece * HASH_BYTES, (piece + 1) * HASH_BYTES, hash, 0, hash.length);
+    }
+
+    /**
+     * @return SHA-256 of the concatenated piece hashes as lowercase hex; equal files with
+     *         equal piece sizes have equal root hashes
+     */
+    public String getRootHashHex() {
+        return HexFormat.of().formatHex(rootHash);
+    }
+}
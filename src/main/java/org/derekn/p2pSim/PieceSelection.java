@@ -0,0 +1,23 @@
+package org.derekn.p2pSim;
+
+/**
+ * Strategy a leecher uses to pick which chunk to download from a neighbour.
+ */
+public enum PieceSelection {
+    /** Lowest-index chunk the neighbour has and the leecher lacks. */
+    SEQUENTIAL,
+    /** Chunk held by the fewest peers in the swarm, so rare chunks replicate first. */
+    RAREST_FIRST;
+
+    /**
+     * @param name "sequential" or "rarest"
+     * @return Matching strategy
+     */
+    public static PieceSelection parse(String name) {
+        return switch (name) {
+            case "sequential" -> SEQUENTIAL;
+            case "rarest", "rarest-first" -> RAREST_FIRST;
+            default -> throw new IllegalArgumentException("Unknown piece selection: " + name);
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package org.derekn.p2pSim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Degree-capped random regular graph built with the configuration (pairing) model.
+ * Every peer gets d connection stubs, Supernodes get their larger connection budget,
+ * and the shuffled stubs are paired up. Pairs that would form a self-loop, a duplicate
+ * edge or exceed a Supernode's {@link Supernode#canAcceptMoreConnections()} limit are
+ * skipped, so a few peers end up slightly below their target degree.
+ * Generation is O(n·d) and sequential, since each pairing depends on earlier ones.
+ */
+public class RandomRegularTopology implements TopologyGenerator {
+    private final int degree; // d: target connections per regular peer
+
+    /**
+     * @param degree Target number of connections per peer
+     */
+    public RandomRegularTopology(int degree) {
+        if (degree < 1) throw new IllegalArgumentException("degree must be at least 1");
+        this.degree = degree;
+    }
+
+    @Override
+    public void connect(List<PeerNode> peers, RandomStream rng, ForkJoinPool pool) {
+        int n = peers.size();
+        long totalStubs = 0;
+        for (PeerNode peer : peers) totalStubs += stubsFor(peer);
+        if (totalStubs > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many connection stubs: " + totalStubs);
+        }
+
+        int[] stubs = new int[(int) totalStubs];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            for (int k = stubsFor(peers.get(v)); k > 0; k--) stubs[count++] = v;
+        }
+
+        // Fisher–Yates shuffle, then pair consecutive stubs
+        for (int i = count - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = stubs[i];
+            stubs[i] = stubs[j];
+            stubs[j] = tmp;
+        }
+        for (int i = 0; i + 1 < count; i += 2) {
+            PeerNode a = peers.get(stubs[i]);
+            PeerNode b = peers.get(stubs[i + 1]);
+            if (a == b || !hasCapacity(a) || !hasCapacity(b)) continue;
+            a.connectTo(b); // Duplicates are ignored by the neighbour set
+        }
+    }
+
+    private int stubsFor(PeerNode peer) {
+        return peer instanceof Supernode ? Math.max(degree, Supernode.MAX_CONNECTIONS) : degree;
+    }
+
+    private boolean hasCapacity(PeerNode peer) {
+        return peer instanceof Supernode supernode
+                ? supernode.canAcceptMoreConnections()
+                : peer.getConnections().size() < degree;
+    }
+}
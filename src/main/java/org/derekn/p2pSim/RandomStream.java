@@ -0,0 +1,173 @@
+package org.derekn.p2pSim;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Splittable pseudo-random generator used for all simulation randomness.
+ * Uses the SplitMix64 algorithm of {@link java.util.SplittableRandom}, but exposes its
+ * state so runs can be checkpointed and derives independent streams from a single
+ * simulation seed, one per subsystem and one per peer.
+ * <p>
+ * A stream is not thread-safe; each thread or subsystem should own its own stream.
+ */
+public class RandomStream {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    /**
+     * Simulation subsystems that draw from their own independent streams.
+     */
+    public enum Purpose {
+        LAYOUT,    // Peer coordinates
+        ROLES,     // Role assignment of initial peers
+        TOPOLOGY,  // Connection graph generation
+        CHURN,     // Peer arrivals and departures
+        BANDWIDTH  // Per-peer upload and download speeds
+    }
+
+    private long seed;        // Current state
+    private final long gamma; // Odd increment, fixed per stream
+
+    /**
+     * Constructs a stream from a seed.
+     *
+     * @param seed Initial seed
+     */
+    public RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return A stream seeded from a non-reproducible source
+     */
+    public static RandomStream unseeded() {
+        return new RandomStream(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Derives the stream for a subsystem of a simulation.
+     * The result depends only on the simulation seed and the purpose.
+     *
+     * @param simulationSeed Seed of the whole simulation
+     * @param purpose        Subsystem the stream is for
+     * @return Independent stream
+     */
+    public static RandomStream derive(long simulationSeed, Purpose purpose) {
+        return derive(simulationSeed, purpose, -1);
+    }
+
+    /**
+     * Derives the stream for one peer within a subsystem.
+     * The result depends only on the simulation seed, the purpose and the peer ID,
+     * so peers get the same stream regardless of creation order or thread.
+     *
+     * @param simulationSeed Seed of the whole simulation
+     * @param purpose        Subsystem the stream is for
+     * @param peerId         ID of the peer
+     * @return Independent stream
+     */
+    public static RandomStream derive(long simulationSeed, Purpose purpose, long peerId) {
+        long s = mix64(simulationSeed + GOLDEN_GAMMA * (purpose.ordinal() + 1));
+        s = mix64(s ^ mix64(peerId + GOLDEN_GAMMA));
+        return new RandomStream(mix64(s), mixGamma(s + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Restores a stream from previously captured state.
+     *
+     * @param seed  Value from {@link #getSeed()}
+     * @param gamma Value from {@link #getGamma()}
+     * @return Stream that continues where the captured one left off
+     */
+    public static RandomStream restore(long seed, long gamma) {
+        return new RandomStream(seed, gamma | 1L);
+    }
+
+    /**
+     * Splits off a new independent stream, advancing this one.
+     *
+     * @return New stream
+     */
+    public RandomStream split() {
+        return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * @return Next pseudo-random 64-bit value
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * @return Next pseudo-random 32-bit value
+     */
+    public int nextInt() {
+        return (int) (mix64(nextSeed()) >>> 32);
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, bound).
+     *
+     * @param bound Exclusive upper bound, must be positive
+     * @return Pseudo-random value
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        // Lemire's multiply-and-reject method
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xffffffffL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xffffffffL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * @return Uniformly distributed value in [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @return Current state, for checkpointing
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return Stream increment, for checkpointing
+     */
+    public long getGamma() {
+        return gamma;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
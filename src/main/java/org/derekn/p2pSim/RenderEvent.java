@@ -0,0 +1,28 @@
+package org.derekn.p2pSim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for drawing one frame of the swarm on the FX thread.
+ */
+@Name("org.derekn.p2pSim.Render")
+@Label("Swarm Render")
+@Category("P2P Simulator")
+@Description("Drawing of one snapshot onto the swarm canvas")
+@StackTrace(false)
+class RenderEvent extends Event {
+    @Label("Snapshot Version")
+    long version;
+
+    @Label("Nodes")
+    int nodes;
+
+    @Label("Detailed")
+    @Description("Whether individual peers were drawn rather than density tiles")
+    boolean detailed;
+}
@@ -0,0 +1,215 @@
+package org.derekn.p2pSim;
+
+/**
+ * Point-in-time copy of everything the view draws, held in primitive arrays.
+ * <p>
+ * Snapshots are filled on the simulation thread and handed to the FX thread through a
+ * {@link SnapshotExchange}. A published snapshot is never written while the renderer holds
+ * it, so the renderer reads it without locks; its buffers are reused for later captures
+ * once the renderer has moved on, so steady-state capture allocates nothing.
+ */
+public class RenderSnapshot {
+    // Node types, in drawing order
+    static final int CLIENT = 0;
+    static final int SEEDER = 1;
+    static final int LEECHER = 2;
+    static final int SUPERNODE = 3;
+    static final int OTHER = 4;
+    static final int TYPE_COUNT = 5;
+
+    // Nodes, indexed by their slot in the peer registry
+    double[] nodeX = new double[64];
+    double[] nodeY = new double[64];
+    int[] nodeChunks = new int[64];
+    byte[] nodeType = new byte[64];
+    int nodeCount;
+    int targetIndex; // Index of the download target
+
+    // Connections as adjacency lists: node i's neighbours are adjacent[adjStart[i] .. adjStart[i + 1])
+    int[] adjStart = new int[65];
+    int[] adjacent = new int[256];
+
+    final SpatialGrid grid = new SpatialGrid(); // Nodes by position, rebuilt on every capture
+
+    // Transfers as flattened sender x, y, receiver x, y segments
+    double[] transfers = new double[64];
+    double[] transferProgress = new double[16]; // Fraction of each transfer delivered
+    double[] transferSpeed = new double[16];    // Fraction delivered per simulated second
+    int transferCount;
+
+    long captureNanos;        // System.nanoTime() at capture
+    double simulatedPerReal;  // Simulated seconds per real second at capture; 0 when not advancing
+
+    private long version;      // Publication sequence number, assigned by the exchange
+    private int tick;
+    private int targetChunks;  // Chunks the download target owns
+    private int totalChunks;
+    private boolean complete;
+    private boolean failed;
+    private String report;     // Final report once the run has ended, otherwise null
+
+    /**
+     * Copies the swarm and the download target's progress from the controller.
+     * Must be called on the thread that advances the controller.
+     *
+     * @param controller    Simulation to copy
+     * @param showTransfers Whether in-flight transfers are captured
+     */
+    void capture(SimulationController controller, boolean showTransfers) {
+        PeerRegistry peers = controller.getRegistry();
+        PeerNode target = controller.getDownloadTarget();
+        int n = peers.size();
+        ensureNodeCapacity(n);
+        this.totalChunks = target.getChunkBitmap().size();
+
+        // Nodes
+        int totalDegree = 0;
+        int totalTransfers = 0;
+        for (int i = 0; i < n; i++) {
+            PeerNode peer = peers.get(i);
+            nodeType[i] = (byte) typeOf(peer);
+            nodeX[i] = peer.getX();
+            nodeY[i] = peer.getY();
+            nodeChunks[i] = peer.getOwnedChunkCount();
+            totalDegree += peer.getNeighborSet().size();
+            if (showTransfers) totalTransfers += peer.getActiveTransfers().size();
+        }
+        nodeCount = n;
+        targetIndex = peers.slotOf(target.getId());
+        grid.reset(controller.getLayoutWidth(), controller.getLayoutHeight(), n);
+        grid.index(nodeX, nodeY, nodeChunks, totalChunks, n);
+
+        // Connections by registry slot; each undirected edge also counts once towards its bundle
+        if (adjacent.length < totalDegree) adjacent = new int[Math.max(totalDegree, adjacent.length * 2)];
+        int a = 0;
+        for (int i = 0; i < n; i++) {
+            adjStart[i] = a;
+            NeighborSet neighbors = peers.get(i).getNeighborSet();
+            for (int k = 0, size = neighbors.size(); k < size; k++) {
+                int j = peers.slotOf(neighbors.idAt(k));
+                if (j < 0) continue;
+                adjacent[a++] = j;
+                if (j > i) grid.countEdge(nodeX[i], nodeY[i], nodeX[j], nodeY[j]);
+            }
+        }
+        adjStart[n] = a;
+
+        // Transfers: sender to receiver
+        if (transferProgress.length < totalTransfers) {
+            int capacity = Math.max(totalTransfers, transferProgress.length * 2);
+            transfers = new double[capacity * 4];
+            transferProgress = new double[capacity];
+            transferSpeed = new double[capacity];
+        }
+        int t = 0;
+        if (showTransfers) {
+            for (int i = 0; i < n; i++) {
+                for (Transfer transfer : peers.get(i).getActiveTransfers()) {
+                    int k = t * 4;
+                    transfers[k] = transfer.getSender().getX();
+                    transfers[k + 1] = transfer.getSender().getY();
+                    transfers[k + 2] = transfer.getReceiver().getX();
+                    transfers[k + 3] = transfer.getReceiver().getY();
+                    transferProgress[t] = transfer.getProgress();
+                    long size = transfer.getSizeBytes();
+                    transferSpeed[t] = size == 0 ? 0 : transfer.getRate() / size;
+                    t++;
+                }
+            }
+        }
+        transferCount = t;
+
+        this.tick = controller.getTickCount();
+        this.targetChunks = target.getOwnedChunkCount();
+        this.complete = false;
+        this.failed = false;
+        this.report = null;
+        this.captureNanos = System.nanoTime();
+        this.simulatedPerReal = 0;
+    }
+
+    /**
+     * Records how fast simulated time was passing when captured, so the renderer can
+     * extrapolate transfer progress between snapshots.
+     *
+     * @param simulatedPerReal Simulated seconds per real second
+     */
+    void setPace(double simulatedPerReal) {
+        this.simulatedPerReal = simulatedPerReal;
+    }
+
+    /**
+     * Marks the captured state as the end of the run.
+     *
+     * @param complete Whether the download finished
+     * @param report   Final report text
+     */
+    void finish(boolean complete, String report) {
+        this.complete = complete;
+        this.failed = !complete;
+        this.report = report;
+    }
+
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return Publication sequence number; a higher number is a later capture
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * @return Number of chunks the download target owned when captured
+     */
+    public int getTargetChunks() {
+        return targetChunks;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return Final report once the run has ended, otherwise null
+     */
+    public String getReport() {
+        return report;
+    }
+
+    private void ensureNodeCapacity(int n) {
+        if (nodeX.length >= n) return;
+        int capacity = Math.max(n, nodeX.length * 2);
+        nodeX = new double[capacity];
+        nodeY = new double[capacity];
+        nodeChunks = new int[capacity];
+        nodeType = new byte[capacity];
+        adjStart = new int[capacity + 1];
+    }
+
+    private static int typeOf(PeerNode peer) {
+        if (peer instanceof Client) return CLIENT;
+        if (peer instanceof Leecher) return LEECHER;
+        if (peer instanceof Seeder) return SEEDER;
+        if (peer instanceof Supernode) return SUPERNODE;
+        return OTHER;
+    }
+}
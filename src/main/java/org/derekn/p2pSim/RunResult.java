@@ -0,0 +1,68 @@
+package org.derekn.p2pSim;
+
+import java.util.Locale;
+
+/**
+ * Outcome and timing of a single headless simulation run.
+ *
+ * @param ticks          Number of ticks executed
+ * @param completed      Whether the download target finished the file
+ * @param stalled        Whether the run stopped because the download stalled
+ * @param wallNanos      Wall-clock time spent ticking, in nanoseconds
+ * @param peerTicks      Sum of swarm sizes over all ticks (peers processed)
+ * @param finalPeers     Number of peers left at the end of the run
+ * @param targetChunks   Chunks owned by the download target at the end
+ * @param totalChunks    Total chunks in the file
+ * @param seed           Seed that reproduces the run
+ * @param bytesTransferred Bytes moved by all transfers during the run
+ * @param simulatedMillis  Simulated time covered by the run, in milliseconds
+ */
+public record RunResult(int ticks, boolean completed, boolean stalled, long wallNanos,
+                        long peerTicks, int finalPeers, int targetChunks, int totalChunks,
+                        long seed, long bytesTransferred, long simulatedMillis) {
+
+    /**
+     * @return Wall-clock duration in milliseconds
+     */
+    public double wallMillis() {
+        return wallNanos / 1e6;
+    }
+
+    /**
+     * @return Simulation throughput in ticks per wall-clock second
+     */
+    public double ticksPerSecond() {
+        return wallNanos == 0 ? 0 : ticks / (wallNanos / 1e9);
+    }
+
+    /**
+     * @return Peers processed per wall-clock second
+     */
+    public double peersPerSecond() {
+        return wallNanos == 0 ? 0 : peerTicks / (wallNanos / 1e9);
+    }
+
+    /**
+     * @return Average aggregate swarm throughput in MB per simulated second
+     */
+    public double averageThroughputMBps() {
+        return simulatedMillis == 0 ? 0 : bytesTransferred * 1000.0 / simulatedMillis / Constants.MB;
+    }
+
+    /**
+     * Formats the result as a single-line JSON object for scripting and capacity planning.
+     *
+     * @return JSON summary
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"ticks\":%d,\"completed\":%b,\"stalled\":%b,\"wallMs\":%.3f,"
+                        + "\"ticksPerSec\":%.1f,\"peersPerSec\":%.1f,\"finalPeers\":%d,"
+                        + "\"targetChunks\":%d,\"totalChunks\":%d,\"seed\":%d,"
+                        + "\"bytesTransferred\":%d,\"simulatedMs\":%d,\"avgMBps\":%.3f}",
+                ticks, completed, stalled, wallMillis(),
+                ticksPerSecond(), peersPerSecond(), finalPeers,
+                targetChunks, totalChunks, seed,
+                bytesTransferred, simulatedMillis, averageThroughputMBps());
+    }
+}
@@ -12,11 +12,22 @@ public class Seeder extends PeerNode {
      * @param totalChunks Total number of file chunks
      */
     public Seeder(int id, double x, double y, int totalChunks) {
-        super(id, x, y, totalChunks);
+        this(id, x, y, totalChunks, RandomStream.unseeded());
+    }
+
+    /**
+     * Constructs a new Seeder using the given bandwidth stream.
+     * @param id Unique identifier
+     * @param x X-coordinate
+     * @param y Y-coordinate
+     * @param totalChunks Total number of file chunks
+     * @param bandwidthRng Stream used to randomize speeds
+     */
+    public Seeder(int id, double x, double y, int totalChunks, RandomStream bandwidthRng) {
+        super(id, x, y, totalChunks, bandwidthRng);
 
-        for (int i = 0; i < totalChunks; i++) {
-            ownedChunks.add(i);
-        }
+        // All seeders share one immutable full bitmap
+        this.ownedChunks = ChunkBitmap.full(totalChunks);
     }
 
     /**
@@ -0,0 +1,215 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+
+/**
+ * Session-based churn: peers arrive by an {@link ArrivalProcess} in a configurable mix of
+ * roles, and each stays for a session drawn from a {@link SessionLength}. A leecher that
+ * completes the file lingers as a seed for a separately drawn time and then leaves, so
+ * finished downloads keep serving for a while as in real swarms. Every departure is
+ * scheduled in a {@link TimerWheel} when it becomes known, so a tick costs time in
+ * proportion to its arrivals and departures rather than to the swarm size.
+ * <p>
+ * All draws come from the controller's churn stream, so runs are reproducible.
+ */
+final class SessionChurn {
+    private static final int NEVER = Integer.MAX_VALUE; // Deadline of a peer that stays until the end
+
+    private final ArrivalProcess arrivals;
+    private final SessionLength session;  // Time a peer stays, or a leecher tries to finish
+    private final SessionLength linger;   // Time a leecher stays after finishing
+    private final double seederRatio;     // Share of arrivals that are seeders
+    private final double supernodeRatio;  // Share of arrivals that are supernodes
+    private final RandomStream rng;
+    private final IdMap deadlines = new IdMap(); // Scheduled departure per peer ID, NEVER for peers that stay
+    private final TimerWheel wheel;
+    private int[] leaving = new int[16]; // Peers whose session ends in the current tick
+    private int leavingCount;
+
+    /**
+     * @param config Churn parameters
+     * @param rng    Stream for arrivals, roles and session lengths
+     * @param now    Current tick
+     */
+    SessionChurn(SimulationConfig config, RandomStream rng, int now) {
+        if (config.getJoinSeederRatio() + config.getJoinSupernodeRatio() > 1) {
+            throw new IllegalArgumentException("Seeder and supernode shares of arrivals add up to more than 1");
+        }
+        this.arrivals = config.getArrivals();
+        this.session = config.getSessionLength();
+        this.linger = config.getLingerTime();
+        this.seederRatio = config.getJoinSeederRatio();
+        this.supernodeRatio = config.getJoinSupernodeRatio();
+        this.rng = rng;
+        this.wheel = new TimerWheel(now);
+    }
+
+    /**
+     * Starts the session of a peer that is present or has just arrived.
+     *
+     * @param peer Peer
+     */
+    void begin(PeerNode peer) {
+        if (!peer.canDisconnect()) return;
+        schedule(peer.getId(), session.sample(rng));
+    }
+
+    /**
+     * Replaces the rest of a leecher's session with its linger time once it has the file.
+     *
+     * @param peer Peer that just received its last chunk
+     */
+    void completed(PeerNode peer) {
+        if (!peer.canDisconnect()) return;
+        schedule(peer.getId(), linger.sample(rng));
+    }
+
+    /**
+     * @param peer Peer that left for any reason
+     */
+    void forget(PeerNode peer) {
+        deadlines.remove(peer.getId());
+    }
+
+    /**
+     * @param peer Peer
+     * @return true if the peer has a scheduled departure or stays until the end
+     */
+    boolean hasSession(PeerNode peer) {
+        return deadlines.containsKey(peer.getId());
+    }
+
+    /**
+     * Moves to the next tick and collects the peers whose session ends in it, in ID order;
+     * the wheel's own order depends on when timers were filed, which a restored checkpoint
+     * does not reproduce.
+     *
+     * @return Number of departing peers, whose IDs are in {@link #leavingAt} from index 0
+     */
+    int advance() {
+        leavingCount = 0;
+        wheel.advance(this::due);
+        Arrays.sort(leaving, 0, leavingCount);
+        return leavingCount;
+    }
+
+    /**
+     * @param index Position among the peers returned by the last {@link #advance}
+     * @return ID of a departing peer
+     */
+    int leavingAt(int index) {
+        return leaving[index];
+    }
+
+    /**
+     * @return Number of peers arriving in the current tick
+     */
+    int arrivals() {
+        return poisson(arrivals.rateAt(wheel.now()));
+    }
+
+    /**
+     * @return Role code of an arriving peer, see {@link SimulationController#roleCode}
+     */
+    int drawRole() {
+        double r = rng.nextDouble();
+        if (r < seederRatio) return 1;
+        if (r < seederRatio + supernodeRatio) return 3;
+        return 2;
+    }
+
+    /**
+     * Writes every scheduled departure in ID order, so equal states give equal checkpoints;
+     * runs without session churn write a count of 0.
+     *
+     * @param out Checkpoint being written
+     */
+    void writeTo(CheckpointWriter out) {
+        int[] ids = deadlines.keys();
+        Arrays.sort(ids);
+        out.putInt(ids.length);
+        for (int id : ids) {
+            out.putInt(id);
+            out.putInt(deadlines.get(id));
+        }
+    }
+
+    /**
+     * Reads the departures written by {@link #writeTo}.
+     *
+     * @param in    Checkpoint being read
+     * @param churn Engine to schedule them in, or null to skip them
+     */
+    static void readFrom(CheckpointReader in, SessionChurn churn) {
+        for (int k = in.getInt(); k > 0; k--) {
+            int id = in.getInt();
+            int deadline = in.getInt();
+            if (churn != null) churn.restore(id, deadline);
+        }
+    }
+
+    // Keeps a timer that fired at its peer's current deadline
+    private void due(int id) {
+        if (deadlines.get(id) != wheel.now()) return; // Left early or rescheduled
+        deadlines.remove(id);
+        if (leavingCount == leaving.length) leaving = Arrays.copyOf(leaving, 2 * leavingCount);
+        leaving[leavingCount++] = id;
+    }
+
+    private void restore(int id, int deadline) {
+        deadlines.put(id, deadline);
+        if (deadline != NEVER) wheel.schedule(id, deadline);
+    }
+
+    // Schedules a departure the given number of ticks from now, at least one
+    private void schedule(int id, double ticks) {
+        long deadline = ticks >= NEVER ? NEVER : wheel.now() + Math.max(1, (long) Math.ceil(ticks));
+        if (deadline >= NEVER) {
+            deadlines.put(id, NEVER);
+            return;
+        }
+        deadlines.put(id, (int) deadline);
+        wheel.schedule(id, (int) deadline);
+    }
+
+    // Poisson draw: multiplication of uniforms for small means, Hormann's transformed rejection (PTRS) above
+    private int poisson(double mean) {
+        if (mean <= 0) return 0;
+        if (mean < 10) {
+            double limit = Math.exp(-mean), product = rng.nextDouble();
+            int k = 0;
+            while (product > limit) {
+                product *= rng.nextDouble();
+                k++;
+            }
+            return k;
+        }
+        double sqrt = Math.sqrt(mean), log = Math.log(mean);
+        double b = 0.931 + 2.53 * sqrt;
+        double a = -0.059 + 0.02483 * b;
+        double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        while (true) {
+            double u = rng.nextDouble() - 0.5;
+            double v = rng.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if (us >= 0.07 && v <= vr) return (int) Math.min(k, Integer.MAX_VALUE);
+            if (k < 0 || (us < 0.013 && v > us)) continue;
+            if (Math.log(v * invAlpha / (a / (us * us) + b)) <= -mean + k * log - logFactorial(k)) {
+                return (int) Math.min(k, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    // ln(k!) by Stirling's series, exact enough from k = 10 and summed below it
+    private static double logFactorial(long k) {
+        if (k < 10) {
+            double sum = 0;
+            for (int i = 2; i <= k; i++) sum += Math.log(i);
+            return sum;
+        }
+        double x = k + 1;
+        return (x - 0.5) * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI) + 1 / (12 * x) - 1 / (360 * x * x * x);
+    }
+}
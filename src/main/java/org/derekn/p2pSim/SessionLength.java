@@ -0,0 +1,81 @@
+package org.derekn.p2pSim;
+
+/**
+ * Distribution of how long a peer stays in the swarm, in ticks. Measured peer-to-peer
+ * session lengths are heavy-tailed: most peers leave soon while a few stay for very long,
+ * which the Pareto, log-normal and Weibull forms capture and the exponential does not.
+ */
+@FunctionalInterface
+public interface SessionLength {
+    /** Stands for a peer that never leaves. */
+    double NEVER = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param rng Stream to draw from
+     * @return Length in ticks, positive, or {@link #NEVER}
+     */
+    double sample(RandomStream rng);
+
+    /**
+     * Parses a session length specification, all lengths in ticks:
+     * <ul>
+     *   <li>{@code exp:MEAN}, exponential with the given mean;</li>
+     *   <li>{@code pareto:ALPHA:MIN}, Pareto with tail index ALPHA and minimum MIN; the mean
+     *       is infinite for ALPHA of 1 or less;</li>
+     *   <li>{@code lognormal:MEDIAN:SIGMA}, log-normal with the given median and standard
+     *       deviation of the logarithm;</li>
+     *   <li>{@code weibull:SHAPE:SCALE}, Weibull, heavy-tailed for SHAPE below 1;</li>
+     *   <li>{@code fixed:TICKS}, always the same length;</li>
+     *   <li>{@code never}, peers stay until the run ends.</li>
+     * </ul>
+     *
+     * @param spec Distribution name followed by colon-separated parameters
+     * @return Matching distribution
+     */
+    static SessionLength parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            return switch (parts[0]) {
+                case "exp" -> {
+                    double mean = positive(parts, 1, "mean");
+                    yield rng -> -mean * Math.log(1 - rng.nextDouble());
+                }
+                case "pareto" -> {
+                    double alpha = positive(parts, 1, "tail index");
+                    double min = positive(parts, 2, "minimum");
+                    yield rng -> min * Math.pow(1 - rng.nextDouble(), -1 / alpha);
+                }
+                case "lognormal" -> {
+                    double median = positive(parts, 1, "median");
+                    double sigma = positive(parts, 2, "sigma");
+                    yield rng -> {
+                        // Box-Muller transform of two uniforms into one standard normal
+                        double radius = Math.sqrt(-2 * Math.log(1 - rng.nextDouble()));
+                        return median * Math.exp(sigma * radius * Math.cos(2 * Math.PI * rng.nextDouble()));
+                    };
+                }
+                case "weibull" -> {
+                    double shape = positive(parts, 1, "shape");
+                    double scale = positive(parts, 2, "scale");
+                    yield rng -> scale * Math.pow(-Math.log(1 - rng.nextDouble()), 1 / shape);
+                }
+                case "fixed" -> {
+                    double ticks = positive(parts, 1, "length");
+                    yield rng -> ticks;
+                }
+                case "never" -> rng -> NEVER;
+                default -> throw new IllegalArgumentException("Unknown session length: " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Missing parameters in session length: " + spec);
+        }
+    }
+
+    private static double positive(String[] parts, int index, String name) {
+        double value = Double.parseDouble(parts[index]);
+        if (!(value > 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Session " + name + " must be a positive finite value: " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+package org.derekn.p2pSim;
+
+/**
+ * A timestamped event for the discrete-event engine.
+ * Events with equal times are ordered by their sequence number, so processing
+ * order is deterministic.
+ */
+public class SimEvent implements Comparable<SimEvent> {
+    /**
+     * Kinds of events the engine processes.
+     */
+    public enum Type {
+        TRANSFER_COMPLETE, // A chunk transfer finished at its current rate
+        PEER_JOIN,         // A new peer arrives
+        PEER_LEAVE,        // A random peer departs
+        RECHOKE            // Periodic sweep that starts transfers for idle connections
+    }
+
+    final double time;       // Simulated time in seconds
+    final long seq;          // Tie-breaker, increasing in scheduling order
+    final Type type;
+    final Transfer transfer; // Transfer the event refers to, if any
+    final int version;       // Transfer version when scheduled; stale if it has changed
+    SimEvent next;           // Link used by calendar queue buckets
+
+    SimEvent(double time, long seq, Type type, Transfer transfer, int version) {
+        this.time = time;
+        this.seq = seq;
+        this.type = type;
+        this.transfer = transfer;
+        this.version = version;
+    }
+
+    /**
+     * @return Simulated time of the event in seconds
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return Kind of event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public int compareTo(SimEvent other) {
+        int c = Double.compare(time, other.time);
+        return c != 0 ? c : Long.compare(seq, other.seq);
+    }
+}
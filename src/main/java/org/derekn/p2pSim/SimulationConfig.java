@@ -0,0 +1,584 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Holds the parameters used to set up and run a simulation.
+ * Values can be set directly or loaded from command-line style
+ * {@code --key=value} arguments and {@code .properties} files.
+ */
+public class SimulationConfig {
+    private int initialPeers = 10;         // Number of peers present at start
+    private int totalChunks = 10;          // Number of chunks the file is split into
+    private double seederRatio = 0.3;      // Share of initial peers that are seeders
+    private double joinRate = 0.1;         // Peers joining per tick; a probability in the tick model
+    private double leaveRate = 0.05;       // Peers leaving per tick; a probability in the tick model
+    private ArrivalProcess arrivals = null; // Session churn arrivals; null = join and leave rates
+    private SessionLength sessionLength = SessionLength.parse("pareto:1.5:40"); // Ticks a peer stays
+    private SessionLength lingerTime = SessionLength.parse("exp:60"); // Ticks a leecher seeds after finishing
+    private double joinSeederRatio = 0;    // Share of session churn arrivals that are seeders
+    private double joinSupernodeRatio = 0; // Share of session churn arrivals that are supernodes
+    private int joinDegree = 3;            // Distinct peers a session churn arrival connects to
+    private int maxTicks = 10_000;         // Upper bound on ticks for headless runs
+    private int logCategories = 0;         // Event categories written to the event log; 0 = none
+    private Path logFile = null;           // Event log destination; null = standard output
+    private boolean metricsReported = false; // Whether headless runs print phase timings
+    private Path restoreFile = null;       // Checkpoint to continue from; null builds a new swarm
+    private Path sourceFile = null;        // Real file to split into hashed pieces; null = abstract chunks
+    private PieceManifest manifest = null; // Hashed pieces of the source file, once built
+    private Path checkpointFile = null;    // Checkpoint written when a headless run ends; null = none
+    private Path traceFile = null;         // Trace recorded for later replay; null = none
+    private int traceKeyframeTicks = 100;  // Ticks between trace keyframes
+    private int parallelism = 0;           // Tick worker threads; 0 = all cores, 1 = single-threaded
+    private PeerStorage peerStorage = PeerStorage.OBJECTS; // Memory layout of per-peer state
+    private Long seed = null;              // Simulation seed; null picks a random one
+    private TopologyGenerator topology =   // Generator for the initial connection graph
+            ErdosRenyiTopology.withMeanDegree(ErdosRenyiTopology.DEFAULT_MEAN_DEGREE);
+    private PieceSelection pieceSelection = PieceSelection.RAREST_FIRST; // How leechers pick chunks
+    private TransferModel transferModel = TransferModel.INSTANT; // How transfers advance in time
+    private long chunkSizeBytes = Constants.MB;                  // Size of every chunk but the last
+    private long fileSizeBytes = 0;                              // File size; 0 = totalChunks * chunkSizeBytes
+    private long tickDurationMs = Constants.DEFAULT_TICK_DUR_MS; // Simulated time per tick
+    private ClockMode clockMode = ClockMode.TICK;                // Fixed ticks or discrete events
+    private String eventQueue = "calendar";                      // Event queue implementation
+    private long rechokeIntervalMs = 10_000;                     // Full transfer sweep interval in event mode
+    private double rateQuantumMs = -1;                           // Rate recompute batching in event mode; 0 = exact, <0 = one tick
+
+    /**
+     * Constructs a configuration with default values.
+     */
+    public SimulationConfig() {
+    }
+
+    /**
+     * Constructs a configuration for the given swarm size and chunk count.
+     *
+     * @param initialPeers Number of peers to start with
+     * @param totalChunks  Total number of file chunks
+     */
+    public SimulationConfig(int initialPeers, int totalChunks) {
+        this.initialPeers = initialPeers;
+        this.totalChunks = totalChunks;
+    }
+
+    /**
+     * Builds a configuration from {@code --key=value} arguments.
+     * A {@code --config=path} argument loads a properties file first,
+     * so later arguments override values from the file.
+     *
+     * @param args Command-line arguments
+     * @return Parsed configuration
+     * @throws IOException if a referenced config file cannot be read
+     */
+    public static SimulationConfig fromArgs(String[] args) throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognised argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? "true" : arg.substring(eq + 1);
+
+            if (key.equals("config")) {
+                config.load(Path.of(value));
+            } else {
+                config.set(key, value);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Loads values from a properties file into this configuration.
+     *
+     * @param file Path to a {@code .properties} file
+     * @throws IOException if the file cannot be read
+     */
+    public void load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            props.load(reader);
+        }
+        for (String key : props.stringPropertyNames()) {
+            set(key, props.getProperty(key).trim());
+        }
+    }
+
+    /**
+     * Sets a single named parameter from its string form.
+     *
+     * @param key   Parameter name
+     * @param value Parameter value
+     */
+    public void set(String key, String value) {
+        switch (key) {
+            case "peers" -> initialPeers = Integer.parseInt(value);
+            case "chunks" -> totalChunks = Integer.parseInt(value);
+            case "seeder-ratio" -> setSeederRatio(Double.parseDouble(value));
+            case "join-rate" -> setJoinRate(Double.parseDouble(value));
+            case "leave-rate" -> setLeaveRate(Double.parseDouble(value));
+            case "arrivals" -> arrivals = value.equals("rates") ? null : ArrivalProcess.parse(value);
+            case "session" -> sessionLength = SessionLength.parse(value);
+            case "linger" -> lingerTime = SessionLength.parse(value);
+            case "join-seeder-ratio" -> setJoinSeederRatio(Double.parseDouble(value));
+            case "join-supernode-ratio" -> setJoinSupernodeRatio(Double.parseDouble(value));
+            case "join-degree" -> setJoinDegree(Integer.parseInt(value));
+            case "max-ticks" -> maxTicks = Integer.parseInt(value);
+            case "log" -> logCategories = EventCategory.parseMask(value);
+            case "log-file" -> logFile = Path.of(value);
+            case "metrics" -> metricsReported = Boolean.parseBoolean(value);
+            case "restore" -> restoreFile = Path.of(value);
+            case "file" -> sourceFile = Path.of(value);
+            case "checkpoint" -> checkpointFile = Path.of(value);
+            case "trace" -> traceFile = Path.of(value);
+            case "trace-keyframes" -> traceKeyframeTicks = Integer.parseInt(value);
+            case "threads" -> parallelism = Integer.parseInt(value);
+            case "peer-store" -> peerStorage = PeerStorage.parse(value);
+            case "seed" -> seed = Long.decode(value);
+            case "topology" -> topology = TopologyGenerator.parse(value);
+            case "selection" -> pieceSelection = PieceSelection.parse(value);
+            case "transfer-model" -> transferModel = TransferModel.parse(value);
+            case "chunk-size" -> chunkSizeBytes = parseBytes(value);
+            case "file-size" -> fileSizeBytes = parseBytes(value);
+            case "tick-ms" -> tickDurationMs = Long.parseLong(value);
+            case "clock" -> clockMode = ClockMode.parse(value);
+            case "event-queue" -> {
+                EventQueue.create(value); // Validate the name
+                eventQueue = value;
+            }
+            case "rechoke-ms" -> rechokeIntervalMs = Long.parseLong(value);
+            case "rate-quantum-ms" -> rateQuantumMs = Double.parseDouble(value);
+            default -> throw new IllegalArgumentException("Unknown parameter: " + key);
+        }
+    }
+
+    /**
+     * Parses a byte count with an optional KB, MB or GB suffix, e.g. {@code 256KB}.
+     *
+     * @param value Byte count
+     * @return Number of bytes
+     */
+    static long parseBytes(String value) {
+        String v = value.trim().toUpperCase();
+        long multiplier = 1;
+        if (v.endsWith("GB")) multiplier = Constants.GB;
+        else if (v.endsWith("MB")) multiplier = Constants.MB;
+        else if (v.endsWith("KB")) multiplier = Constants.KB;
+        if (multiplier != 1) v = v.substring(0, v.length() - 2).trim();
+        return (long) (Double.parseDouble(v) * multiplier);
+    }
+
+    public int getInitialPeers() {
+        return initialPeers;
+    }
+
+    public void setInitialPeers(int initialPeers) {
+        this.initialPeers = initialPeers;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public void setTotalChunks(int totalChunks) {
+        this.totalChunks = totalChunks;
+    }
+
+    /**
+     * @return Share of initial peers, besides the download target and first seeder, that are
+     *         seeders; supernodes always take the first 20%
+     */
+    public double getSeederRatio() {
+        return seederRatio;
+    }
+
+    /**
+     * @param seederRatio Share of initial peers that are seeders, between 0 and 0.8
+     */
+    public void setSeederRatio(double seederRatio) {
+        if (!(seederRatio >= 0 && seederRatio <= 0.8)) {
+            throw new IllegalArgumentException("Seeder ratio must be between 0 and 0.8: " + seederRatio);
+        }
+        this.seederRatio = seederRatio;
+    }
+
+    /**
+     * @return Mean number of peers joining per tick
+     */
+    public double getJoinRate() {
+        return joinRate;
+    }
+
+    /**
+     * @param joinRate Mean peers joining per tick, between 0 and 1; in the tick model the chance
+     *                 that one joins
+     */
+    public void setJoinRate(double joinRate) {
+        this.joinRate = checkRate(joinRate);
+    }
+
+    /**
+     * @return Mean number of peers leaving per tick
+     */
+    public double getLeaveRate() {
+        return leaveRate;
+    }
+
+    /**
+     * @param leaveRate Mean peers leaving per tick, between 0 and 1; in the tick model the chance
+     *                  that one leaves
+     */
+    public void setLeaveRate(double leaveRate) {
+        this.leaveRate = checkRate(leaveRate);
+    }
+
+    /**
+     * @return Process by which peers arrive under session churn, or null if peers join and
+     *         leave at the fixed join and leave rates
+     */
+    public ArrivalProcess getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * @param arrivals Arrival process that turns on session churn, or null for the fixed
+     *                 join and leave rates
+     */
+    public void setArrivals(ArrivalProcess arrivals) {
+        this.arrivals = arrivals;
+    }
+
+    /**
+     * @return Ticks a peer stays under session churn, or a leecher tries to finish
+     */
+    public SessionLength getSessionLength() {
+        return sessionLength;
+    }
+
+    public void setSessionLength(SessionLength sessionLength) {
+        this.sessionLength = sessionLength;
+    }
+
+    /**
+     * @return Ticks a leecher keeps seeding after it finished, under session churn
+     */
+    public SessionLength getLingerTime() {
+        return lingerTime;
+    }
+
+    public void setLingerTime(SessionLength lingerTime) {
+        this.lingerTime = lingerTime;
+    }
+
+    /**
+     * @return Share of arrivals under session churn that are seeders
+     */
+    public double getJoinSeederRatio() {
+        return joinSeederRatio;
+    }
+
+    /**
+     * @param joinSeederRatio Share of arrivals that are seeders, between 0 and 1
+     */
+    public void setJoinSeederRatio(double joinSeederRatio) {
+        this.joinSeederRatio = checkShare(joinSeederRatio);
+    }
+
+    /**
+     * @return Share of arrivals under session churn that are supernodes
+     */
+    public double getJoinSupernodeRatio() {
+        return joinSupernodeRatio;
+    }
+
+    /**
+     * @param joinSupernodeRatio Share of arrivals that are supernodes, between 0 and 1
+     */
+    public void setJoinSupernodeRatio(double joinSupernodeRatio) {
+        this.joinSupernodeRatio = checkShare(joinSupernodeRatio);
+    }
+
+    /**
+     * @return Number of distinct peers an arrival connects to under session churn
+     */
+    public int getJoinDegree() {
+        return joinDegree;
+    }
+
+    /**
+     * @param joinDegree Distinct peers an arrival connects to, at least 1
+     */
+    public void setJoinDegree(int joinDegree) {
+        if (joinDegree < 1) throw new IllegalArgumentException("Join degree must be at least 1: " + joinDegree);
+        this.joinDegree = joinDegree;
+    }
+
+    private static double checkShare(double share) {
+        if (!(share >= 0 && share <= 1)) {
+            throw new IllegalArgumentException("Share of arrivals must be between 0 and 1: " + share);
+        }
+        return share;
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Churn rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    public void setMaxTicks(int maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * @return true if any event category is logged
+     */
+    public boolean isLoggingEnabled() {
+        return logCategories != 0;
+    }
+
+    /**
+     * @param loggingEnabled true to log every event category, false to log none
+     */
+    public void setLoggingEnabled(boolean loggingEnabled) {
+        this.logCategories = loggingEnabled ? EventCategory.ALL : 0;
+    }
+
+    /**
+     * @return Mask of logged {@link EventCategory} bits
+     */
+    public int getLogCategories() {
+        return logCategories;
+    }
+
+    public void setLogCategories(int logCategories) {
+        this.logCategories = logCategories;
+    }
+
+    /**
+     * @return File the event log is written to, or null for standard output
+     */
+    public Path getLogFile() {
+        return logFile;
+    }
+
+    public void setLogFile(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * @return true if headless runs print per-phase timings and counters after the result
+     */
+    public boolean isMetricsReported() {
+        return metricsReported;
+    }
+
+    public void setMetricsReported(boolean metricsReported) {
+        this.metricsReported = metricsReported;
+    }
+
+    /**
+     * @return Real file whose pieces the chunks stand for, or null for abstract chunks
+     */
+    public Path getSourceFile() {
+        return sourceFile;
+    }
+
+    public void setSourceFile(Path sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    /**
+     * @return Hashed pieces used as chunks, or null if none has been built
+     */
+    public PieceManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Uses the pieces of a hashed file as chunks: the chunk count, chunk size and file size
+     * are taken from the manifest.
+     * @param manifest Manifest built by a {@link PieceHasher}
+     */
+    public void setManifest(PieceManifest manifest) {
+        this.manifest = manifest;
+        this.sourceFile = manifest.getFile();
+        this.totalChunks = manifest.getPieceCount();
+        this.chunkSizeBytes = manifest.getPieceSize();
+        this.fileSizeBytes = manifest.getFileSize();
+    }
+
+    /**
+     * @return Checkpoint a run continues from, or null to build a new swarm
+     */
+    public Path getRestoreFile() {
+        return restoreFile;
+    }
+
+    public void setRestoreFile(Path restoreFile) {
+        this.restoreFile = restoreFile;
+    }
+
+    /**
+     * @return Checkpoint written when a headless run ends, or null for none
+     */
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @return File the run is traced to for replay, or null if not recorded
+     */
+    public Path getTraceFile() {
+        return traceFile;
+    }
+
+    public void setTraceFile(Path traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * @return Ticks between full-state keyframes in a trace
+     */
+    public int getTraceKeyframeTicks() {
+        return traceKeyframeTicks;
+    }
+
+    public void setTraceKeyframeTicks(int traceKeyframeTicks) {
+        this.traceKeyframeTicks = traceKeyframeTicks;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return Memory layout of per-peer state; does not change results
+     */
+    public PeerStorage getPeerStorage() {
+        return peerStorage;
+    }
+
+    public void setPeerStorage(PeerStorage peerStorage) {
+        this.peerStorage = peerStorage;
+    }
+
+    /**
+     * @return Simulation seed, or null if a random seed should be chosen
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public TopologyGenerator getTopology() {
+        return topology;
+    }
+
+    public void setTopology(TopologyGenerator topology) {
+        this.topology = topology;
+    }
+
+    public PieceSelection getPieceSelection() {
+        return pieceSelection;
+    }
+
+    public void setPieceSelection(PieceSelection pieceSelection) {
+        this.pieceSelection = pieceSelection;
+    }
+
+    public TransferModel getTransferModel() {
+        return transferModel;
+    }
+
+    public void setTransferModel(TransferModel transferModel) {
+        this.transferModel = transferModel;
+    }
+
+    public long getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    public void setChunkSizeBytes(long chunkSizeBytes) {
+        this.chunkSizeBytes = chunkSizeBytes;
+    }
+
+    /**
+     * @return File size in bytes, derived from the chunk count if not set explicitly
+     */
+    public long getFileSizeBytes() {
+        return fileSizeBytes > 0 ? fileSizeBytes : (long) totalChunks * chunkSizeBytes;
+    }
+
+    public void setFileSizeBytes(long fileSizeBytes) {
+        this.fileSizeBytes = fileSizeBytes;
+    }
+
+    public long getTickDurationMs() {
+        return tickDurationMs;
+    }
+
+    public void setTickDurationMs(long tickDurationMs) {
+        this.tickDurationMs = tickDurationMs;
+    }
+
+    public ClockMode getClockMode() {
+        return clockMode;
+    }
+
+    public void setClockMode(ClockMode clockMode) {
+        this.clockMode = clockMode;
+    }
+
+    /**
+     * @return Event queue implementation for event mode, "calendar" or "heap"
+     */
+    public String getEventQueue() {
+        return eventQueue;
+    }
+
+    public void setEventQueue(String eventQueue) {
+        this.eventQueue = eventQueue;
+    }
+
+    public long getRechokeIntervalMs() {
+        return rechokeIntervalMs;
+    }
+
+    public void setRechokeIntervalMs(long rechokeIntervalMs) {
+        this.rechokeIntervalMs = rechokeIntervalMs;
+    }
+
+    /**
+     * @return Longest delay before event mode recomputes changed rates, in milliseconds;
+     *         0 is exact, and the default is one tick so rates are as fresh as in tick mode
+     */
+    public double getRateQuantumMs() {
+        return rateQuantumMs < 0 ? tickDurationMs : rateQuantumMs;
+    }
+
+    public void setRateQuantumMs(double rateQuantumMs) {
+        this.rateQuantumMs = rateQuantumMs;
+    }
+}
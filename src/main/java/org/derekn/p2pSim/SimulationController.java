@@ -1,20 +1,69 @@
 package org.derekn.p2pSim;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * Controls the overall simulation of the P2P file-sharing network.
  * Manages peer creation, chunk transfers, and simulation ticks.
  */
 public class SimulationController {
-    private List<PeerNode> allPeers; // All peers in the simulation
+    private static final double LAYOUT_MARGIN = 100;       // Empty border around the layout area
+    private static final double LAYOUT_WIDTH = 600;        // Layout area of a swarm of LAYOUT_BASE_PEERS
+    private static final double LAYOUT_HEIGHT = 400;
+    private static final int LAYOUT_BASE_PEERS = 100;      // Larger swarms get a proportionally larger area
+
+    private final PeerRegistry allPeers; // All live peers, indexed by slot and ID
     private int totalChunks; // Total number of chunks to be downloaded
     private PeerNode downloadTarget; // The peer we are tracking for completion
     private boolean simulationRunning; // Flag to control simulation state
     private int tickCount; // Number of ticks since simulation start
     private int ticksSinceLastProgress = 0; // Ticks since last successful download
-    private int lastChunkCount = 0; // Last known chunk count for stall detection
+    private long lastProgressBytes = 0; // Target bytes at last check, for stall detection
+    private long targetProgressBytes = 0; // Bytes the target has received, including partial chunks
+    private long totalInstantBytes = 0; // Bytes moved in the one-chunk-per-tick model
+    private long lastTickInstantBytes = 0; // Bytes moved by the last tick in that model
     public final int stallThreshold; // Number of idle ticks before detecting stall
+    private final EventLog log; // Structured event sink; records nothing unless enabled
+    private final TraceRecorder trace; // Binary trace for later replay, or null when not recording
+    private final SimulationMetrics metrics = new SimulationMetrics(); // Phase timings and activity counters
+    private final TransferPlanner planner; // Two-phase transfer selection
+    private final ForkJoinPool pool; // Workers of the read phase, or null on the calling thread
+    private final ChunkAvailability availability; // Swarm-wide holders per chunk
+    private final ChunkReachability reachability; // Whether every chunk can still reach the target
+    private final long chunkSizeBytes; // Size of every chunk but the last
+    private final long fileSizeBytes; // Size of the whole file
+    private final PieceManifest manifest; // Hashed pieces the chunks stand for, or null
+    private final long tickDurationMs; // Simulated time covered by one tick
+    private final TransferModel transferModel; // Model parameters kept for checkpoints
+    private final PieceSelection pieceSelection;
+    private final long rechokeIntervalMs;
+    private final double rateQuantumMs;
+    private final BandwidthTransferEngine bandwidth; // Byte-accurate transfers, or null for one chunk per tick
+    private final LoopbackTransferEngine loopback; // Real transfers over loopback in the live model, or null
+    private final DiscreteEventEngine events; // Event-driven clock, or null for fixed ticks
+    private long targetCompletedBytes = 0; // Bytes of chunks the target has finished receiving
+    private final long seed; // Seed from which all random streams are derived
+    private final RandomStream layoutRng; // Peer coordinates
+    private final RandomStream roleRng; // Role assignment of initial peers
+    private final RandomStream topologyRng; // Initial connection graph
+    private final RandomStream churnRng; // Arrivals and departures
+    private final double layoutScale; // Side-length factor of the layout area, at least 1
+    private final double seederRatio; // Share of initial peers that are seeders
+    private final double joinRate; // Arrivals per tick
+    private final double leaveRate; // Departures per tick
+    private final SessionChurn sessions; // Arrivals and scheduled departures, or null for the fixed rates
+    private final int joinDegree; // Distinct peers a session churn arrival connects to
+
+    // Recorded totals while replaying a trace instead of simulating
+    private boolean replaying;
+    private double replaySeconds;
+    private long replayBytes;
+    private long replayTickBytes; // Bytes moved in the last replayed tick
 
     /**
      * Constructs a SimulationController and initializes peers.
@@ -22,62 +71,165 @@ public class SimulationController {
      * @param totalChunks Total number of file chunks in simulation
      */
     public SimulationController(int initialPeers, int totalChunks) {
-        this.totalChunks = totalChunks;
+        this(new SimulationConfig(initialPeers, totalChunks));
+    }
+
+    /**
+     * Constructs a SimulationController from a full configuration.
+     * @param config Simulation parameters
+     */
+    public SimulationController(SimulationConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * Constructs a controller that either builds a new swarm from the configuration or
+     * continues one read from a checkpoint.
+     * @param config Simulation parameters; when restoring, the model parameters must already
+     *               match the checkpoint's
+     * @param checkpoint Checkpoint positioned after its model parameters, or null for a new swarm
+     */
+    private SimulationController(SimulationConfig config, CheckpointReader checkpoint) {
+        this.totalChunks = config.getTotalChunks();
         this.stallThreshold = Math.max(10, totalChunks / 4); // Define stalling condition
-        this.allPeers = new ArrayList<>();
+        this.log = EventLog.open(config.getLogCategories(), config.getLogFile());
+        this.allPeers = new PeerRegistry(config.getPeerStorage() == PeerStorage.COLUMNAR
+                ? new PeerColumns(totalChunks) : null);
         this.simulationRunning = false;
         this.tickCount = 0;
+        this.pool = createPool(config.getParallelism());
+        this.chunkSizeBytes = config.getChunkSizeBytes();
+        this.fileSizeBytes = config.getFileSizeBytes();
+        this.manifest = config.getManifest();
+        if (manifest != null && (manifest.getPieceCount() != totalChunks || manifest.getPieceSize() != chunkSizeBytes
+                || manifest.getFileSize() != fileSizeBytes)) {
+            throw new IllegalArgumentException("Manifest of " + manifest.getFile() + " does not match the chunks");
+        }
+        this.tickDurationMs = config.getTickDurationMs();
+        this.seederRatio = config.getSeederRatio();
+        this.joinRate = config.getJoinRate();
+        this.leaveRate = config.getLeaveRate();
+        this.transferModel = config.getTransferModel();
+        this.pieceSelection = config.getPieceSelection();
+        this.rechokeIntervalMs = config.getRechokeIntervalMs();
+        this.rateQuantumMs = config.getRateQuantumMs();
+        boolean eventClock = config.getClockMode() == ClockMode.EVENT; // Events need byte-accurate transfers
+        if (transferModel == TransferModel.LIVE) {
+            // A restored swarm may only be replayed, which needs no file; ticking it does
+            if (manifest == null && checkpoint == null) {
+                throw new IllegalArgumentException("Live transfers need a --file to send");
+            }
+            if (eventClock) throw new IllegalArgumentException("Live transfers need the tick clock");
+        }
+        this.bandwidth = eventClock || transferModel == TransferModel.BANDWIDTH
+                ? new BandwidthTransferEngine() : null;
+        this.loopback = transferModel == TransferModel.LIVE && manifest != null
+                ? new LoopbackTransferEngine(manifest) : null;
+        this.availability = new ChunkAvailability(totalChunks);
+        ChunkAvailability selection = pieceSelection == PieceSelection.RAREST_FIRST ? availability : null;
+        this.planner = new TransferPlanner(pool, totalChunks, selection, bandwidth != null);
+
+        long savedSeed = checkpoint != null ? checkpoint.getLong() : 0;
+        if (checkpoint != null && (config.getSeed() == null || config.getSeed() == savedSeed)) {
+            // Continue exactly where the checkpointed run left off
+            this.seed = savedSeed;
+            this.layoutRng = checkpoint.getStream();
+            this.roleRng = checkpoint.getStream();
+            this.topologyRng = checkpoint.getStream();
+            this.churnRng = checkpoint.getStream();
+        } else {
+            this.seed = config.getSeed() != null ? config.getSeed() : RandomStream.unseeded().nextLong();
+            this.layoutRng = RandomStream.derive(seed, RandomStream.Purpose.LAYOUT);
+            this.roleRng = RandomStream.derive(seed, RandomStream.Purpose.ROLES);
+            this.topologyRng = RandomStream.derive(seed, RandomStream.Purpose.TOPOLOGY);
+            this.churnRng = RandomStream.derive(seed, RandomStream.Purpose.CHURN);
+            if (checkpoint != null) {
+                // A different seed forks the run: same swarm, fresh randomness from here on
+                for (int i = 0; i < 4; i++) checkpoint.getStream();
+            }
+        }
 
-        createInitialPeers(initialPeers);
+        if (checkpoint == null) {
+            // Keep peer density constant so big swarms spread out instead of piling up
+            this.layoutScale = Math.max(1, Math.sqrt((double) config.getInitialPeers() / LAYOUT_BASE_PEERS));
+            createInitialPeers(config.getInitialPeers(), config.getTopology(), pool);
+        } else {
+            this.layoutScale = checkpoint.getDouble();
+            readSwarm(checkpoint);
+        }
+        this.reachability = new ChunkReachability(downloadTarget, totalChunks);
+        this.joinDegree = config.getJoinDegree();
+        this.sessions = config.getArrivals() != null ? new SessionChurn(config, churnRng, tickCount) : null;
+        if (checkpoint != null) SessionChurn.readFrom(checkpoint, sessions);
+        if (sessions != null) {
+            // Peers without a scheduled departure, such as all of a new swarm's, start a session now
+            for (PeerNode peer : allPeers) {
+                if (!sessions.hasSession(peer)) sessions.begin(peer);
+            }
+        }
+
+        this.events = eventClock
+                ? new DiscreteEventEngine(this, bandwidth, planner, selection,
+                        EventQueue.create(config.getEventQueue()), churnRng,
+                        sessions != null ? 0 : joinRate, sessions != null ? 0 : leaveRate, totalChunks,
+                        tickDurationMs / 1000.0, rechokeIntervalMs / 1000.0, rateQuantumMs / 1000.0)
+                : null;
+        if (events != null) {
+            if (checkpoint == null) events.scheduleInitialEvents();
+            else events.readFrom(checkpoint, bandwidth.getActiveTransfers());
+        }
+
+        this.trace = config.getTraceFile() != null
+                ? new TraceRecorder(config.getTraceFile(), config.getTraceKeyframeTicks()) : null;
+        if (trace != null) trace.keyframe(this); // Replays start from the initial state
     }
 
     /**
-     * Initializes a swarm of peers including a download target and seeders.
+     * Chooses the pool used for the parallel read phase of each tick.
+     * @param parallelism Worker count; 0 uses the common pool, 1 runs on the calling thread
      */
-    private void createInitialPeers(int count) {
-        for (int i = 0; i < count; i++) {
+    private static ForkJoinPool createPool(int parallelism) {
+        if (parallelism == 1) return null;
+        if (parallelism <= 0) return ForkJoinPool.commonPool();
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Initializes a swarm of peers including a download target and seeders,
+     * then connects them with the configured topology generator.
+     */
+    private void createInitialPeers(int count, TopologyGenerator topology, ForkJoinPool pool) {
+        for (int n = 0; n < count; n++) {
+            int i = allPeers.nextId();
             double x = randomX();
             double y = randomY();
 
+            RandomStream bandwidthRng = bandwidthStream(i);
             PeerNode peer;
 
             if (i == 0) {
                 // Designate the first node as the Client (download target)
-                peer = new Client(i, x, y, totalChunks);
+                peer = new Client(i, x, y, totalChunks, bandwidthRng);
                 this.downloadTarget = peer;
             } else if (i == 1) {
                 // Ensure at least one Seeder exists
-                peer = new Seeder(i, x, y, totalChunks);
+                peer = new Seeder(i, x, y, totalChunks, bandwidthRng);
             } else {
-                double r = Math.random();
+                double r = roleRng.nextDouble();
                 if (r < 0.2) {
-                    peer = new Supernode(i, x, y, totalChunks);
-                } else if (r < 0.5) {
-                    peer = new Seeder(i, x, y, totalChunks);
+                    peer = new Supernode(i, x, y, totalChunks, bandwidthRng);
+                } else if (r < 0.2 + seederRatio) {
+                    peer = new Seeder(i, x, y, totalChunks, bandwidthRng);
                 } else {
-                    peer = new Leecher(i, x, y, totalChunks);
+                    peer = new Leecher(i, x, y, totalChunks, bandwidthRng);
                 }
             }
 
-            System.out.printf("Created Peer %d: %s\n", peer.getId(), peer.getNodeType());
-
-            allPeers.add(peer);
+            addPeer(peer);
+            log.log(EventCategory.JOIN, 0, peer.getId(), -1, 0, peer.getNodeType());
         }
 
-        connectPeersRandomly(); // Establish initial connections
-    }
-
-    /**
-     * Randomly creates bidirectional connections between peers.
-     */
-    private void connectPeersRandomly() {
-        for (PeerNode a : allPeers) {
-            for (PeerNode b : allPeers) {
-                if (a != b && Math.random() < 0.2) {
-                    a.connectTo(b);
-                }
-            }
-        }
+        topology.connect(allPeers, topologyRng, pool); // Establish initial connections
     }
 
     /**
@@ -86,50 +238,185 @@ public class SimulationController {
     public void tick() {
         if (!simulationRunning) return;
 
-        tickCount++;
+        TickEvent event = new TickEvent();
+        event.begin();
+        long tickStart = System.nanoTime();
+        long transfersBefore = metrics.getTransfers();
+        long joinsBefore = metrics.getJoins();
+        long leavesBefore = metrics.getLeaves();
+        long bytesBefore = event.isEnabled() ? getTotalBytesTransferred() : 0;
+        metrics.beginTick();
 
-        simulateChurn();
-        simulateChunkTransfers();
+        tickCount++;
 
-        // Debug: print current missing chunks for target
-        System.out.println("Target missing: " + getDownloadTarget().getMissingChunks());
+        if (events != null) {
+            // Event mode: process every event up to the end of this tick
+            double before = targetBytes();
+            if (sessions != null) simulateSessionChurn(events::joined, events::leave);
+            events.runUntil(tickCount * tickDurationMs / 1000.0);
+            recordTargetProgress(before);
+            metrics.record(TickPhase.EVENTS, System.nanoTime() - tickStart);
+        } else {
+            if (sessions != null) simulateSessionChurn(peer -> { }, this::departPeer);
+            else simulateChurn();
+            metrics.record(TickPhase.CHURN, System.nanoTime() - tickStart);
+            simulateChunkTransfers();
+        }
 
-        // Debug: print target's connections and their chunks
-        for (NetworkNode conn : getDownloadTarget().getConnections()) {
-            if (conn instanceof PeerNode p) {
-                System.out.print("Connected to Peer " + p.getId() + " with chunks: ");
-                System.out.println(p.getOwnedChunks().isEmpty() ? "None" : p.getOwnedChunks());
-            }
+        if (log.isEnabled(EventCategory.TARGET)) {
+            // Debug: how much the target still lacks and how many peers it can ask
+            log.log(EventCategory.TARGET, tickCount, downloadTarget.getId(),
+                    downloadTarget.getConnections().size(), totalChunks - downloadTarget.getOwnedChunkCount(), null);
         }
 
         // If file is fully downloaded, end the simulation
         if (downloadTarget.hasCompleteFile()) {
             simulationRunning = false;
-            System.out.println("File download complete at tick " + tickCount);
+            log.log(EventCategory.COMPLETE, tickCount, downloadTarget.getId(), -1, 0, null);
+            if (trace != null) trace.complete(downloadTarget.getId());
+        }
+        if (trace != null) trace.endTick(this);
+
+        metrics.record(TickPhase.TICK, System.nanoTime() - tickStart);
+        event.end();
+        if (event.shouldCommit()) {
+            event.tick = tickCount;
+            event.peers = allPeers.size();
+            event.transfers = metrics.getTransfers() - transfersBefore;
+            event.joins = metrics.getJoins() - joinsBefore;
+            event.leaves = metrics.getLeaves() - leavesBefore;
+            event.bytes = getTotalBytesTransferred() - bytesBefore;
+            event.churn = metrics.lastNanos(TickPhase.CHURN);
+            event.select = metrics.lastNanos(TickPhase.SELECT);
+            event.transfer = metrics.lastNanos(TickPhase.TRANSFER);
+            event.commit = metrics.lastNanos(TickPhase.COMMIT);
+            event.events = metrics.lastNanos(TickPhase.EVENTS);
+            event.commit();
         }
     }
 
     /**
      * Facilitates chunk transfers from neighbors to leechers.
+     * Transfers are selected in parallel against the state left by the previous tick,
+     * then committed in peer order so results do not depend on thread count.
      */
     private void simulateChunkTransfers() {
-        for (PeerNode node : allPeers) {
+        if (bandwidth != null) {
+            simulateBandwidthTransfers();
+            return;
+        }
+
+        long start = System.nanoTime();
+        planner.plan(allPeers); // Read phase: no peer is modified
+        lastTickInstantBytes = 0;
+        long planned = System.nanoTime();
+        metrics.record(TickPhase.SELECT, planned - start);
+
+        boolean[] delivered = null; // Live model: which planned chunks really arrived
+        if (transferModel == TransferModel.LIVE) {
+            if (loopback == null) throw new IllegalStateException("Live transfers need a --file to send");
+            delivered = loopback.transfer(allPeers, planner);
+            long moved = System.nanoTime();
+            metrics.record(TickPhase.TRANSFER, moved - planned);
+            planned = moved;
+        }
+
+        // Commit phase: apply the selected transfers
+        int n = 0;
+        for (int i = 0; i < allPeers.size(); i++) {
+            PeerNode node = allPeers.get(i);
             node.clearTransfers(); // Reset transfer logs for tick
 
-            if (node instanceof Leecher leecher) {
-                for (NetworkNode neighbor : node.getConnections()) {
-                    if (neighbor instanceof PeerNode otherPeer) {
-                        if (leecher.downloadFrom(otherPeer)) {
-                            leecher.addTransfer(new Transfer(otherPeer, leecher));
-
-                            // Debug: Log successful transfer
-                            System.out.printf("Tick %d: Peer %d received chunk from Peer %d%n",
-                                    tickCount, leecher.getId(), otherPeer.getId());
-                        }
-                    }
-                }
+            for (int k = 0; k < planner.countFor(i); k++) {
+                if (delivered != null && !delivered[n++]) continue;
+                PeerNode otherPeer = planner.senderAt(i, k);
+                int chunk = planner.chunkAt(i, k);
+                completeChunk(node, chunk);
+                node.addTransfer(new Transfer(otherPeer, node));
+                log.log(EventCategory.TRANSFER, tickCount, node.getId(), otherPeer.getId(), chunk, null);
+                if (trace != null) trace.transfer(node.getId(), otherPeer.getId(), chunk);
             }
         }
+        planner.release();
+        metrics.record(TickPhase.COMMIT, System.nanoTime() - planned);
+    }
+
+    /**
+     * Bandwidth model: starts a transfer for every idle neighbour that has a wanted chunk,
+     * then moves bytes for one tick at max-min fair rates and commits finished chunks.
+     */
+    private void simulateBandwidthTransfers() {
+        long start = System.nanoTime();
+        planner.plan(allPeers); // Read phase: no peer is modified
+
+        for (int i = 0; i < allPeers.size(); i++) {
+            PeerNode node = allPeers.get(i);
+            for (int k = 0; k < planner.countFor(i); k++) {
+                int chunk = planner.chunkAt(i, k);
+                bandwidth.start(new Transfer(planner.senderAt(i, k), node, chunk, getChunkBytes(chunk)));
+            }
+        }
+        planner.release();
+        long planned = System.nanoTime();
+        metrics.record(TickPhase.SELECT, planned - start);
+
+        double before = targetBytes();
+        List<Transfer> completed = new ArrayList<>();
+        bandwidth.advance(tickDurationMs / 1000.0, completed::add);
+        long advanced = System.nanoTime();
+        metrics.record(TickPhase.TRANSFER, advanced - planned);
+
+        for (Transfer t : completed) commitTransfer(t);
+        recordTargetProgress(before);
+        metrics.record(TickPhase.COMMIT, System.nanoTime() - advanced);
+    }
+
+    /**
+     * Applies a finished byte-accurate transfer: the receiver gains the chunk unless it
+     * already got it from another sender.
+     * @param t Completed transfer
+     */
+    void commitTransfer(Transfer t) {
+        PeerNode receiver = t.getReceiver();
+        if (receiver == downloadTarget) targetCompletedBytes += t.getSizeBytes();
+        if (!receiver.hasChunk(t.getChunk())) {
+            receiver.receiveChunk(t.getChunk());
+            availability.increment(t.getChunk());
+            reachability.received(receiver, t.getChunk());
+            if (sessions != null && receiver.hasCompleteFile()) sessions.completed(receiver);
+        }
+        metrics.countTransfer();
+        log.log(EventCategory.TRANSFER, tickCount, receiver.getId(), t.getSender().getId(), t.getChunk(), null);
+        if (trace != null) trace.transfer(receiver.getId(), t.getSender().getId(), t.getChunk());
+    }
+
+    /**
+     * Records a whole chunk arriving at a peer in the one-chunk-per-tick model.
+     */
+    private void completeChunk(PeerNode node, int chunk) {
+        long bytes = getChunkBytes(chunk);
+        node.receiveChunk(chunk);
+        availability.increment(chunk);
+        reachability.received(node, chunk);
+        if (sessions != null && node.hasCompleteFile()) sessions.completed(node);
+        metrics.countTransfer();
+        lastTickInstantBytes += bytes;
+        totalInstantBytes += bytes;
+        if (node == downloadTarget) targetProgressBytes += bytes;
+    }
+
+    // Bytes the target has received in finished and in-flight transfers
+    private double targetBytes() {
+        double sum = targetCompletedBytes;
+        for (Transfer t : downloadTarget.getActiveTransfers()) {
+            sum += events != null ? t.bytesAt(events.now()) : t.getBytesDone();
+        }
+        return sum;
+    }
+
+    // Credits the target's progress since the given byte count; cancelled transfers never count as negative
+    private void recordTargetProgress(double before) {
+        targetProgressBytes += Math.max(0, Math.round(targetBytes() - before));
     }
 
     /**
@@ -137,31 +424,139 @@ public class SimulationController {
      */
     private void simulateChurn() {
         // Randomly remove a peer
-        if (Math.random() < 0.05 && allPeers.size() > 3) {
-            PeerNode toRemove = allPeers.get(new Random().nextInt(allPeers.size()));
-
-            if (toRemove.canDisconnect()) {
-                allPeers.remove(toRemove);
-                for (PeerNode peer : allPeers) {
-                    peer.disconnectFrom(toRemove);
-                }
-                System.out.println("Peer " + toRemove.getId() + " disconnected.");
-            }
+        if (churnRng.nextDouble() < leaveRate) {
+            PeerNode toRemove = pickDepartingPeer();
+            if (toRemove != null) departPeer(toRemove);
         }
 
         // Randomly add a new peer
-        if (Math.random() < 0.1) {
-            int id = allPeers.size();
-            double x = randomX(), y = randomY();
-            PeerNode newPeer = new Leecher(id, x, y, totalChunks);
-            allPeers.add(newPeer);
-
-            // Connect new peer to up to 3 random existing peers
-            for (int i = 0; i < 3; i++) {
-                PeerNode other = allPeers.get(new Random().nextInt(allPeers.size()));
-                newPeer.connectTo(other);
-            }
+        if (churnRng.nextDouble() < joinRate) {
+            addRandomLeecher();
+        }
+    }
+
+    /**
+     * Session churn: peers whose session ended leave, then the tick's arrivals join.
+     * @param joined Called with each arriving peer once it is connected
+     * @param leave Removes a departing peer, through {@link #departPeer}
+     */
+    private void simulateSessionChurn(Consumer<PeerNode> joined, Consumer<PeerNode> leave) {
+        for (int k = 0, n = sessions.advance(); k < n; k++) {
+            PeerNode peer = allPeers.byId(sessions.leavingAt(k));
+            if (peer != null) leave.accept(peer);
+        }
+        for (int n = sessions.arrivals(); n > 0; n--) {
+            PeerNode peer = addArrival(sessions.drawRole());
+            sessions.begin(peer);
+            joined.accept(peer);
+        }
+    }
+
+    /**
+     * Picks a random peer to leave the swarm.
+     * @return The peer, or null if the swarm is too small or the pick cannot disconnect
+     */
+    PeerNode pickDepartingPeer() {
+        if (allPeers.size() <= 3) return null;
+        PeerNode peer = allPeers.get(churnRng.nextInt(allPeers.size()));
+        return peer.canDisconnect() ? peer : null;
+    }
+
+    /**
+     * Removes a departing peer and logs the departure.
+     * @param peer Peer leaving the swarm
+     */
+    void departPeer(PeerNode peer) {
+        removePeer(peer);
+        if (loopback != null) loopback.remove(peer);
+        if (sessions != null) sessions.forget(peer);
+        metrics.countLeave();
+        log.log(EventCategory.LEAVE, tickCount, peer.getId(), -1, 0, null);
+        if (trace != null) trace.leave(peer.getId());
+    }
+
+    /**
+     * Adds a new leecher connected to up to 3 random existing peers.
+     * @return The new peer
+     */
+    PeerNode addRandomLeecher() {
+        int id = allPeers.nextId();
+        double x = randomX(), y = randomY();
+        PeerNode newPeer = new Leecher(id, x, y, totalChunks, bandwidthStream(id));
+        addPeer(newPeer);
+        metrics.countJoin();
+        log.log(EventCategory.JOIN, tickCount, id, -1, 0, newPeer.getNodeType());
+
+        // Connect new peer to up to 3 random existing peers
+        for (int i = 0; i < 3; i++) {
+            PeerNode other = allPeers.get(churnRng.nextInt(allPeers.size()));
+            connect(newPeer, other);
+        }
+        if (trace != null) trace.join(newPeer);
+        return newPeer;
+    }
+
+    /**
+     * Adds an arriving peer connected to distinct random peers, as many as the join degree
+     * asks for or the swarm has.
+     * @param role Role code, see {@link #roleCode}; seeders arrive with the whole file
+     * @return The new peer
+     */
+    PeerNode addArrival(int role) {
+        int id = allPeers.nextId();
+        double x = randomX(), y = randomY();
+        RandomStream bandwidthRng = bandwidthStream(id);
+        PeerNode newPeer = switch (role) {
+            case 1 -> new Seeder(id, x, y, totalChunks, bandwidthRng);
+            case 3 -> new Supernode(id, x, y, totalChunks, bandwidthRng);
+            default -> new Leecher(id, x, y, totalChunks, bandwidthRng);
+        };
+        addPeer(newPeer);
+        metrics.countJoin();
+        log.log(EventCategory.JOIN, tickCount, id, -1, 0, newPeer.getNodeType());
+
+        // Redraw duplicates so the peer gets the full degree; the expected draws stay low
+        // unless the swarm is barely larger than the degree
+        int degree = Math.min(joinDegree, allPeers.size() - 1);
+        while (newPeer.getConnections().size() < degree) {
+            PeerNode other = allPeers.get(churnRng.nextInt(allPeers.size()));
+            connect(newPeer, other);
         }
+        if (trace != null) trace.join(newPeer);
+        return newPeer;
+    }
+
+    /**
+     * Adds a peer to the swarm. Its ID must come from the registry.
+     * @param peer Peer joining the swarm
+     */
+    private void addPeer(PeerNode peer) {
+        allPeers.add(peer);
+        availability.addPeer(peer);
+    }
+
+    /**
+     * Connects a peer that just joined, keeping the structures that follow connections in step.
+     * @param peer Joining peer
+     * @param other Peer to connect it to
+     */
+    private void connect(PeerNode peer, PeerNode other) {
+        if (!peer.connectTo(other)) return;
+        reachability.connected(peer, other);
+        allPeers.connected(peer, other);
+    }
+
+    /**
+     * Removes a peer and all of its connections.
+     * Cost is proportional to the departing peer's degree, not the swarm size.
+     * @param peer Peer leaving the swarm
+     */
+    private void removePeer(PeerNode peer) {
+        allPeers.swapRemove(peer);
+        availability.removePeer(peer);
+        if (bandwidth != null) bandwidth.cancelPeer(peer);
+        reachability.departed(peer);
+        peer.disconnectAll();
     }
 
     public void startSimulation() {
@@ -172,6 +567,311 @@ public class SimulationController {
         simulationRunning = false;
     }
 
+    /**
+     * @return Phase timings and activity counters; updated by the thread advancing the simulation
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Measurements of the live transfer model, or null for the other models
+     */
+    public LoopbackTransferEngine getLoopback() {
+        return loopback;
+    }
+
+    /**
+     * Writes out any logged events still buffered and releases the event log, the trace,
+     * the sockets of the live model and the controller's own worker threads.
+     * The controller should not be ticked afterwards.
+     */
+    public void close() {
+        log.close();
+        if (trace != null) trace.close();
+        if (loopback != null) loopback.close();
+        if (pool != null && pool != ForkJoinPool.commonPool()) pool.shutdown();
+    }
+
+    /**
+     * Writes the complete state of the simulation to a compact binary checkpoint: model
+     * parameters, random stream states, every peer with its role, speeds, position and
+     * chunks, the connection graph, in-flight transfers, scheduled departures under session
+     * churn and, in event mode, the pending events. Restoring it with {@link #restore} continues the run exactly as if it had
+     * never stopped. Phase timings are not saved.
+     * <p>
+     * Must be called from the thread advancing the simulation, between ticks.
+     * @param file File to create or replace; it keeps its old contents if saving fails
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCheckpoint(Path file) throws IOException {
+        try (CheckpointWriter out = new CheckpointWriter(file)) {
+            writeCheckpoint(out);
+            out.finish();
+        }
+    }
+
+    /**
+     * Writes the body of a checkpoint, between the writer's header and end marker.
+     * @param out Checkpoint being written
+     */
+    void writeCheckpoint(CheckpointWriter out) {
+        out.putInt(totalChunks);
+        out.putLong(chunkSizeBytes);
+        out.putLong(fileSizeBytes);
+        out.putLong(tickDurationMs);
+        out.putString(transferModel.name());
+        out.putString(pieceSelection.name());
+        out.putString((events != null ? ClockMode.EVENT : ClockMode.TICK).name());
+        out.putLong(rechokeIntervalMs);
+        out.putDouble(rateQuantumMs);
+
+        out.putLong(seed);
+        out.putStream(layoutRng);
+        out.putStream(roleRng);
+        out.putStream(topologyRng);
+        out.putStream(churnRng);
+        out.putDouble(layoutScale);
+        writeSwarm(out);
+        if (sessions != null) sessions.writeTo(out);
+        else out.putInt(0); // No scheduled departures
+        if (events != null) events.writeTo(out);
+    }
+
+    /**
+     * Continues a simulation from a checkpoint written by {@link #saveCheckpoint}.
+     * The model parameters stored in the checkpoint (chunks, sizes, tick length, transfer
+     * model, piece selection, clock) are copied into the configuration; threads, logging,
+     * churn settings and the event queue are taken from it. Under session churn, scheduled
+     * departures are kept and peers without one, as after a run with fixed rates, start a
+     * fresh session. If the configuration has a seed different from the
+     * checkpoint's, the swarm is kept but all randomness from then on is derived from the
+     * new seed, so many diverging runs can be forked from one warmed-up swarm.
+     * @param file Checkpoint file
+     * @param config Runtime parameters; updated with the checkpoint's model parameters
+     * @return Controller positioned at the checkpointed tick, not yet running
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the file is not a valid checkpoint
+     */
+    public static SimulationController restore(Path file, SimulationConfig config) throws IOException {
+        try (CheckpointReader in = new CheckpointReader(file)) {
+            return restore(in, config);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads a whole checkpoint, see {@link #restore(Path, SimulationConfig)}.
+     * @param in Checkpoint positioned after its header
+     * @param config Runtime parameters; updated with the checkpoint's model parameters
+     * @return Restored controller
+     */
+    static SimulationController restore(CheckpointReader in, SimulationConfig config) {
+        config.setTotalChunks(in.getInt());
+        config.setChunkSizeBytes(in.getLong());
+        config.setFileSizeBytes(in.getLong());
+        config.setTickDurationMs(in.getLong());
+        config.setTransferModel(TransferModel.valueOf(in.getString()));
+        config.setPieceSelection(PieceSelection.valueOf(in.getString()));
+        config.setClockMode(ClockMode.valueOf(in.getString()));
+        config.setRechokeIntervalMs(in.getLong());
+        config.setRateQuantumMs(in.getDouble());
+
+        SimulationController controller = new SimulationController(config, in);
+        in.finish();
+        config.setInitialPeers(controller.allPeers.size());
+        return controller;
+    }
+
+    // Progress counters, peers in slot order, connections, chunk counts and transfers
+    private void writeSwarm(CheckpointWriter out) {
+        out.putInt(tickCount);
+        out.putInt(ticksSinceLastProgress);
+        out.putLong(lastProgressBytes);
+        out.putLong(targetProgressBytes);
+        out.putLong(totalInstantBytes);
+        out.putLong(lastTickInstantBytes);
+        out.putLong(targetCompletedBytes);
+
+        out.putInt(allPeers.peekNextId());
+        out.putInt(allPeers.size());
+        for (PeerNode peer : allPeers) {
+            out.putByte(roleCode(peer));
+            out.putInt(peer.getId());
+            out.putDouble(peer.getX());
+            out.putDouble(peer.getY());
+            out.putDouble(peer.getUploadSpeed());
+            out.putDouble(peer.getDownloadSpeed());
+            out.putBoolean(peer.canDisconnect());
+            peer.getChunkBitmap().writeTo(out);
+        }
+        out.putInt(downloadTarget.getId());
+
+        // Each peer's neighbours in their stored order, which decides transfer selection order
+        for (PeerNode peer : allPeers) {
+            NeighborSet neighbors = peer.getNeighborSet();
+            out.putInt(neighbors.size());
+            for (int k = 0; k < neighbors.size(); k++) out.putInt(neighbors.idAt(k));
+        }
+        availability.writeTo(out);
+
+        if (bandwidth != null) {
+            bandwidth.writeTo(out, allPeers);
+        } else {
+            // Transfers of the last tick, kept only for display
+            for (PeerNode peer : allPeers) {
+                List<Transfer> transfers = peer.getActiveTransfers();
+                out.putInt(transfers.size());
+                for (Transfer t : transfers) out.putInt(t.getSender().getId());
+            }
+        }
+    }
+
+    // Reads back what writeSwarm wrote into an empty controller
+    private void readSwarm(CheckpointReader in) {
+        tickCount = in.getInt();
+        ticksSinceLastProgress = in.getInt();
+        lastProgressBytes = in.getLong();
+        targetProgressBytes = in.getLong();
+        totalInstantBytes = in.getLong();
+        lastTickInstantBytes = in.getLong();
+        targetCompletedBytes = in.getLong();
+
+        int nextId = in.getInt();
+        int count = in.getInt();
+        for (int n = 0; n < count; n++) {
+            int role = in.getByte();
+            int id = in.getInt();
+            double x = in.getDouble();
+            double y = in.getDouble();
+            double upload = in.getDouble();
+            double download = in.getDouble();
+            boolean canDisconnect = in.getBoolean();
+            PeerNode peer = recreatePeer(role, id, x, y, upload, download, ChunkBitmap.readFrom(in, totalChunks));
+            peer.setCanDisconnect(canDisconnect);
+            allPeers.add(peer);
+        }
+        allPeers.resumeIds(nextId); // IDs of departed peers are not reused
+        downloadTarget = allPeers.byId(in.getInt());
+
+        for (PeerNode peer : allPeers) {
+            NeighborSet neighbors = peer.getNeighborSet();
+            for (int k = in.getInt(); k > 0; k--) neighbors.addNode(allPeers.byId(in.getInt()));
+        }
+        availability.readFrom(in);
+
+        if (bandwidth != null) {
+            bandwidth.readFrom(in, allPeers);
+        } else {
+            for (PeerNode peer : allPeers) {
+                for (int k = in.getInt(); k > 0; k--) peer.addTransfer(new Transfer(allPeers.byId(in.getInt()), peer));
+            }
+        }
+    }
+
+    /**
+     * @param peer Peer
+     * @return Code of the peer's role in checkpoints and traces: 0 Client, 1 Seeder, 2 Leecher, 3 Supernode
+     */
+    static int roleCode(PeerNode peer) {
+        if (peer instanceof Client) return 0; // Before its superclass Leecher
+        if (peer instanceof Seeder) return 1;
+        if (peer instanceof Supernode) return 3;
+        return 2;
+    }
+
+    // Rebuilds a saved peer without connections; its speeds replace the randomized ones
+    private static PeerNode recreatePeer(int role, int id, double x, double y, double upload, double download,
+                                         ChunkBitmap chunks) {
+        int totalChunks = chunks.size();
+        RandomStream unused = new RandomStream(0);
+        PeerNode peer = switch (role) {
+            case 0 -> new Client(id, x, y, totalChunks, unused);
+            case 1 -> new Seeder(id, x, y, totalChunks, unused);
+            case 2 -> new Leecher(id, x, y, totalChunks, unused);
+            case 3 -> new Supernode(id, x, y, totalChunks, unused);
+            default -> throw new IllegalStateException("Unknown peer role: " + role);
+        };
+        peer.restore(upload, download, chunks);
+        return peer;
+    }
+
+    /**
+     * Switches a controller restored from a trace keyframe to replay: from now on it only
+     * changes through the replay methods below, and reports the recorded totals.
+     */
+    void beginReplay() {
+        replaySeconds = getSimulatedSeconds();
+        replayBytes = getTotalBytesTransferred();
+        replayTickBytes = 0;
+        replaying = true;
+        simulationRunning = false;
+    }
+
+    /**
+     * Starts a recorded tick. Transfers shown are those completed during the tick.
+     * @param tick Tick number
+     * @param simulatedSeconds Simulated time at the end of the tick
+     * @param totalBytes Bytes moved since start at the end of the tick
+     * @param targetBytes Bytes the download target had received
+     */
+    void replayTick(int tick, double simulatedSeconds, long totalBytes, long targetBytes) {
+        tickCount = tick;
+        replaySeconds = simulatedSeconds;
+        replayTickBytes = totalBytes - replayBytes;
+        replayBytes = totalBytes;
+        targetProgressBytes = targetBytes;
+        for (PeerNode peer : allPeers) peer.clearTransfers();
+    }
+
+    /**
+     * Recreates a peer that joined, with its first connections.
+     * @param role Role code, see {@link #roleCode}
+     * @param id Peer ID
+     * @param x X-coordinate
+     * @param y Y-coordinate
+     * @param upload Upload speed in KB/s
+     * @param download Download speed in KB/s
+     * @param neighbors IDs of the peers it connected to
+     */
+    void replayJoin(int role, int id, double x, double y, double upload, double download, int[] neighbors) {
+        ChunkBitmap chunks = role == 1 ? ChunkBitmap.full(totalChunks) : new ChunkBitmap(totalChunks);
+        PeerNode peer = recreatePeer(role, id, x, y, upload, download, chunks);
+        allPeers.resumeIds(id + 1);
+        addPeer(peer);
+        for (int neighbor : neighbors) {
+            PeerNode other = allPeers.byId(neighbor);
+            if (other != null) connect(peer, other);
+        }
+    }
+
+    /**
+     * @param id ID of a peer that left
+     */
+    void replayLeave(int id) {
+        PeerNode peer = allPeers.byId(id);
+        if (peer != null) removePeer(peer);
+    }
+
+    /**
+     * Applies a chunk that arrived at a peer.
+     * @param receiverId Receiving peer
+     * @param senderId Sending peer
+     * @param chunk Chunk index
+     */
+    void replayTransfer(int receiverId, int senderId, int chunk) {
+        PeerNode receiver = allPeers.byId(receiverId);
+        if (receiver == null) return;
+        if (!receiver.hasChunk(chunk)) {
+            receiver.receiveChunk(chunk);
+            availability.increment(chunk);
+            reachability.received(receiver, chunk);
+        }
+        PeerNode sender = allPeers.byId(senderId);
+        if (sender != null) receiver.addTransfer(new Transfer(sender, receiver));
+    }
+
     public boolean isRunning() {
         return simulationRunning;
     }
@@ -180,24 +880,58 @@ public class SimulationController {
         return allPeers;
     }
 
+    /**
+     * @return Registry of live peers, for lookups from a peer ID to its slot in {@link #getPeers()}
+     */
+    PeerRegistry getRegistry() {
+        return allPeers;
+    }
+
+    /**
+     * @return Width of the area peers are placed in, including its margins
+     */
+    public double getLayoutWidth() {
+        return 2 * LAYOUT_MARGIN + LAYOUT_WIDTH * layoutScale;
+    }
+
+    /**
+     * @return Height of the area peers are placed in, including its margins
+     */
+    public double getLayoutHeight() {
+        return 2 * LAYOUT_MARGIN + LAYOUT_HEIGHT * layoutScale;
+    }
+
+    /**
+     * Looks up a live peer by its stable ID.
+     * @param id Peer ID
+     * @return The peer, or null if it has left or never existed
+     */
+    public PeerNode getPeerById(int id) {
+        return allPeers.byId(id);
+    }
+
     public PeerNode getDownloadTarget() {
         return downloadTarget;
     }
 
     /**
-     * Determines whether the download is stalled based on lack of progress.
-     * @return true if stalled beyond threshold
+     * Determines whether the download can no longer finish. It fails after
+     * {@link #stallThreshold} ticks without progress, measured in bytes so multi-tick chunk
+     * transfers count as progress. While some chunk the target lacks is held by no peer it
+     * can get chunks from, progress on the other chunks does not reset that count; an
+     * arrival may still bring the missing chunks back within reach. Without arrivals that
+     * can never happen, so the download fails at once.
+     * @return true if unrecoverable or stalled beyond threshold
      */
     public boolean downloadFailed() {
-        PeerNode target = getDownloadTarget();
-        int currentChunkCount = target.getOwnedChunks().size();
-
-        if (currentChunkCount > lastChunkCount) {
-            lastChunkCount = currentChunkCount;
+        boolean reachable = reachability.allReachable();
+        if (!reachable && joinRate <= 0 && sessions == null) return true;
+        if (targetProgressBytes > lastProgressBytes && reachable) {
             ticksSinceLastProgress = 0; // Reset timer on progress
         } else {
             ticksSinceLastProgress++;
         }
+        lastProgressBytes = targetProgressBytes;
 
         return ticksSinceLastProgress >= stallThreshold;
     }
@@ -206,13 +940,113 @@ public class SimulationController {
         return tickCount;
     }
 
+    /**
+     * @return Number of chunks that no peer the download target can reach holds; the
+     *         download cannot finish while this is above 0
+     */
+    public int getUnreachableChunks() {
+        return reachability.unreachableChunks();
+    }
+
+    /**
+     * @return Bytes the download target has received so far, including partial chunks
+     */
+    public long getTargetProgressBytes() {
+        return targetProgressBytes;
+    }
+
+    /**
+     * @return Hashed pieces of the real file the chunks stand for, or null for abstract chunks
+     */
+    public PieceManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @param chunk Chunk index
+     * @return Size of that chunk in bytes; the last chunk holds the remainder of the file
+     */
+    public long getChunkBytes(int chunk) {
+        if (chunk < totalChunks - 1) return chunkSizeBytes;
+        return Math.max(1, fileSizeBytes - (long) (totalChunks - 1) * chunkSizeBytes);
+    }
+
+    /**
+     * @return Simulated time covered by one tick, in milliseconds
+     */
+    public long getTickDurationMs() {
+        return tickDurationMs;
+    }
+
+    /**
+     * @return Bytes moved by all transfers since the simulation started
+     */
+    public long getTotalBytesTransferred() {
+        if (replaying) return replayBytes;
+        if (events != null) return bandwidth.getTotalBytesAt(events.now());
+        if (bandwidth != null) return bandwidth.getTotalBytes();
+        return totalInstantBytes;
+    }
+
+    /**
+     * @return Aggregate swarm throughput over the last tick, in MB/s of simulated time
+     */
+    public double getCurrentThroughputMBps() {
+        if (replaying) return tickDurationMs == 0 ? 0 : replayTickBytes * 1000.0 / tickDurationMs / Constants.MB;
+        if (events != null) return bandwidth.getAggregateRateMBps(); // Instantaneous rate
+        if (bandwidth != null) return bandwidth.getCurrentThroughputMBps();
+        return tickDurationMs == 0 ? 0 : lastTickInstantBytes * 1000.0 / tickDurationMs / Constants.MB;
+    }
+
+    /**
+     * @return Average aggregate swarm throughput since start, in MB/s of simulated time
+     */
+    public double getAverageThroughputMBps() {
+        double seconds = getSimulatedSeconds();
+        return seconds == 0 ? 0 : getTotalBytesTransferred() / seconds / Constants.MB;
+    }
+
+    /**
+     * @return Simulated time elapsed since start, in seconds
+     */
+    public double getSimulatedSeconds() {
+        if (replaying) return replaySeconds;
+        return events != null ? events.now() : tickCount * tickDurationMs / 1000.0;
+    }
+
+    /**
+     * @return Number of events processed in event mode, or 0 with fixed ticks
+     */
+    public long getProcessedEvents() {
+        return events != null ? events.getProcessedCount() : 0;
+    }
+
+    /**
+     * @return Swarm-wide per-chunk holder counts
+     */
+    public ChunkAvailability getAvailability() {
+        return availability;
+    }
+
+    /**
+     * @return Seed from which every random stream of this simulation is derived
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    // Per-peer bandwidth stream, independent of creation order
+    private RandomStream bandwidthStream(int peerId) {
+        return RandomStream.derive(seed, RandomStream.Purpose.BANDWIDTH, peerId);
+    }
+
     // Generate random X coordinate for layout visualization
     private double randomX() {
-        return 100 + Math.random() * 600;
+        return LAYOUT_MARGIN + layoutRng.nextDouble() * LAYOUT_WIDTH * layoutScale;
     }
 
     // Generate random Y coordinate for layout visualization
     private double randomY() {
-        return 100 + Math.random() * 400;
+        return LAYOUT_MARGIN + layoutRng.nextDouble() * LAYOUT_HEIGHT * layoutScale;
     }
 }
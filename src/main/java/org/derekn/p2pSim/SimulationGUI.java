@@ -1,8 +1,13 @@
 package org.derekn.p2pSim;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -69,6 +74,18 @@ public class SimulationGUI extends Application {
         calculatedChunksLabel.setTextFill(Color.ORANGE);
 
         Button startButton = new Button("Start Simulation");
+        Button saveButton = new Button("Save Checkpoint");
+        Button loadButton = new Button("Load Checkpoint");
+        Button traceButton = new Button("Open Trace");
+
+        // Replay position; only shown while a trace is played back
+        Slider seekSlider = new Slider(0, 1, 0);
+        seekSlider.setPrefWidth(300);
+        Runnable hideSeek = () -> {
+            seekSlider.setVisible(false);
+            seekSlider.setManaged(false);
+        };
+        hideSeek.run();
 
         // Simulation visualization pane
         SimulationView simulationView = new SimulationView();
@@ -86,22 +103,20 @@ public class SimulationGUI extends Application {
 
         HBox speedLabelRow = new HBox(5, speedLabel, tickDurationLabel);
 
+        // Run the simulation as fast as the CPU allows instead of at the slider's pace
+        CheckBox unthrottledBox = new CheckBox("Unthrottled");
+        unthrottledBox.setTextFill(Color.WHITE);
+        unthrottledBox.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            speedSlider.setDisable(newVal);
+            simulationView.setUnthrottled(newVal);
+        });
+
         // File chooser
         Button fileButton = new Button("Select File");
         Label fileLabel = new Label("No file selected");
         fileLabel.setTextFill(Color.WHITE);
 
-        fileButton.setOnAction(e -> {
-            FileChooser fileChooser = new FileChooser();
-            File file = fileChooser.showOpenDialog(primaryStage);
-            if (file != null) {
-                fileLabel.setText("Using file: " + file.getName());
-                long fileSizeBytes = file.length();
-                int chunkSize = 1_048_576; // 1 MB default
-                int chunks = (int) Math.ceil((double) fileSizeBytes / chunkSize);
-                fileSizeValue.setText(String.valueOf(chunks));
-            }
-        });
+        fileLabel.setWrapText(true);
 
         // Add all input elements to panel
         inputPanel.getChildren().addAll(
@@ -109,12 +124,12 @@ public class SimulationGUI extends Application {
                 fileSizeLabel, fileSizeBox,
                 chunkSizeLabel, chunkSizeBox,
                 calculatedChunksLabel,
-                fileButton,
-                speedLabelRow, speedSlider,
-                startButton
+                fileButton, fileLabel,
+                speedLabelRow, speedSlider, unthrottledBox,
+                startButton, saveButton, loadButton, traceButton
         );
 
-        VBox bottomBox = new VBox(progressBar);
+        VBox bottomBox = new VBox(5, seekSlider, progressBar);
         bottomBox.setPadding(new Insets(10));
         bottomBox.setStyle("-fx-background-color: #222222;");
         bottomBox.setAlignment(javafx.geometry.Pos.CENTER);
@@ -163,10 +178,167 @@ public class SimulationGUI extends Application {
         chunkSizeValue.textProperty().addListener((obs, oldVal, newVal) -> updateChunkCount.run());
         chunkSizeUnit.valueProperty().addListener((obs, oldVal, newVal) -> updateChunkCount.run());
 
+        // A selected file is split into pieces of the chunk size and hashed in the background
+        AtomicReference<File> selectedFile = new AtomicReference<>();
+        AtomicReference<PieceHasher> hashing = new AtomicReference<>();
+        AtomicReference<PieceManifest> manifest = new AtomicReference<>();
+        Timeline hashProgress = new Timeline(new KeyFrame(Duration.millis(100), evt -> {
+            PieceHasher hasher = hashing.get();
+            if (hasher != null) progressBar.setProgress(hasher.getProgress());
+        }));
+        hashProgress.setCycleCount(Timeline.INDEFINITE);
+
+        Runnable hashFile = () -> {
+            PieceHasher previous = hashing.getAndSet(null);
+            if (previous != null) previous.cancel();
+            manifest.set(null);
+            File file = selectedFile.get();
+            long chunkSize;
+            try {
+                chunkSize = chunkSizeBytes(chunkSizeValue.getText(), chunkSizeUnit.getValue());
+            } catch (NumberFormatException ex) {
+                chunkSize = 0;
+            }
+            if (file == null || chunkSize <= 0) {
+                hashProgress.stop();
+                startButton.setDisable(file != null);
+                return;
+            }
+
+            PieceHasher hasher = new PieceHasher(file.toPath(), chunkSize);
+            hashing.set(hasher);
+            startButton.setDisable(true);
+            fileLabel.setText("Hashing " + file.getName() + "...");
+            progressBar.setProgress(0);
+            hashProgress.play();
+            Thread worker = new Thread(() -> {
+                try {
+                    PieceManifest result = hasher.hash(0);
+                    Platform.runLater(() -> {
+                        if (!hashing.compareAndSet(hasher, null)) return; // Superseded by a newer hash
+                        hashProgress.stop();
+                        manifest.set(result);
+                        progressBar.setProgress(1);
+                        fileLabel.setText("Using file: " + file.getName() + " (" + result.getPieceCount()
+                                + " pieces, SHA-256 " + result.getRootHashHex().substring(0, 12) + ")");
+                        calculatedChunksLabel.setText("Total Chunks: " + result.getPieceCount());
+                        startButton.setDisable(false);
+                    });
+                } catch (CancellationException ex) {
+                    // A newer hash replaced this one
+                } catch (IOException | RuntimeException ex) {
+                    Platform.runLater(() -> {
+                        if (!hashing.compareAndSet(hasher, null)) return;
+                        hashProgress.stop();
+                        selectedFile.set(null);
+                        fileSizeValue.setDisable(false);
+                        fileSizeUnit.setDisable(false);
+                        fileLabel.setText("No file selected");
+                        startButton.setDisable(false);
+                        new Alert(Alert.AlertType.ERROR, "Could not hash " + file.getName() + ": " + ex.getMessage()).show();
+                    });
+                }
+            }, "piece-hasher");
+            worker.setDaemon(true);
+            worker.start();
+        };
+
+        // Choosing no file goes back to a file size entered by hand
+        fileButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            File file = fileChooser.showOpenDialog(primaryStage);
+            selectedFile.set(file);
+            fileSizeValue.setDisable(file != null);
+            fileSizeUnit.setDisable(file != null);
+            if (file == null) {
+                fileLabel.setText("No file selected");
+            } else {
+                long size = file.length();
+                String unit = size >= Constants.GB ? "GB" : size >= Constants.MB ? "MB" : "KB";
+                long unitBytes = switch (unit) {
+                    case "GB" -> Constants.GB;
+                    case "MB" -> Constants.MB;
+                    default -> Constants.KB;
+                };
+                fileSizeUnit.setValue(unit);
+                fileSizeValue.setText(String.format(Locale.ROOT, "%.3f", (double) size / unitBytes));
+            }
+            hashFile.run();
+        });
+
+        // Pieces depend on the chunk size, so a selected file is hashed again when it changes
+        chunkSizeValue.textProperty().addListener((obs, oldVal, newVal) -> {
+            if (selectedFile.get() != null) hashFile.run();
+        });
+        chunkSizeUnit.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (selectedFile.get() != null) hashFile.run();
+        });
+
+        // Progress bar updater
+        Timeline progressUpdater = new Timeline(new KeyFrame(Duration.millis(500), evt -> {
+            progressBar.setProgress(simulationView.getDownloadProgress());
+            if (simulationView.isReplaying() && !seekSlider.isValueChanging() && !seekSlider.isPressed()) {
+                seekSlider.setValue(simulationView.getCurrentTick());
+            }
+        }));
+        progressUpdater.setCycleCount(Timeline.INDEFINITE);
+
+        // Checkpoints are saved between ticks while the simulation keeps running
+        saveButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setInitialFileName("swarm.ckpt");
+            File file = fileChooser.showSaveDialog(primaryStage);
+            if (file == null) return;
+            simulationView.saveCheckpoint(file.toPath()).whenComplete((ok, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    new Alert(Alert.AlertType.ERROR, "Could not save checkpoint: " + error.getMessage()).show();
+                }
+            }));
+        });
+
+        // Seek once the thumb is released, not for every tick dragged across
+        seekSlider.setOnMouseReleased(e -> simulationView.seek((int) Math.round(seekSlider.getValue())));
+
+        traceButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            File file = fileChooser.showOpenDialog(primaryStage);
+            if (file == null) return;
+            try {
+                simulationView.replay(file.toPath(), speedSlider.getValue());
+                seekSlider.setMin(simulationView.getFirstTick());
+                seekSlider.setMax(Math.max(simulationView.getLastTick(), simulationView.getFirstTick() + 1));
+                seekSlider.setValue(simulationView.getFirstTick());
+                seekSlider.setVisible(true);
+                seekSlider.setManaged(true);
+                progressUpdater.play();
+            } catch (IOException | IllegalStateException ex) {
+                new Alert(Alert.AlertType.ERROR, "Could not open trace: " + ex.getMessage()).showAndWait();
+            }
+        });
+
+        loadButton.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            File file = fileChooser.showOpenDialog(primaryStage);
+            if (file == null) return;
+            try {
+                simulationView.resume(file.toPath(), speedSlider.getValue());
+                hideSeek.run();
+                progressUpdater.play();
+            } catch (IOException | IllegalStateException ex) {
+                new Alert(Alert.AlertType.ERROR, "Could not load checkpoint: " + ex.getMessage()).showAndWait();
+            }
+        });
+
         // Start button logic
         startButton.setOnAction(e -> {
             try {
                 int peers = Integer.parseInt(peersField.getText());
+                if (manifest.get() != null) {
+                    simulationView.start(peers, manifest.get(), speedSlider.getValue());
+                    hideSeek.run();
+                    progressUpdater.play();
+                    return;
+                }
                 double fileVal = Double.parseDouble(fileSizeValue.getText());
                 int chunkValue = Integer.parseInt(chunkSizeValue.getText());
 
@@ -189,12 +361,7 @@ public class SimulationGUI extends Application {
                 double speedMultiplier = speedSlider.getValue();
 
                 simulationView.start(peers, totalChunks, chunkSize, fileSize, speedMultiplier);
-
-                // Progress bar updater
-                Timeline progressUpdater = new Timeline(new KeyFrame(Duration.millis(500), evt -> {
-                    progressBar.setProgress(simulationView.getDownloadProgress());
-                }));
-                progressUpdater.setCycleCount(Timeline.INDEFINITE);
+                hideSeek.run();
                 progressUpdater.play();
 
             } catch (NumberFormatException ex) {
@@ -207,6 +374,21 @@ public class SimulationGUI extends Application {
         updateChunkCount.run();
     }
 
+    /**
+     * @param value Chunk size as entered
+     * @param unit  "MB", "KB" or bytes otherwise
+     * @return Chunk size in bytes
+     * @throws NumberFormatException if the value is not a whole number
+     */
+    private static long chunkSizeBytes(String value, String unit) {
+        long multiplier = switch (unit) {
+            case "MB" -> Constants.MB;
+            case "KB" -> Constants.KB;
+            default -> 1L;
+        };
+        return Integer.parseInt(value) * multiplier;
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,111 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Built-in instrumentation of a simulation: a latency histogram per {@link TickPhase}
+ * and running counters of swarm activity.
+ * <p>
+ * Written only by the thread advancing the simulation. The histograms can be read from
+ * other threads for progress displays, with slightly stale results.
+ */
+public class SimulationMetrics {
+    private final LatencyHistogram[] phases = new LatencyHistogram[TickPhase.values().length];
+    private final long[] lastNanos = new long[phases.length]; // Duration of each phase in the current tick
+    private long joins;
+    private long leaves;
+    private long transfers; // Chunk transfers completed
+
+    public SimulationMetrics() {
+        for (int i = 0; i < phases.length; i++) phases[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Records how long a phase took.
+     *
+     * @param phase Phase
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(TickPhase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+        lastNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Starts a new tick for the per-tick durations returned by {@link #lastNanos}.
+     */
+    void beginTick() {
+        Arrays.fill(lastNanos, 0);
+    }
+
+    /**
+     * @param phase Phase
+     * @return Time spent in the phase during the current or most recent tick
+     */
+    long lastNanos(TickPhase phase) {
+        return lastNanos[phase.ordinal()];
+    }
+
+    /**
+     * @param phase Phase
+     * @return Latency histogram of the phase
+     */
+    public LatencyHistogram histogram(TickPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    void countJoin() {
+        joins++;
+    }
+
+    void countLeave() {
+        leaves++;
+    }
+
+    void countTransfer() {
+        transfers++;
+    }
+
+    public long getJoins() {
+        return joins;
+    }
+
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * @return Chunk transfers completed since start
+     */
+    public long getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * Formats counters and per-phase percentiles as a single-line JSON object.
+     * Phases that never ran are left out.
+     *
+     * @param bytesTransferred Bytes moved since start
+     * @return JSON summary; durations in microseconds
+     */
+    public String toJson(long bytesTransferred) {
+        long ticks = histogram(TickPhase.TICK).getCount();
+        StringBuilder json = new StringBuilder(512);
+        json.append(String.format(Locale.ROOT,
+                "{\"joins\":%d,\"leaves\":%d,\"transfers\":%d,\"transfersPerTick\":%.2f,\"bytesTransferred\":%d,\"phases\":{",
+                joins, leaves, transfers, ticks == 0 ? 0 : (double) transfers / ticks, bytesTransferred));
+        boolean first = true;
+        for (TickPhase phase : TickPhase.values()) {
+            LatencyHistogram h = histogram(phase);
+            if (h.getCount() == 0) continue;
+            if (!first) json.append(',');
+            first = false;
+            json.append(String.format(Locale.ROOT,
+                    "\"%s\":{\"count\":%d,\"meanUs\":%.1f,\"p50Us\":%.1f,\"p90Us\":%.1f,\"p99Us\":%.1f,\"maxUs\":%.1f}",
+                    phase.label(), h.getCount(), h.getMean() / 1e3, h.getPercentile(50) / 1e3,
+                    h.getPercentile(90) / 1e3, h.getPercentile(99) / 1e3, h.getMax() / 1e3));
+        }
+        return json.append("}}").toString();
+    }
+}
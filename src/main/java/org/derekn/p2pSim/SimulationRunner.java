@@ -0,0 +1,251 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Advances a simulation on its own thread and publishes render snapshots for the view.
+ * <p>
+ * The controller is only ever touched by the simulation thread. Ticks run at a requested
+ * rate or, when unthrottled, back-to-back; snapshots are captured at most once per display
+ * frame, so an unthrottled run spends its time simulating rather than copying state nobody
+ * will see. The view reads snapshots through the {@link SnapshotExchange} and never blocks
+ * the simulation, nor the simulation the view.
+ * <p>
+ * A runner can also play back a {@link TraceReplay} instead, applying one recorded tick
+ * per tick. At the end of the trace it keeps the last frame and waits for seeks.
+ */
+public class SimulationRunner {
+    private static final long PUBLISH_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(16); // About one 60 Hz frame
+    private static final double PACE_SMOOTHING = 0.5; // Weight of the newest pace measurement
+
+    private SimulationController controller; // Replaced by seeks when replaying
+    private final TraceReplay replay;        // Trace played back instead of ticking, or null
+    private final SnapshotExchange snapshots = new SnapshotExchange();
+    private final Function<SimulationController, String> reportBuilder; // Runs on the simulation thread
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // Run on the simulation thread between ticks
+    private volatile double ticksPerSecond; // Target rate; 0 or less runs unthrottled
+    private volatile boolean running;
+    private volatile Thread thread;
+    private volatile boolean finished; // Simulation thread has ended and no longer runs tasks
+
+    // Simulation-thread state for measuring the pace of simulated time
+    private long lastPublishNanos;
+    private double lastPublishSimulated;
+    private double pace;
+    private boolean ended; // Replay has shown its last tick
+
+    /**
+     * @param controller     Simulation to advance; must not be used by other threads afterwards
+     * @param ticksPerSecond Target tick rate; 0 or less runs unthrottled
+     * @param reportBuilder  Builds the final report from the controller when the run ends
+     */
+    public SimulationRunner(SimulationController controller, double ticksPerSecond,
+                            Function<SimulationController, String> reportBuilder) {
+        this(controller, null, ticksPerSecond, reportBuilder);
+    }
+
+    /**
+     * @param replay         Trace to play back from its current tick; must not be used by other threads afterwards
+     * @param ticksPerSecond Target rate of recorded ticks; 0 or less plays unthrottled
+     * @param reportBuilder  Builds the report shown when the trace ends
+     */
+    public SimulationRunner(TraceReplay replay, double ticksPerSecond,
+                            Function<SimulationController, String> reportBuilder) {
+        this(replay.getController(), replay, ticksPerSecond, reportBuilder);
+    }
+
+    private SimulationRunner(SimulationController controller, TraceReplay replay, double ticksPerSecond,
+                             Function<SimulationController, String> reportBuilder) {
+        this.controller = controller;
+        this.replay = replay;
+        this.ticksPerSecond = ticksPerSecond;
+        this.reportBuilder = reportBuilder;
+    }
+
+    /**
+     * Publishes the initial state and starts the simulation thread. A runner can be started once.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        if (replay == null) controller.startSimulation();
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks the simulation thread to stop after its current tick. Does not wait, so it is
+     * safe to call from the FX thread even while a long tick is running.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Changes the tick rate. A tick already waiting is rescheduled at the new rate.
+     *
+     * @param ticksPerSecond Target tick rate; 0 or less runs unthrottled
+     */
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * Saves a checkpoint of the simulation between two ticks, without stopping it. Once the
+     * simulation thread has ended, the checkpoint is written on a thread of its own.
+     *
+     * @param file Checkpoint file to create or replace
+     * @return Future completed when the file is written, or completed exceptionally if it could not be
+     */
+    public CompletableFuture<Void> saveCheckpoint(Path file) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                controller.saveCheckpoint(file);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        };
+        submit(task);
+        return done;
+    }
+
+    /**
+     * Moves a replay to a recorded tick between two ticks, then publishes it at once.
+     * Does nothing once the runner has been stopped.
+     *
+     * @param tick Tick to show, clamped to the recorded range
+     * @throws IllegalStateException if the runner is not replaying
+     */
+    public void seek(int tick) {
+        if (replay == null) throw new IllegalStateException("Only a replay can seek");
+        if (finished) return;
+        submit(() -> {
+            if (finished) return;
+            replay.seek(tick);
+            controller = replay.getController();
+            ended = false;
+            lastPublishNanos = 0; // Simulated time jumped, so the pace starts over
+            publish();
+        });
+    }
+
+    private void submit(Runnable task) {
+        tasks.add(task);
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+        // Without a simulation thread to run it, whoever removes the task first runs it
+        if ((t == null || finished) && tasks.remove(task)) new Thread(task, "simulation-task").start();
+    }
+
+    /**
+     * @return Exchange from which the view reads the latest snapshot
+     */
+    public SnapshotExchange getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * @return true while the simulation thread is advancing the model
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        publish();
+        long lastPublish = System.nanoTime();
+
+        while (running) {
+            long tickStart = System.nanoTime();
+            if (replay != null) {
+                if (!ended && !replay.step()) {
+                    // Keep the last frame with its report, and wait for seeks or stop
+                    RenderSnapshot last = snapshots.back();
+                    last.capture(controller, false);
+                    last.finish(controller.getDownloadTarget().hasCompleteFile(), reportBuilder.apply(controller));
+                    snapshots.publish();
+                    ended = true;
+                }
+                if (ended) {
+                    LockSupport.park(this);
+                    runTasks();
+                    continue;
+                }
+            } else {
+                controller.tick();
+            }
+
+            boolean complete = controller.getDownloadTarget().hasCompleteFile();
+            if (replay == null && (complete || controller.downloadFailed())) {
+                controller.stopSimulation();
+                RenderSnapshot last = snapshots.back();
+                last.capture(controller, false);
+                last.finish(complete, reportBuilder.apply(controller));
+                snapshots.publish();
+                break;
+            }
+
+            long now = System.nanoTime();
+            if (now - lastPublish >= PUBLISH_INTERVAL_NS) {
+                publish();
+                lastPublish = now;
+            }
+
+            // Wait until the next tick is due, re-reading the rate so changes apply at once
+            while (running) {
+                runTasks();
+                double rate = ticksPerSecond;
+                if (rate <= 0) break;
+                long wait = tickStart + (long) (1e9 / rate) - System.nanoTime();
+                if (wait <= 0) break;
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+        running = false;
+        finished = true;
+        runTasks();
+        if (replay != null) replay.close();
+        else controller.close();
+    }
+
+    private void runTasks() {
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) task.run();
+    }
+
+    private void publish() {
+        RenderSnapshot snapshot = snapshots.back();
+        long start = System.nanoTime();
+        snapshot.capture(controller, true);
+        controller.getMetrics().record(TickPhase.CAPTURE, System.nanoTime() - start);
+
+        // Measured pace of simulated time, smoothed over recent publications
+        double simulated = controller.getSimulatedSeconds();
+        if (lastPublishNanos != 0) {
+            double real = (snapshot.captureNanos - lastPublishNanos) / 1e9;
+            double pace = real > 0 ? (simulated - lastPublishSimulated) / real : 0;
+            this.pace = this.pace == 0 ? pace : PACE_SMOOTHING * pace + (1 - PACE_SMOOTHING) * this.pace;
+        }
+        lastPublishNanos = snapshot.captureNanos;
+        lastPublishSimulated = simulated;
+        snapshot.setPace(pace);
+
+        snapshots.publish();
+    }
+}
@@ -1,249 +1,265 @@
 package org.derekn.p2pSim;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.PathTransition;
-import javafx.animation.Timeline;
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.*;
-import javafx.scene.text.Text;
-import javafx.util.Duration;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javafx.animation.AnimationTimer;
+import javafx.scene.layout.Pane;
 
 /**
  * Visualization component for rendering the peer-to-peer simulation.
- * Uses JavaFX to display network nodes, connections, and live transfer animations.
+ * The simulation advances on its own thread; this view draws the latest published
+ * snapshot of it on a single canvas, so a slow tick never stalls the UI.
+ * Scroll to zoom about the cursor, drag to pan, and double-click to fit the whole swarm.
+ * Recorded traces are played back the same way and can be seeked to any tick.
  */
 public class SimulationView extends Pane {
-    private SimulationController controller;
-    private Timeline timeline;
-    private final Map<Integer, Circle> nodeCircles;
+    private static final double BASE_TICKS_PER_SECOND = 1000.0 / Constants.DEFAULT_TICK_DUR_MS; // Realtime at 1x
+    private static final double ZOOM_PER_SCROLL_PIXEL = 1.002;
+
+    private SimulationRunner runner;
+    private TraceReplay replay;                // Trace being played back, or null for a live run
+    private final NetworkCanvas canvas;        // Swarm layer, redrawn when a new snapshot arrives
+    private final TransferLayer transferLayer; // Animated transfers, redrawn every frame
+    private final AnimationTimer frameTimer;   // Single timer driving both layers
+    private final Viewport viewport = new Viewport();
+    private double layoutWidth;                // Layout area of the current run, for fitting
+    private double layoutHeight;
+    private double dragX;                      // Last mouse position while panning
+    private double dragY;
     private int totalChunks;
-    private boolean downloadComplete = false;
-    private boolean downloadFailed = false;
     private long startTimeMs;
-    private int lastChunkCount = 0;
-    private int ticksSinceLastChunk = 0;
-    private long tickDurationMs = 500;
-    private String summaryReport;
+    private double speedMultiplier = 1.0;
+    private boolean unthrottled = false;
 
     public SimulationView() {
         this.setStyle("-fx-background-color: #000000;");
-        this.nodeCircles = new HashMap<>();
+        this.canvas = new NetworkCanvas(viewport);
+        this.transferLayer = new TransferLayer(viewport);
+        canvas.widthProperty().bind(widthProperty());
+        canvas.heightProperty().bind(heightProperty());
+        transferLayer.widthProperty().bind(widthProperty());
+        transferLayer.heightProperty().bind(heightProperty());
+        this.getChildren().addAll(canvas, transferLayer);
+
+        this.frameTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (runner == null) return;
+                RenderSnapshot snapshot = runner.getSnapshots().latest();
+                canvas.render(snapshot);
+                transferLayer.render(snapshot, canvas.isDetailed(), now);
+            }
+        };
+
+        setOnScroll(e -> viewport.zoom(Math.pow(ZOOM_PER_SCROLL_PIXEL, e.getDeltaY()), e.getX(), e.getY()));
+        setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseDragged(e -> {
+            viewport.pan(e.getX() - dragX, e.getY() - dragY);
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) viewport.fit(layoutWidth, layoutHeight, getWidth(), getHeight());
+        });
     }
 
     /**
-     * Starts the simulation and initializes rendering loop.
+     * Starts the simulation on a background thread and begins rendering its snapshots.
      */
     public void start(int initialPeers, int totalChunks, int chunkSizeBytes,
                       long fileSizeBytes, double speedMultiplier) {
+        SimulationConfig config = new SimulationConfig(initialPeers, totalChunks);
+        config.setChunkSizeBytes(chunkSizeBytes);
+        config.setFileSizeBytes(fileSizeBytes);
+        start(config, speedMultiplier);
+    }
+
+    /**
+     * Starts a simulation whose chunks are the hashed pieces of a real file.
+     *
+     * @param initialPeers    Number of peers to start with
+     * @param manifest        Pieces of the file, from a {@link PieceHasher}
+     * @param speedMultiplier Simulation speed relative to realtime
+     */
+    public void start(int initialPeers, PieceManifest manifest, double speedMultiplier) {
+        SimulationConfig config = new SimulationConfig(initialPeers, manifest.getPieceCount());
+        config.setManifest(manifest);
+        start(config, speedMultiplier);
+    }
+
+    private void start(SimulationConfig config, double speedMultiplier) {
         this.startTimeMs = System.currentTimeMillis();
+        this.speedMultiplier = speedMultiplier;
 
-        if (timeline != null) timeline.stop();
+        if (runner != null) runner.stop();
 
-        this.controller = new SimulationController(initialPeers, totalChunks);
-        this.totalChunks = totalChunks;
-        controller.startSimulation();
+        // Chunks take as long as their size and the peers' bandwidth require
+        config.setTransferModel(TransferModel.BANDWIDTH);
 
-        this.tickDurationMs = (long)(Constants.DEFAULT_TICK_DUR_MS / speedMultiplier);
+        replay = null;
+        run(new SimulationController(config), config.getTotalChunks());
+    }
 
-        // Set up the rendering and simulation update loop
-        timeline = new Timeline(new KeyFrame(Duration.millis(tickDurationMs), e -> {
-            controller.tick();
+    /**
+     * Continues a simulation from a checkpoint and begins rendering it.
+     *
+     * @param checkpoint      Checkpoint written by {@link #saveCheckpoint}
+     * @param speedMultiplier Simulation speed relative to realtime
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public void resume(Path checkpoint, double speedMultiplier) throws IOException {
+        SimulationConfig config = new SimulationConfig();
+        SimulationController controller = SimulationController.restore(checkpoint, config);
+        this.startTimeMs = System.currentTimeMillis();
+        this.speedMultiplier = speedMultiplier;
+        if (runner != null) runner.stop();
+        replay = null;
+        run(controller, config.getTotalChunks());
+    }
 
-            PeerNode target = controller.getDownloadTarget();
-            int currentChunkCount = target.getOwnedChunks().size();
+    /**
+     * Plays back a trace recorded with {@link TraceRecorder} from its first tick.
+     *
+     * @param trace           Trace file
+     * @param speedMultiplier Playback speed relative to realtime
+     * @throws IOException if the trace cannot be read
+     */
+    public void replay(Path trace, double speedMultiplier) throws IOException {
+        TraceReplay replay = TraceReplay.open(trace);
+        this.startTimeMs = System.currentTimeMillis();
+        this.speedMultiplier = speedMultiplier;
+        if (runner != null) runner.stop();
+        this.replay = replay;
+        SimulationController controller = replay.getController();
+        show(new SimulationRunner(replay, ticksPerSecond(), this::buildReportSummary), controller,
+                controller.getDownloadTarget().getChunkBitmap().size());
+    }
 
-            // Track progress by chunk count
-            if (currentChunkCount > lastChunkCount) {
-                ticksSinceLastChunk = 0;
-                lastChunkCount = currentChunkCount;
-            } else {
-                ticksSinceLastChunk++;
-            }
+    /**
+     * Jumps the trace being played back to a tick; playback continues from there.
+     *
+     * @param tick Tick to show, clamped to the recorded range
+     */
+    public void seek(int tick) {
+        if (replay != null) runner.seek(tick);
+    }
 
-            // Check if download has completed
-            if (!downloadComplete && target.hasCompleteFile()) {
-                downloadComplete = true;
-                buildReportSummary();
-                timeline.stop();
-                drawNetwork();
-            }
+    /**
+     * @return true while a trace is being played back rather than simulated
+     */
+    public boolean isReplaying() {
+        return replay != null;
+    }
 
-            // Check if download has failed due to stalling
-            if (!downloadComplete && !downloadFailed && ticksSinceLastChunk >= controller.stallThreshold) {
-                downloadFailed = true;
-                buildReportSummary();
-                timeline.stop();
-                drawNetwork();
-            }
+    /**
+     * @return First tick of the trace being played back
+     */
+    public int getFirstTick() {
+        return replay != null ? replay.getFirstTick() : 0;
+    }
 
-            drawNetwork();
-        }));
+    /**
+     * @return Last tick of the trace being played back
+     */
+    public int getLastTick() {
+        return replay != null ? replay.getLastTick() : 0;
+    }
 
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    /**
+     * @return Tick of the latest snapshot. Must be called on the FX thread.
+     */
+    public int getCurrentTick() {
+        return runner != null ? runner.getSnapshots().latest().getTick() : 0;
     }
 
     /**
-     * Draws the current state of the network: nodes, connections, and transfers.
+     * Saves the running simulation to a checkpoint between two ticks, without pausing it.
+     *
+     * @param file Checkpoint file to create or replace
+     * @return Future completed when the file is written
      */
-    private void drawNetwork() {
-        this.getChildren().clear();
-        nodeCircles.clear();
-
-        List<PeerNode> peers = controller.getPeers();
-
-        // Draw static peer-to-peer connections
-        for (PeerNode node : peers) {
-            for (NetworkNode conn : node.getConnections()) {
-                if (conn.getId() > node.getId()) { // Avoid drawing duplicate lines
-                    Line edge = new Line(node.getX(), node.getY(), conn.getX(), conn.getY());
-                    edge.setStroke(Color.web("#777777"));
-                    edge.setStrokeWidth(1.0);
-                    this.getChildren().add(edge);
-                }
-            }
-        }
-
-        // Draw dynamic transfer arrows only if simulation is running
-        if (!downloadComplete && !downloadFailed ) {
-            for (PeerNode peer : peers) {
-                for (Transfer transfer : peer.getActiveTransfers()) {
-                    PeerNode from = transfer.getSender();
-                    PeerNode to = transfer.getReceiver();
-
-                    double dx = to.getX() - from.getX();
-                    double dy = to.getY() - from.getY();
-                    double angle = Math.toDegrees(Math.atan2(dy, dx));
-
-                    Polygon arrow = new Polygon();
-                    arrow.getPoints().addAll(0.0, -5.0, 10.0, 0.0, 0.0, 5.0);
-                    arrow.setFill(Color.LIMEGREEN);
-                    arrow.setStroke(Color.BLACK);
-                    arrow.setStrokeWidth(0.5);
-                    arrow.setTranslateX(from.getX());
-                    arrow.setTranslateY(from.getY());
-                    arrow.setRotate(angle);
-                    this.getChildren().add(arrow);
-
-                    Path path = new Path();
-                    path.getElements().add(new MoveTo(from.getX(), from.getY()));
-                    path.getElements().add(new LineTo(to.getX(), to.getY()));
-
-                    PathTransition move = new PathTransition();
-                    move.setNode(arrow);
-                    move.setPath(path);
-                    move.setDuration(Duration.millis(tickDurationMs * 0.95));
-                    move.setCycleCount(1);
-                    move.setOnFinished(evt -> this.getChildren().remove(arrow));
-                    move.play();
-                }
-            }
-        }
-
-        // Draw each node as a colored circle with a chunk count label
-        for (PeerNode peer : peers) {
-            Color fillColor = getColorForType(peer);
-            double radius = getRadiusForType(peer);
-
-            Circle circle = new Circle(peer.getX(), peer.getY(), radius);
-            circle.setFill(fillColor);
-            circle.setStroke(Color.WHITE);
-            circle.setStrokeWidth(1.0);
-            this.getChildren().add(circle);
-            nodeCircles.put(peer.getId(), circle);
-
-            Text label = new Text(String.valueOf(peer.getOwnedChunks().size()));
-            label.setStyle("-fx-font-size: 10;");
-            label.setFill(Color.BLACK);
-
-            double textWidth = label.getLayoutBounds().getWidth();
-            double textHeight = label.getLayoutBounds().getHeight();
-            label.setX(peer.getX() - textWidth / 2);
-            label.setY(peer.getY() + textHeight / 4);
-
-            this.getChildren().add(label);
-        }
-
-        // Render final report if simulation ends
-        if (downloadComplete || downloadFailed) {
-            Text summary = new Text(20, 40, summaryReport);
-            summary.setFill(Color.WHITE);
-            summary.setStyle("-fx-font-size: 14; -fx-font-family: monospace;");
-            this.getChildren().add(summary);
-        }
+    public CompletableFuture<Void> saveCheckpoint(Path file) {
+        if (runner == null) return CompletableFuture.failedFuture(new IllegalStateException("No simulation to save"));
+        return runner.saveCheckpoint(file);
+    }
+
+    // Hands the controller to a new simulation thread and starts drawing its snapshots
+    private void run(SimulationController controller, int totalChunks) {
+        show(new SimulationRunner(controller, ticksPerSecond(), this::buildReportSummary), controller, totalChunks);
+    }
+
+    // Starts drawing the snapshots of a new runner and then the runner itself
+    private void show(SimulationRunner runner, SimulationController controller, int totalChunks) {
+        this.totalChunks = totalChunks;
+        this.layoutWidth = controller.getLayoutWidth();
+        this.layoutHeight = controller.getLayoutHeight();
+        viewport.fit(layoutWidth, layoutHeight, getWidth(), getHeight());
+
+        // From here on only the simulation thread touches the controller
+        this.runner = runner;
+        canvas.invalidate();
+        frameTimer.start();
+        runner.start();
+    }
+
+    /**
+     * Stops the simulation thread; the last frame stays on screen.
+     */
+    public void stop() {
+        if (runner != null) runner.stop();
     }
 
     public void setSpeedMultiplier(double speedMultiplier) {
-        if (timeline != null) {
-            timeline.stop();
-            this.tickDurationMs = (long)(500 / speedMultiplier);
-            timeline.getKeyFrames().setAll(new KeyFrame(Duration.millis(this.tickDurationMs), e -> {
-                controller.tick();
-                drawNetwork();
-
-                if (!downloadComplete && controller.getDownloadTarget().hasCompleteFile()) {
-                    downloadComplete = true;
-                    buildReportSummary();
-                    drawNetwork();
-                }
-
-                if (!downloadComplete && controller.downloadFailed()) {
-                    downloadFailed = true;
-                    buildReportSummary();
-                    drawNetwork();
-                }
-            }));
-            timeline.play();
-        }
+        this.speedMultiplier = speedMultiplier;
+        if (runner != null) runner.setTicksPerSecond(ticksPerSecond());
     }
 
-    public double getDownloadProgress() {
-        PeerNode target = controller.getDownloadTarget();
-        return (double) target.getOwnedChunks().size() / totalChunks;
+    /**
+     * @param unthrottled true to tick as fast as the CPU allows, ignoring the speed multiplier
+     */
+    public void setUnthrottled(boolean unthrottled) {
+        this.unthrottled = unthrottled;
+        if (runner != null) runner.setTicksPerSecond(ticksPerSecond());
     }
 
-    private Color getColorForType(PeerNode peer) {
-        return switch (peer.getNodeType()) {
-            case "Client" -> Color.PINK;
-            case "Seeder" -> Color.LIME;
-            case "Leecher" -> Color.ROYALBLUE;
-            case "Supernode" -> Color.GOLD;
-            default -> Color.GRAY;
-        };
+    /**
+     * @return Fraction of the file the download target owns in the latest snapshot.
+     *         Must be called on the FX thread.
+     */
+    public double getDownloadProgress() {
+        if (runner == null) return 0;
+        return (double) runner.getSnapshots().latest().getTargetChunks() / totalChunks;
     }
 
-    private double getRadiusForType(PeerNode peer) {
-        return switch (peer.getNodeType()) {
-            case "Client" -> 12;
-            case "Seeder" -> 10;
-            case "Leecher" -> 8;
-            case "Supernode" -> 14;
-            default -> 6;
-        };
+    private double ticksPerSecond() {
+        return unthrottled ? 0 : BASE_TICKS_PER_SECOND * speedMultiplier;
     }
 
     /**
      * Builds the simulation report shown after download completes or fails.
+     * Runs on the simulation thread, which owns the controller.
      */
-    private void buildReportSummary() {
+    private String buildReportSummary(SimulationController controller) {
         long timeElapsed = (System.currentTimeMillis() - startTimeMs) / 1000;
         PeerNode target = controller.getDownloadTarget();
-        int downloaded = target.getOwnedChunks().size();
+        boolean downloadComplete = target.hasCompleteFile();
+        int downloaded = target.getOwnedChunkCount();
         int missing = totalChunks - downloaded;
 
-        long simulatedTimeMs = controller.getTickCount() * Constants.DEFAULT_TICK_DUR_MS;
-        long simulatedSeconds = simulatedTimeMs / 1000;
+        long simulatedSeconds = (long) controller.getSimulatedSeconds();
 
         int totalConnections = controller
                 .getPeers()
                 .stream()
                 .mapToInt(p -> p.getConnections().size()).sum() / 2;
 
+        LatencyHistogram tickTimes = controller.getMetrics().histogram(TickPhase.TICK);
+
         long seederCount = controller.getPeers().stream()
                 .filter(p -> p instanceof Seeder).count();
 
@@ -254,11 +270,20 @@ public class SimulationView extends Pane {
                 ? "✅ Download Complete"
                 : "❌ Download Failed";
 
+        int unreachable = controller.getUnreachableChunks();
         String reason = downloadComplete
                 ? ""
-                : "\nDownload failed - required chunks unavailable.";
+                : unreachable > 0
+                        ? "\nDownload failed - " + unreachable + " required chunks unavailable."
+                        : "\nDownload failed - no progress for " + controller.stallThreshold + " ticks.";
 
-        summaryReport = String.format("""
+        PieceManifest manifest = controller.getManifest();
+        String file = manifest == null
+                ? ""
+                : "\nFile: " + manifest.getFile().getFileName() + " (SHA-256 of pieces "
+                        + manifest.getRootHashHex().substring(0, 16) + ")";
+
+        return String.format("""
             %s
             Time Elapsed (simulated): %d seconds
             Time Elapsed (actual): %d seconds
@@ -267,18 +292,23 @@ public class SimulationView extends Pane {
             Active Peers: %d
             Final Seeders: %d
             Supernodes: %d
-            Total Connections: %d%s
+            Total Connections: %d
+            Average Throughput: %.2f MB/s
+            Tick Time (p50/p99): %.2f/%.2f ms%s
             """,
                 status,
-                timeElapsed,
                 simulatedSeconds,
+                timeElapsed,
                 downloaded, this.totalChunks,
                 missing,
                 controller.getPeers().size(),
                 seederCount,
                 supernodeCount,
                 totalConnections,
-                reason
+                controller.getAverageThroughputMBps(),
+                tickTimes.getPercentile(50) / 1e6,
+                tickTimes.getPercentile(99) / 1e6,
+                reason + file
         );
     }
 }
\ No newline at end of file
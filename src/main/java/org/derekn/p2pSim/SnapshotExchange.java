@@ -0,0 +1,56 @@
+package org.derekn.p2pSim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer handing render snapshots from one writer thread to one reader.
+ * <p>
+ * The writer fills its back buffer and publishes it by swapping it with the middle buffer;
+ * the reader takes the middle buffer by swapping it with its front buffer, but only when a
+ * newer one has been published. Neither side ever waits for the other, the writer never
+ * touches the buffer the reader holds, and intermediate snapshots the reader was too slow
+ * to see are simply overwritten.
+ */
+public class SnapshotExchange {
+    private static final int FRESH = 4;      // Set on the middle index when it holds an unread snapshot
+    private static final int INDEX_MASK = 3;
+
+    private final RenderSnapshot[] buffers = {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0;  // Owned by the writer
+    private int front = 1; // Owned by the reader
+    private long published; // Writer-side publication count
+
+    /**
+     * Writer side: returns the buffer to fill before the next {@link #publish()}.
+     * Must always be called from the same thread, normally the simulation thread.
+     *
+     * @return Back buffer, not visible to the reader
+     */
+    public RenderSnapshot back() {
+        return buffers[back];
+    }
+
+    /**
+     * Writer side: makes the back buffer the latest snapshot and takes a free buffer as the
+     * new back buffer.
+     */
+    public void publish() {
+        buffers[back].setVersion(++published);
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Reader side: returns the most recently published snapshot. The returned snapshot is
+     * not modified until a later call to this method. Must always be called from the same
+     * thread, normally the FX thread.
+     *
+     * @return Latest snapshot; version 0 if nothing has been published yet
+     */
+    public RenderSnapshot latest() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+}
@@ -0,0 +1,161 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+
+/**
+ * Uniform-grid spatial index over the nodes of a {@link RenderSnapshot}.
+ * <p>
+ * The layout area is divided into square cells sized so that each holds a handful of nodes
+ * on average, and node indices are sorted by cell into one array (a counting sort, so the
+ * index is rebuilt in linear time on every capture without allocating). The renderer uses
+ * it to visit only the nodes inside the viewport, and reads the per-cell counts and
+ * progress sums to draw density tiles when zoomed out too far to draw nodes.
+ * <p>
+ * For edge bundling the area is also divided into a fixed coarse grid of regions, and the
+ * edges running between each pair of regions are counted, so a zoomed-out view draws one
+ * line per pair of regions instead of one per connection.
+ */
+class SpatialGrid {
+    static final int REGIONS_PER_SIDE = 16; // Coarse grid used for edge bundling
+    static final int REGION_COUNT = REGIONS_PER_SIDE * REGIONS_PER_SIDE;
+    private static final int NODES_PER_CELL = 8; // Target average cell occupancy
+    private static final int MAX_CELLS_PER_SIDE = 2048;
+
+    double cellSize;
+    int columns;
+    int rows;
+    int[] cellStart = new int[2];     // Nodes of cell c are cellNodes[cellStart[c] .. cellStart[c + 1])
+    int[] cellNodes = new int[64];    // Node indices sorted by cell
+    double[] cellProgress = new double[1]; // Sum of the completed fractions of each cell's nodes
+
+    double regionWidth;
+    double regionHeight;
+    final int[] regionNodes = new int[REGION_COUNT];     // Nodes per region
+    final double[] regionSumX = new double[REGION_COUNT];
+    final double[] regionSumY = new double[REGION_COUNT];
+    final int[] bundleCounts = new int[REGION_COUNT * REGION_COUNT]; // Edges per region pair, counted at [lower * REGION_COUNT + higher]
+
+    private int[] nodeCell = new int[64]; // Scratch cell of each node during a build
+    private double width;
+    private double height;
+
+    /**
+     * Resets the grid for a new capture covering [0, width) x [0, height).
+     *
+     * @param width     Layout width
+     * @param height    Layout height
+     * @param nodeCount Number of nodes that will be indexed
+     */
+    void reset(double width, double height, int nodeCount) {
+        this.width = width;
+        this.height = height;
+        int targetCells = Math.max(1, nodeCount / NODES_PER_CELL);
+        cellSize = Math.sqrt(width * height / targetCells);
+        columns = clamp((int) Math.ceil(width / cellSize));
+        rows = clamp((int) Math.ceil(height / cellSize));
+        cellSize = Math.max(width / columns, height / rows);
+
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+            cellProgress = new double[cells];
+        }
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        Arrays.fill(cellProgress, 0, cells, 0);
+        if (cellNodes.length < nodeCount) {
+            int capacity = Math.max(nodeCount, cellNodes.length * 2);
+            cellNodes = new int[capacity];
+            nodeCell = new int[capacity];
+        }
+
+        regionWidth = width / REGIONS_PER_SIDE;
+        regionHeight = height / REGIONS_PER_SIDE;
+        Arrays.fill(regionNodes, 0);
+        Arrays.fill(regionSumX, 0);
+        Arrays.fill(regionSumY, 0);
+        Arrays.fill(bundleCounts, 0);
+    }
+
+    /**
+     * Indexes all nodes. Must follow {@link #reset} with the same node count.
+     *
+     * @param x           Node x coordinates
+     * @param y           Node y coordinates
+     * @param chunks      Chunks owned by each node
+     * @param totalChunks Chunks in the file
+     * @param n           Node count
+     */
+    void index(double[] x, double[] y, int[] chunks, int totalChunks, int n) {
+        int cells = columns * rows;
+        double perChunk = totalChunks == 0 ? 0 : 1.0 / totalChunks;
+        for (int i = 0; i < n; i++) {
+            int cell = row(y[i]) * columns + column(x[i]);
+            nodeCell[i] = cell;
+            cellStart[cell + 1]++;
+            cellProgress[cell] += chunks[i] * perChunk;
+
+            int region = regionOf(x[i], y[i]);
+            regionNodes[region]++;
+            regionSumX[region] += x[i];
+            regionSumY[region] += y[i];
+        }
+        for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+        // Fill back to front so each cell's nodes stay in index order
+        for (int i = n - 1; i >= 0; i--) {
+            int cell = nodeCell[i];
+            cellNodes[cellStart[cell + 1] - 1] = i;
+            cellStart[cell + 1]--;
+        }
+        // cellStart[c + 1] now holds the start of cell c; shift back into place
+        System.arraycopy(cellStart, 1, cellStart, 0, cells);
+        cellStart[cells] = n;
+    }
+
+    /**
+     * Counts an edge towards the bundle between its endpoints' regions.
+     * Edges within one region are not counted.
+     */
+    void countEdge(double x1, double y1, double x2, double y2) {
+        int a = regionOf(x1, y1);
+        int b = regionOf(x2, y2);
+        if (a == b) return;
+        if (a < b) bundleCounts[a * REGION_COUNT + b]++;
+        else bundleCounts[b * REGION_COUNT + a]++;
+    }
+
+    /**
+     * @return Column of the cell containing x, clamped to the grid
+     */
+    int column(double x) {
+        int c = (int) (x / cellSize);
+        return c < 0 ? 0 : Math.min(c, columns - 1);
+    }
+
+    /**
+     * @return Row of the cell containing y, clamped to the grid
+     */
+    int row(double y) {
+        int r = (int) (y / cellSize);
+        return r < 0 ? 0 : Math.min(r, rows - 1);
+    }
+
+    double getWidth() {
+        return width;
+    }
+
+    double getHeight() {
+        return height;
+    }
+
+    private int regionOf(double x, double y) {
+        int rx = (int) (x / regionWidth);
+        int ry = (int) (y / regionHeight);
+        rx = rx < 0 ? 0 : Math.min(rx, REGIONS_PER_SIDE - 1);
+        ry = ry < 0 ? 0 : Math.min(ry, REGIONS_PER_SIDE - 1);
+        return ry * REGIONS_PER_SIDE + rx;
+    }
+
+    private static int clamp(int cells) {
+        return Math.max(1, Math.min(cells, MAX_CELLS_PER_SIDE));
+    }
+}
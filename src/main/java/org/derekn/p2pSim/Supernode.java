@@ -6,6 +6,7 @@ package org.derekn.p2pSim;
  * and serve as efficient hubs for data distribution.
  */
 public class Supernode extends PeerNode {
+    public static final int MAX_CONNECTIONS = 12; // Connection limit for a Supernode
 
     /**
      * Constructs a Supernode with enhanced bandwidth characteristics.
@@ -17,7 +18,21 @@ public class Supernode extends PeerNode {
      * @param totalChunks  Total number of chunks in the file
      */
     public Supernode(int id, double x, double y, int totalChunks) {
-        super(id, x, y, totalChunks);
+        this(id, x, y, totalChunks, RandomStream.unseeded());
+    }
+
+    /**
+     * Constructs a Supernode whose base speeds are drawn from the given stream.
+     * Upload and download speeds are boosted compared to standard peers.
+     *
+     * @param id           Unique identifier for the node
+     * @param x            X-coordinate for visual placement
+     * @param y            Y-coordinate for visual placement
+     * @param totalChunks  Total number of chunks in the file
+     * @param bandwidthRng Stream used to randomize speeds
+     */
+    public Supernode(int id, double x, double y, int totalChunks, RandomStream bandwidthRng) {
+        super(id, x, y, totalChunks, bandwidthRng);
 
         // Supernodes have double upload and 1.5x download speed
         this.uploadSpeed *= 2;
@@ -42,6 +57,6 @@ public class Supernode extends PeerNode {
      * @return true if connections are below 12; false otherwise
      */
     public boolean canAcceptMoreConnections() {
-        return this.connections.size() < 12;
+        return this.connections.size() < MAX_CONNECTIONS;
     }
 }
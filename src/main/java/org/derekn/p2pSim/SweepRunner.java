@@ -0,0 +1,40 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+
+/**
+ * Entry point for parameter sweeps: many headless replications of every combination of the
+ * given parameter values, run in parallel, with results streamed to CSV. See
+ * {@link ParameterSweep} for the argument syntax.
+ * <p>
+ * Example: {@code java -cp p2p-sim.jar org.derekn.p2pSim.SweepRunner --peers=500,1000,2000
+ * --chunks=100 --seeder-ratio=0.1..0.5:0.1 --leave-rate=0.05,0.2 --replications=30}
+ */
+public class SweepRunner {
+    public static void main(String[] args) {
+        ParameterSweep sweep;
+        try {
+            sweep = ParameterSweep.fromArgs(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println("Usage: SweepRunner [simulation parameters as for HeadlessRunner, each a value, "
+                    + "a list a,b,c or a range from..to[:step]] [--replications=N] [--sweep-threads=N] "
+                    + "[--seed=N] [--out=runs.csv] [--summary=summary.csv] [--target-ci=0.05] "
+                    + "[--target-stall-ci=0.1] [--min-replications=5] [--confidence=0.95]");
+            System.exit(2);
+            return;
+        }
+
+        System.err.printf("Sweeping %d points x %s%d replications on %d threads%n", sweep.getPointCount(),
+                sweep.isAdaptive() ? "at most " : "", sweep.getReplications(), sweep.getThreads());
+        long start = System.nanoTime();
+        try {
+            sweep.run();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Sweep failed: " + e);
+            System.exit(1);
+            return;
+        }
+        System.err.printf("Done in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+}
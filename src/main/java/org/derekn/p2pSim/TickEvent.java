@@ -0,0 +1,63 @@
+package org.derekn.p2pSim;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event emitted for every simulation tick.
+ * The event's duration is the tick time, so JMC can chart tick-time percentiles directly;
+ * the phase fields show where the tick went. Costs next to nothing unless a recording
+ * with this event enabled is running.
+ */
+@Name("org.derekn.p2pSim.Tick")
+@Label("Simulation Tick")
+@Category("P2P Simulator")
+@Description("One tick of the simulation, with the time spent in each phase")
+@StackTrace(false)
+class TickEvent extends Event {
+    @Label("Tick")
+    int tick;
+
+    @Label("Peers")
+    int peers;
+
+    @Label("Transfers")
+    @Description("Chunk transfers completed during the tick")
+    long transfers;
+
+    @Label("Joins")
+    long joins;
+
+    @Label("Leaves")
+    long leaves;
+
+    @Label("Bytes Moved")
+    @DataAmount
+    long bytes;
+
+    @Label("Churn Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long churn;
+
+    @Label("Selection Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long select;
+
+    @Label("Transfer Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long transfer;
+
+    @Label("Commit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long commit;
+
+    @Label("Event Processing Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long events;
+}
@@ -0,0 +1,29 @@
+package org.derekn.p2pSim;
+
+/**
+ * Timed stages of the simulation, each with its own latency histogram in
+ * {@link SimulationMetrics}.
+ */
+public enum TickPhase {
+    /** A whole tick. */
+    TICK,
+    /** Peers joining and leaving. */
+    CHURN,
+    /** Choosing which transfers to start, in parallel against the previous tick's state. */
+    SELECT,
+    /** Moving bytes at the allocated rates (bandwidth model). */
+    TRANSFER,
+    /** Applying finished transfers to the peers. */
+    COMMIT,
+    /** Processing one tick's worth of scheduled events (event clock). */
+    EVENTS,
+    /** Copying the swarm into a render snapshot. */
+    CAPTURE;
+
+    /**
+     * @return Lower-case name used in reports
+     */
+    public String label() {
+        return name().toLowerCase();
+    }
+}
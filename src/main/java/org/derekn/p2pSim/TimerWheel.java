@@ -0,0 +1,112 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timer wheel of integer keys due at whole ticks, as used by operating system
+ * kernels for their timeouts. Level 0 has one slot per tick for the next 64 ticks, and each
+ * further level has 64 slots, each covering a whole turn of the level below. A timer
+ * starts in the lowest level whose span reaches its deadline and moves down one level each
+ * time the level below wraps around, so it is touched at most once per level: scheduling is
+ * O(1) and advancing costs O(timers due plus timers moved), however many are pending.
+ * Deadlines beyond the top level wait in an overflow slot that is re-sorted once per turn
+ * of the top level.
+ * <p>
+ * Timers cannot be cancelled; owners ignore timers they no longer want when they fire.
+ */
+final class TimerWheel {
+    private static final int BITS = 6;              // Slots per level are 1 << BITS
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;            // Levels span 2^24 ticks in all
+    private static final int OVERFLOW = LEVELS * SLOTS; // Index of the overflow slot
+
+    private final long[][] slots = new long[OVERFLOW + 1][]; // Deadline and key packed per timer
+    private final int[] sizes = new int[OVERFLOW + 1];
+    private int now;  // Last tick advanced to
+    private int size; // Timers pending
+
+    /**
+     * @param now Current tick; timers must be due after it
+     */
+    TimerWheel(int now) {
+        this.now = now;
+    }
+
+    /**
+     * @param key      Value passed back when the timer fires
+     * @param deadline Tick at which it fires, after the current one
+     */
+    void schedule(int key, int deadline) {
+        if (deadline <= now) throw new IllegalArgumentException("Deadline " + deadline + " is not after tick " + now);
+        add(((long) deadline << 32) | (key & 0xFFFFFFFFL));
+        size++;
+    }
+
+    /**
+     * Moves to the next tick and fires every timer due then. Ticks may not be skipped.
+     *
+     * @param due Receives the key of every timer firing, in no particular order
+     * @return The tick advanced to
+     */
+    int advance(IntConsumer due) {
+        int tick = ++now;
+        // Bring down the slots of every level whose lower level just wrapped, highest first
+        int level = 0;
+        while (level < LEVELS - 1 && ((tick >>> (BITS * level)) & MASK) == 0) level++;
+        if (level == LEVELS - 1 && ((tick >>> (BITS * level)) & MASK) == 0) cascade(OVERFLOW);
+        for (; level > 0; level--) cascade(level * SLOTS + ((tick >>> (BITS * level)) & MASK));
+
+        int slot = tick & MASK;
+        long[] timers = slots[slot];
+        int count = sizes[slot];
+        sizes[slot] = 0;
+        size -= count;
+        for (int i = 0; i < count; i++) due.accept((int) timers[i]);
+        return tick;
+    }
+
+    /**
+     * @return Number of pending timers, including ones their owner no longer wants
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Tick last advanced to
+     */
+    int now() {
+        return now;
+    }
+
+    // Re-files every timer of a slot into the level it now belongs to
+    private void cascade(int slot) {
+        long[] timers = slots[slot];
+        int count = sizes[slot];
+        if (count == 0) return;
+        slots[slot] = null; // Timers may be re-filed into this same slot
+        sizes[slot] = 0;
+        for (int i = 0; i < count; i++) add(timers[i]);
+    }
+
+    private void add(long timer) {
+        int deadline = (int) (timer >>> 32);
+        int slot = OVERFLOW;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            if ((deadline >>> shift) - (now >>> shift) < SLOTS) {
+                slot = level * SLOTS + ((deadline >>> shift) & MASK);
+                break;
+            }
+        }
+        long[] timers = slots[slot];
+        if (timers == null) {
+            slots[slot] = timers = new long[8];
+        } else if (sizes[slot] == timers.length) {
+            slots[slot] = timers = Arrays.copyOf(timers, timers.length * 2);
+        }
+        timers[sizes[slot]++] = timer;
+    }
+}
@@ -0,0 +1,43 @@
+package org.derekn.p2pSim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Strategy for building the initial connection graph of a swarm.
+ * Implementations must be deterministic for a given random stream, independent
+ * of whether a pool is supplied or how many threads it has.
+ */
+public interface TopologyGenerator {
+    /**
+     * Connects the given peers.
+     *
+     * @param peers Peers to connect, indexed by position
+     * @param rng   Topology random stream
+     * @param pool  Pool for parallel generation, or null to generate on the calling thread
+     */
+    void connect(List<PeerNode> peers, RandomStream rng, ForkJoinPool pool);
+
+    /**
+     * Parses a topology specification such as {@code er:8}, {@code ba:3},
+     * {@code ws:6:0.1} or {@code regular:6}.
+     *
+     * @param spec Generator name followed by colon-separated parameters
+     * @return Matching generator
+     */
+    static TopologyGenerator parse(String spec) {
+        String[] parts = spec.split(":");
+        return switch (parts[0]) {
+            case "er" -> parts.length > 1
+                    ? ErdosRenyiTopology.withMeanDegree(Double.parseDouble(parts[1]))
+                    : ErdosRenyiTopology.withMeanDegree(ErdosRenyiTopology.DEFAULT_MEAN_DEGREE);
+            case "er-p" -> new ErdosRenyiTopology(Double.parseDouble(parts[1]));
+            case "ba" -> new BarabasiAlbertTopology(parts.length > 1 ? Integer.parseInt(parts[1]) : 3);
+            case "ws" -> new WattsStrogatzTopology(
+                    parts.length > 1 ? Integer.parseInt(parts[1]) : 6,
+                    parts.length > 2 ? Double.parseDouble(parts[2]) : 0.1);
+            case "regular" -> new RandomRegularTopology(parts.length > 1 ? Integer.parseInt(parts[1]) : 6);
+            default -> throw new IllegalArgumentException("Unknown topology: " + spec);
+        };
+    }
+}
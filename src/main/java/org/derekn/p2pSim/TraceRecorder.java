@@ -0,0 +1,201 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a run as a compact append-only binary trace that {@link TraceReplay} can play
+ * back and seek in without re-simulating.
+ * <p>
+ * The file is a header followed by blocks, each {@code [kind:byte][tick:int][length:long]}
+ * and a payload:
+ * <ul>
+ *   <li>a tick block holds the simulated time, bytes moved and target progress at the end
+ *       of the tick, then every join, leave, completed transfer and completion of that tick
+ *       as {@link EventCategory} records;</li>
+ *   <li>a keyframe block holds a full checkpoint of the state after that tick, written
+ *       when recording starts and then every few ticks.</li>
+ * </ul>
+ * Seeking restores the nearest keyframe and applies the following tick blocks. Blocks are
+ * only ever appended, so a trace cut short by a crash is readable up to its last whole block.
+ * <p>
+ * Like the {@link EventLog}, a recorder is fed by the thread advancing the simulation.
+ */
+public class TraceRecorder implements AutoCloseable {
+    static final int MAGIC = 0x50325054;    // "P2PT"
+    static final int VERSION = 2;           // Follows the checkpoint layout of keyframes
+    static final int HEADER_BYTES = 12;     // Magic, version, keyframe interval
+    static final int BLOCK_HEADER_BYTES = 13;
+    static final byte TICK_BLOCK = 0;
+    static final byte KEYFRAME_BLOCK = 1;
+
+    private final FileChannel channel;
+    private final int keyframeInterval; // Ticks between keyframes
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer events = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN); // Current tick
+    private long bytesWritten;
+
+    /**
+     * Creates or replaces a trace file.
+     *
+     * @param file             Trace file
+     * @param keyframeInterval Ticks between keyframes; smaller seeks faster, larger is more compact
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    public TraceRecorder(Path file, int keyframeInterval) {
+        if (keyframeInterval < 1) throw new IllegalArgumentException("Keyframe interval must be positive");
+        this.keyframeInterval = keyframeInterval;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer start = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            start.putInt(MAGIC).putInt(VERSION).putInt(keyframeInterval).flip();
+            write(start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create trace " + file, e);
+        }
+    }
+
+    /**
+     * Records a peer joining, with everything needed to recreate it.
+     *
+     * @param peer New peer, already connected to its first neighbours
+     */
+    void join(PeerNode peer) {
+        NeighborSet neighbors = peer.getNeighborSet();
+        ensure(46 + 4 * neighbors.size());
+        events.put((byte) EventCategory.JOIN.ordinal());
+        events.putInt(peer.getId());
+        events.put((byte) SimulationController.roleCode(peer));
+        events.putDouble(peer.getX());
+        events.putDouble(peer.getY());
+        events.putDouble(peer.getUploadSpeed());
+        events.putDouble(peer.getDownloadSpeed());
+        events.putInt(neighbors.size());
+        for (int k = 0; k < neighbors.size(); k++) events.putInt(neighbors.idAt(k));
+    }
+
+    /**
+     * @param peerId ID of a peer that left
+     */
+    void leave(int peerId) {
+        ensure(5);
+        events.put((byte) EventCategory.LEAVE.ordinal());
+        events.putInt(peerId);
+    }
+
+    /**
+     * Records a chunk arriving at a peer.
+     *
+     * @param receiverId Receiving peer
+     * @param senderId   Sending peer
+     * @param chunk      Chunk index
+     */
+    void transfer(int receiverId, int senderId, int chunk) {
+        ensure(13);
+        events.put((byte) EventCategory.TRANSFER.ordinal());
+        events.putInt(receiverId);
+        events.putInt(senderId);
+        events.putInt(chunk);
+    }
+
+    /**
+     * @param peerId Download target that completed the file
+     */
+    void complete(int peerId) {
+        ensure(5);
+        events.put((byte) EventCategory.COMPLETE.ordinal());
+        events.putInt(peerId);
+    }
+
+    /**
+     * Writes the events of a finished tick as one block, followed by a keyframe if one is due.
+     *
+     * @param controller Simulation at the end of the tick
+     */
+    void endTick(SimulationController controller) {
+        int tick = controller.getTickCount();
+        ByteBuffer payload = events.flip();
+        ByteBuffer totals = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        totals.putDouble(controller.getSimulatedSeconds())
+                .putLong(controller.getTotalBytesTransferred())
+                .putLong(controller.getTargetProgressBytes())
+                .flip();
+        try {
+            writeBlockHeader(TICK_BLOCK, tick, totals.remaining() + payload.remaining());
+            write(totals);
+            write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Trace write failed", e);
+        }
+        events.clear();
+
+        if (tick % keyframeInterval == 0) keyframe(controller);
+    }
+
+    /**
+     * Writes a keyframe of the current state.
+     *
+     * @param controller Simulation between ticks
+     */
+    void keyframe(SimulationController controller) {
+        try {
+            long start = bytesWritten;
+            writeBlockHeader(KEYFRAME_BLOCK, controller.getTickCount(), 0);
+            long before = channel.position();
+            CheckpointWriter out = new CheckpointWriter(channel);
+            controller.writeCheckpoint(out);
+            out.finish();
+            long length = channel.position() - before;
+            bytesWritten += length;
+
+            // Fill in the length now that it is known
+            header.clear();
+            header.putLong(length).flip();
+            channel.write(header, start + 5);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Trace keyframe write failed", e);
+        }
+    }
+
+    /**
+     * @return Bytes written to the trace so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close trace", e);
+        }
+    }
+
+    private void writeBlockHeader(byte kind, int tick, long length) throws IOException {
+        header.clear();
+        header.put(kind).putInt(tick).putLong(length).flip();
+        write(header);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // Grows the tick buffer; a busy tick of a large swarm can hold millions of transfers
+    private void ensure(int bytes) {
+        if (events.remaining() >= bytes) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(events.capacity() * 2, events.position() + bytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        larger.put(events.flip());
+        events = larger;
+    }
+}
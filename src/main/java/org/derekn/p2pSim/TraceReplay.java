@@ -0,0 +1,276 @@
+package org.derekn.p2pSim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays back a trace written by {@link TraceRecorder}, forwards tick by tick or by seeking
+ * to any recorded tick.
+ * <p>
+ * Opening the trace only reads its block headers to index where every tick and keyframe
+ * starts. Seeking restores the nearest keyframe at or before the requested tick and applies
+ * the tick blocks after it; seeking forwards within the same keyframe interval just keeps
+ * applying blocks. The replayed swarm is an ordinary {@link SimulationController} that is
+ * never ticked, so it renders like a live one.
+ * <p>
+ * A replay is used by one thread at a time. I/O errors surface as {@link UncheckedIOException}.
+ */
+public class TraceReplay implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+
+    // Index of the tick blocks, in tick order
+    private final int[] ticks;
+    private final long[] tickOffsets;  // File offset of each block's payload
+    private final int[] tickLengths;
+
+    // Index of the keyframes, in tick order
+    private final int[] keyframeTicks;
+    private final long[] keyframeOffsets;
+    private final long[] keyframeLengths;
+
+    private SimulationController controller; // Replayed state, null until the first seek
+    private int next;                        // Index of the next tick block to apply
+    private ByteBuffer block = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    private TraceReplay(Path file, FileChannel channel, int[] ticks, long[] tickOffsets, int[] tickLengths,
+                        int[] keyframeTicks, long[] keyframeOffsets, long[] keyframeLengths) {
+        this.file = file;
+        this.channel = channel;
+        this.ticks = ticks;
+        this.tickOffsets = tickOffsets;
+        this.tickLengths = tickLengths;
+        this.keyframeTicks = keyframeTicks;
+        this.keyframeOffsets = keyframeOffsets;
+        this.keyframeLengths = keyframeLengths;
+    }
+
+    /**
+     * Opens a trace, indexes it and positions the replay at its first keyframe. A trace cut
+     * short is replayed up to its last complete block.
+     *
+     * @param file Trace file
+     * @return Replay positioned at the first recorded tick
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the file is not a trace or holds no keyframe
+     */
+    public static TraceReplay open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, header, 0) < TraceRecorder.HEADER_BYTES
+                    || header.getInt(0) != TraceRecorder.MAGIC) {
+                throw new IllegalStateException(file + " is not a trace");
+            }
+            int version = header.getInt(4);
+            if (version != TraceRecorder.VERSION) {
+                throw new IllegalStateException("Unsupported trace version " + version + " in " + file);
+            }
+
+            int[] ticks = new int[1024];
+            long[] tickOffsets = new long[1024];
+            int[] tickLengths = new int[1024];
+            int tickCount = 0;
+            int[] keyframeTicks = new int[16];
+            long[] keyframeOffsets = new long[16];
+            long[] keyframeLengths = new long[16];
+            int keyframeCount = 0;
+
+            ByteBuffer blockHeader = ByteBuffer.allocate(TraceRecorder.BLOCK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long size = channel.size();
+            long position = TraceRecorder.HEADER_BYTES;
+            while (readFully(channel, blockHeader.clear(), position) == TraceRecorder.BLOCK_HEADER_BYTES) {
+                byte kind = blockHeader.get(0);
+                int tick = blockHeader.getInt(1);
+                long length = blockHeader.getLong(5);
+                long payload = position + TraceRecorder.BLOCK_HEADER_BYTES;
+                // A keyframe whose length was never filled in, or a block running past the end, was cut short
+                if (length <= 0 || payload + length > size) break;
+
+                if (kind == TraceRecorder.TICK_BLOCK) {
+                    if (tickCount == ticks.length) {
+                        ticks = Arrays.copyOf(ticks, tickCount * 2);
+                        tickOffsets = Arrays.copyOf(tickOffsets, tickCount * 2);
+                        tickLengths = Arrays.copyOf(tickLengths, tickCount * 2);
+                    }
+                    ticks[tickCount] = tick;
+                    tickOffsets[tickCount] = payload;
+                    tickLengths[tickCount] = Math.toIntExact(length);
+                    tickCount++;
+                } else if (kind == TraceRecorder.KEYFRAME_BLOCK) {
+                    if (keyframeCount == keyframeTicks.length) {
+                        keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+                        keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+                        keyframeLengths = Arrays.copyOf(keyframeLengths, keyframeCount * 2);
+                    }
+                    keyframeTicks[keyframeCount] = tick;
+                    keyframeOffsets[keyframeCount] = payload;
+                    keyframeLengths[keyframeCount] = length;
+                    keyframeCount++;
+                } else {
+                    throw new IllegalStateException("Trace " + file + " is corrupt: unknown block at " + position);
+                }
+                position = payload + length;
+            }
+            if (keyframeCount == 0) throw new IllegalStateException("Trace " + file + " has no keyframe");
+
+            TraceReplay replay = new TraceReplay(file, channel,
+                    Arrays.copyOf(ticks, tickCount), Arrays.copyOf(tickOffsets, tickCount),
+                    Arrays.copyOf(tickLengths, tickCount), Arrays.copyOf(keyframeTicks, keyframeCount),
+                    Arrays.copyOf(keyframeOffsets, keyframeCount), Arrays.copyOf(keyframeLengths, keyframeCount));
+            replay.seek(replay.getFirstTick());
+            return replay;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Tick of the first keyframe, the earliest tick that can be shown
+     */
+    public int getFirstTick() {
+        return keyframeTicks[0];
+    }
+
+    /**
+     * @return Last recorded tick
+     */
+    public int getLastTick() {
+        return ticks.length > 0 ? Math.max(ticks[ticks.length - 1], getFirstTick()) : getFirstTick();
+    }
+
+    /**
+     * @return Tick currently shown
+     */
+    public int getTick() {
+        return controller.getTickCount();
+    }
+
+    /**
+     * @return Replayed swarm; replaced by seeks that go back or jump past a keyframe
+     */
+    public SimulationController getController() {
+        return controller;
+    }
+
+    /**
+     * @return true once the last recorded tick has been applied
+     */
+    public boolean atEnd() {
+        return next >= ticks.length;
+    }
+
+    /**
+     * Moves the replay to a tick, clamped to the recorded range.
+     *
+     * @param tick Tick to show
+     */
+    public void seek(int tick) {
+        tick = Math.max(getFirstTick(), Math.min(tick, getLastTick()));
+        int keyframe = floorIndex(keyframeTicks, tick);
+        // Applying blocks from where we are is cheaper than restoring unless a keyframe lies between
+        if (controller == null || tick < getTick() || keyframeTicks[keyframe] > getTick()) {
+            restoreKeyframe(keyframe);
+        }
+        while (next < ticks.length && ticks[next] <= tick) step();
+    }
+
+    /**
+     * Applies the next recorded tick.
+     *
+     * @return false if the trace has ended
+     */
+    public boolean step() {
+        if (atEnd()) return false;
+        int length = tickLengths[next];
+        if (block.capacity() < length) {
+            block = ByteBuffer.allocate(Math.max(length, block.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        block.clear().limit(length);
+        try {
+            if (readFully(channel, block, tickOffsets[next]) < length) {
+                throw new IllegalStateException("Trace " + file + " is truncated");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read trace " + file, e);
+        }
+        block.flip();
+        apply(ticks[next], block);
+        next++;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close trace " + file, e);
+        }
+    }
+
+    private void restoreKeyframe(int keyframe) {
+        SimulationConfig config = new SimulationConfig();
+        config.setParallelism(1); // Never ticked, so no pool is needed
+        try (CheckpointReader in = new CheckpointReader(channel, keyframeOffsets[keyframe],
+                keyframeLengths[keyframe], file + " keyframe " + keyframeTicks[keyframe])) {
+            controller = SimulationController.restore(in, config);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read trace " + file, e);
+        }
+        controller.beginReplay();
+        // Tick blocks recorded before the keyframe are already part of it
+        next = 0;
+        while (next < ticks.length && ticks[next] <= keyframeTicks[keyframe]) next++;
+    }
+
+    private void apply(int tick, ByteBuffer in) {
+        controller.replayTick(tick, in.getDouble(), in.getLong(), in.getLong());
+        while (in.hasRemaining()) {
+            EventCategory category = EventCategory.values()[in.get()];
+            switch (category) {
+                case JOIN -> {
+                    int id = in.getInt();
+                    int role = in.get();
+                    double x = in.getDouble();
+                    double y = in.getDouble();
+                    double upload = in.getDouble();
+                    double download = in.getDouble();
+                    int[] neighbors = new int[in.getInt()];
+                    for (int k = 0; k < neighbors.length; k++) neighbors[k] = in.getInt();
+                    controller.replayJoin(role, id, x, y, upload, download, neighbors);
+                }
+                case LEAVE -> controller.replayLeave(in.getInt());
+                case TRANSFER -> controller.replayTransfer(in.getInt(), in.getInt(), in.getInt());
+                case COMPLETE -> in.getInt(); // Shown through the target's own chunks
+                default -> throw new IllegalStateException("Trace " + file + " is corrupt at tick " + tick);
+            }
+        }
+    }
+
+    // Index of the last element at or below the value; the first element is at most the value
+    private static int floorIndex(int[] sorted, int value) {
+        int i = Arrays.binarySearch(sorted, value);
+        if (i < 0) i = -i - 2;
+        // Equal ticks can repeat; use the last
+        while (i + 1 < sorted.length && sorted[i + 1] <= value) i++;
+        return Math.max(i, 0);
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+}
@@ -2,11 +2,23 @@ package org.derekn.p2pSim;
 
 /**
  * Represents a data transfer event between two peer nodes.
- * Encapsulates the sender and receiver involved in the transfer.
+ * Encapsulates the sender and receiver involved in the transfer and, under the
+ * bandwidth model, the chunk being moved and how far along it is.
  */
 public class Transfer {
     private final PeerNode sender;   // The node sending the data chunk
     private final PeerNode receiver; // The node receiving the data chunk
+    private final int chunk;         // Chunk being transferred, or -1 if not tracked
+    private final long sizeBytes;    // Size of the chunk in bytes
+    private double bytesDone;        // Bytes delivered so far
+    private double rate;             // Current allocated rate in bytes per second
+
+    // Bookkeeping owned by BandwidthTransferEngine
+    int engineIndex = -1;            // Position in the engine's active list
+    boolean frozen;                  // Rate fixed during the current allocation pass
+    double previousRate;             // Rate before the current allocation pass
+    double lastSettled;              // Simulated time up to which bytesDone is accurate (event mode)
+    int version;                     // Bumped whenever the completion time changes (event mode)
 
     /**
      * Constructs a new Transfer instance with specified sender and receiver.
@@ -15,8 +27,22 @@ public class Transfer {
      * @param receiver the peer receiving the transfer
      */
     public Transfer(PeerNode sender, PeerNode receiver) {
+        this(sender, receiver, -1, 0);
+    }
+
+    /**
+     * Constructs a transfer of a specific chunk that completes once all its bytes arrive.
+     *
+     * @param sender    the peer initiating the transfer
+     * @param receiver  the peer receiving the transfer
+     * @param chunk     index of the chunk being transferred
+     * @param sizeBytes size of the chunk in bytes
+     */
+    public Transfer(PeerNode sender, PeerNode receiver, int chunk, long sizeBytes) {
         this.sender = sender;
         this.receiver = receiver;
+        this.chunk = chunk;
+        this.sizeBytes = sizeBytes;
     }
 
     /**
@@ -32,4 +58,95 @@ public class Transfer {
     public PeerNode getReceiver() {
         return receiver;
     }
+
+    /**
+     * @return index of the chunk being transferred, or -1 if not tracked
+     */
+    public int getChunk() {
+        return chunk;
+    }
+
+    /**
+     * @return size of the chunk in bytes
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return bytes delivered so far
+     */
+    public double getBytesDone() {
+        return bytesDone;
+    }
+
+    /**
+     * @return fraction of the chunk delivered, between 0 and 1
+     */
+    public double getProgress() {
+        return sizeBytes == 0 ? 1 : Math.min(1, bytesDone / sizeBytes);
+    }
+
+    /**
+     * @return currently allocated rate in bytes per second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Adds delivered bytes, capped at the chunk size.
+     *
+     * @param bytes Bytes delivered
+     * @return Bytes actually credited
+     */
+    double addBytes(double bytes) {
+        double credited = Math.min(bytes, sizeBytes - bytesDone);
+        bytesDone += credited;
+        return credited;
+    }
+
+    /**
+     * Estimates the bytes delivered by a given simulated time at the current rate,
+     * without changing the transfer. Used by the discrete-event engine.
+     *
+     * @param now Simulated time in seconds
+     * @return Estimated bytes delivered
+     */
+    public double bytesAt(double now) {
+        return Math.min(sizeBytes, bytesDone + rate * Math.max(0, now - lastSettled));
+    }
+
+    /**
+     * Credits the bytes delivered since the last settlement at the current rate.
+     *
+     * @param now Simulated time in seconds
+     * @return Bytes credited
+     */
+    double settle(double now) {
+        double credited = addBytes(rate * Math.max(0, now - lastSettled));
+        lastSettled = now;
+        return credited;
+    }
+
+    /**
+     * @param now Simulated time in seconds
+     * @return Simulated time at which the transfer completes at its current rate
+     */
+    double completionTime(double now) {
+        double remaining = sizeBytes - bytesAt(now);
+        if (remaining <= 0) return now;
+        return rate > 0 ? now + remaining / rate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return true once every byte of the chunk has arrived
+     */
+    public boolean isComplete() {
+        return bytesDone >= sizeBytes;
+    }
 }
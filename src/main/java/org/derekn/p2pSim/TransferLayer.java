@@ -0,0 +1,96 @@
+package org.derekn.p2pSim;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Transparent canvas stacked above {@link NetworkCanvas} that animates in-flight transfers.
+ * <p>
+ * Every transfer is drawn as an arrow travelling from sender to receiver, positioned by how
+ * much of its chunk has arrived. Between snapshots the position is extrapolated from the
+ * transfer's rate and the measured pace of simulated time, so arrows move smoothly at
+ * display rate however often the simulation publishes. The layer is cleared and redrawn
+ * on every frame straight from the snapshot's primitive arrays; the swarm underneath is
+ * not redrawn, so the cost scales with the transfers on screen and nothing is allocated.
+ * Transfers entirely off screen are skipped, and none are drawn while the swarm is shown
+ * as density tiles.
+ */
+public class TransferLayer extends Canvas {
+    private static final double ARROW_LENGTH = 10;
+    private static final double ARROW_HALF_WIDTH = 5;
+
+    private final double[] arrowX = new double[3]; // Scratch polygon reused for every arrow
+    private final double[] arrowY = new double[3];
+    private boolean cleared = true;                // Nothing drawn since the last clear
+    private final Viewport viewport;
+
+    /**
+     * @param viewport Zoom and pan state shared with the swarm canvas
+     */
+    public TransferLayer(Viewport viewport) {
+        this.viewport = viewport;
+    }
+
+    /**
+     * Draws every visible transfer of the snapshot at its position for the given frame time.
+     *
+     * @param snapshot   Latest snapshot
+     * @param detailed   Whether individual peers are on screen
+     * @param frameNanos Frame timestamp from the animation timer, on the {@link System#nanoTime()} clock
+     */
+    public void render(RenderSnapshot snapshot, boolean detailed, long frameNanos) {
+        GraphicsContext gc = getGraphicsContext2D();
+        int count = detailed ? snapshot.transferCount : 0;
+        if (count == 0) {
+            if (!cleared) {
+                gc.clearRect(0, 0, getWidth(), getHeight());
+                cleared = true;
+            }
+            return;
+        }
+        gc.clearRect(0, 0, getWidth(), getHeight());
+        cleared = false;
+
+        // Simulated seconds elapsed since the snapshot was captured
+        double elapsed = Math.max(0, (frameNanos - snapshot.captureNanos) / 1e9) * snapshot.simulatedPerReal;
+
+        double[] segments = snapshot.transfers;
+        double[] progress = snapshot.transferProgress;
+        double[] speed = snapshot.transferSpeed;
+        double width = getWidth();
+        double height = getHeight();
+        gc.setFill(Color.LIMEGREEN);
+        for (int i = 0; i < count; i++) {
+            int k = i * 4;
+            double x1 = viewport.toScreenX(segments[k]);
+            double y1 = viewport.toScreenY(segments[k + 1]);
+            double x2 = viewport.toScreenX(segments[k + 2]);
+            double y2 = viewport.toScreenY(segments[k + 3]);
+            if (Math.max(x1, x2) < -ARROW_LENGTH || Math.min(x1, x2) > width + ARROW_LENGTH
+                    || Math.max(y1, y2) < -ARROW_LENGTH || Math.min(y1, y2) > height + ARROW_LENGTH) continue;
+            double p = Math.min(1, progress[i] + speed[i] * elapsed);
+            drawArrow(gc, x1, y1, x2, y2, p);
+        }
+    }
+
+    // Arrow at fraction p of the way from (x1, y1) to (x2, y2), pointing at the receiver
+    private void drawArrow(GraphicsContext gc, double x1, double y1, double x2, double y2, double p) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) return;
+        double ux = dx / length;
+        double uy = dy / length;
+        double baseX = x1 + dx * p;
+        double baseY = y1 + dy * p;
+
+        arrowX[0] = baseX + ux * ARROW_LENGTH;
+        arrowY[0] = baseY + uy * ARROW_LENGTH;
+        arrowX[1] = baseX - uy * ARROW_HALF_WIDTH;
+        arrowY[1] = baseY + ux * ARROW_HALF_WIDTH;
+        arrowX[2] = baseX + uy * ARROW_HALF_WIDTH;
+        arrowY[2] = baseY - ux * ARROW_HALF_WIDTH;
+        gc.fillPolygon(arrowX, arrowY, 3);
+    }
+}
@@ -0,0 +1,29 @@
+package org.derekn.p2pSim;
+
+/**
+ * How chunk transfers advance over simulated time.
+ */
+public enum TransferModel {
+    /** Every connection moves one whole chunk per tick, regardless of bandwidth. */
+    INSTANT,
+    /** Chunks take as many ticks as their size and the peers' shared bandwidth require. */
+    BANDWIDTH,
+    /**
+     * Like {@link #INSTANT}, but every chunk is really sent between the peers over loopback
+     * sockets, from the file the chunks were hashed from.
+     */
+    LIVE;
+
+    /**
+     * @param name "instant", "bandwidth" or "live"
+     * @return Matching model
+     */
+    public static TransferModel parse(String name) {
+        return switch (name) {
+            case "instant" -> INSTANT;
+            case "bandwidth" -> BANDWIDTH;
+            case "live" -> LIVE;
+            default -> throw new IllegalArgumentException("Unknown transfer model: " + name);
+        };
+    }
+}
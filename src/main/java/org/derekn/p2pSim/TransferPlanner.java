@@ -0,0 +1,227 @@
+package org.derekn.p2pSim;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Selects chunk transfers for one tick in two phases.
+ * <p>
+ * In the read phase every leecher picks one chunk per neighbour against the state left
+ * by the previous tick. Nothing is modified during this phase, so it is split into peer
+ * ranges and run on a {@link ForkJoinPool}. In the commit phase the selected transfers are
+ * applied on the calling thread in peer order. Because selections depend only on the
+ * previous tick's state, the outcome is the same for any number of threads, and a chunk
+ * received in a tick cannot be relayed until the next one.
+ * <p>
+ * When the registry keeps {@link PeerColumns}, the read phase walks the columns and their
+ * slot adjacency instead of the peer objects, with the same result.
+ */
+class TransferPlanner {
+    private static final int LEAF_SIZE = 512; // Peers per fork-join leaf task
+
+    private final ForkJoinPool pool; // Pool for the read phase, or null to run inline
+    private final int totalChunks;
+    private final ChunkAvailability availability; // Counts for rarest-first, or null for sequential
+    private final boolean respectInFlight; // Skip busy neighbours and chunks already in flight
+
+    // Flat plan buffers reused across ticks. Peer i owns slots [offsets[i], offsets[i + 1]).
+    private int[] offsets = new int[0];
+    private int[] counts = new int[0];
+    private int[] chunks = new int[0];
+    private PeerNode[] senders = new PeerNode[0];
+
+    /**
+     * @param pool         Pool for the parallel read phase, or null for single-threaded selection
+     * @param totalChunks  Total number of chunks in the file
+     * @param availability Swarm-wide chunk counts for rarest-first selection, or null for sequential
+     * @param respectInFlight Whether a leecher's active transfers are still in flight, so their
+     *                        chunks and senders must not be selected again
+     */
+    TransferPlanner(ForkJoinPool pool, int totalChunks, ChunkAvailability availability,
+                    boolean respectInFlight) {
+        this.pool = pool;
+        this.totalChunks = totalChunks;
+        this.availability = availability;
+        this.respectInFlight = respectInFlight;
+    }
+
+    /**
+     * Read phase: chooses transfers for every leecher without modifying any peer.
+     *
+     * @param peers Current swarm, indexed by position
+     */
+    void plan(List<PeerNode> peers) {
+        int n = peers.size();
+        if (offsets.length < n + 1) {
+            offsets = new int[n + 1];
+            counts = new int[n];
+        }
+        PeerColumns columns = peers instanceof PeerRegistry registry ? registry.getColumns() : null;
+        if (columns != null) columns.updateAdjacency((PeerRegistry) peers);
+
+        // Each leecher gets one plan slot per neighbour
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = total;
+            if (columns != null) {
+                if (columns.downloads(i)) total += columns.neighborEnd(i) - columns.neighborStart(i);
+            } else {
+                PeerNode peer = peers.get(i);
+                if (peer instanceof Leecher) total += peer.getConnections().size();
+            }
+        }
+        offsets[n] = total;
+        if (chunks.length < total) {
+            chunks = new int[total];
+            senders = new PeerNode[total];
+        }
+
+        SelectionTask task = new SelectionTask(peers, columns, 0, n);
+        if (pool == null || n <= LEAF_SIZE) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * @param peerIndex Position of the leecher in the planned peer list
+     * @return Number of transfers selected for that leecher
+     */
+    int countFor(int peerIndex) {
+        return counts[peerIndex];
+    }
+
+    /**
+     * @param peerIndex Position of the leecher in the planned peer list
+     * @param k         Transfer index within that leecher's plan
+     * @return Chunk selected for the transfer
+     */
+    int chunkAt(int peerIndex, int k) {
+        return chunks[offsets[peerIndex] + k];
+    }
+
+    /**
+     * @param peerIndex Position of the leecher in the planned peer list
+     * @param k         Transfer index within that leecher's plan
+     * @return Peer that will send the chunk
+     */
+    PeerNode senderAt(int peerIndex, int k) {
+        return senders[offsets[peerIndex] + k];
+    }
+
+    /**
+     * Drops sender references so departed peers are not kept reachable between ticks.
+     */
+    void release() {
+        Arrays.fill(senders, null);
+    }
+
+    // Whether one of the leecher's in-flight transfers comes from this peer
+    private static boolean isSending(List<Transfer> inFlight, PeerNode peer) {
+        for (Transfer t : inFlight) {
+            if (t.getSender() == peer) return true;
+        }
+        return false;
+    }
+
+    private static boolean isSending(List<Transfer> inFlight, int peerId) {
+        for (Transfer t : inFlight) {
+            if (t.getSender().getId() == peerId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fork-join task that plans a contiguous range of peers.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private class SelectionTask extends RecursiveAction {
+        private final List<PeerNode> peers;
+        private final PeerColumns columns; // Columns of the peers, or null to read the objects
+        private final int from;
+        private final int to;
+
+        SelectionTask(List<PeerNode> peers, PeerColumns columns, int from, int to) {
+            this.peers = peers;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SelectionTask(peers, columns, from, mid), new SelectionTask(peers, columns, mid, to));
+                return;
+            }
+
+            ChunkBitmap pending = new ChunkBitmap(totalChunks); // Chunks claimed by the current leecher
+            if (columns != null) {
+                for (int i = from; i < to; i++) counts[i] = columns.downloads(i) ? selectFromColumns(i, pending) : 0;
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                counts[i] = 0;
+                if (!(peers.get(i) instanceof Leecher leecher)) continue;
+
+                int base = offsets[i];
+                int count = 0;
+                List<Transfer> inFlight = respectInFlight ? leecher.getActiveTransfers() : List.of();
+                for (Transfer t : inFlight) pending.set(t.getChunk());
+
+                for (NetworkNode neighbor : leecher.getConnections()) {
+                    if (neighbor instanceof PeerNode otherPeer && !isSending(inFlight, otherPeer)) {
+                        int chunk = leecher.selectChunkFrom(otherPeer, pending, availability);
+                        if (chunk >= 0) {
+                            pending.set(chunk);
+                            chunks[base + count] = chunk;
+                            senders[base + count] = otherPeer;
+                            count++;
+                        }
+                    }
+                }
+                counts[i] = count;
+
+                // Reset the scratch bitmap for the next leecher
+                for (int k = 0; k < count; k++) {
+                    pending.clear(chunks[base + k]);
+                }
+                for (Transfer t : inFlight) pending.clear(t.getChunk());
+            }
+        }
+
+        // Same selection as above, reading neighbours and chunks from the columns
+        private int selectFromColumns(int i, ChunkBitmap pending) {
+            ChunkBitmap own = columns.chunks(i);
+            int id = columns.id(i);
+            int base = offsets[i];
+            int count = 0;
+            List<Transfer> inFlight = respectInFlight ? peers.get(i).getActiveTransfers() : List.of();
+            for (Transfer t : inFlight) pending.set(t.getChunk());
+
+            for (int a = columns.neighborStart(i), end = columns.neighborEnd(i); a < end; a++) {
+                int j = columns.neighborAt(a);
+                if (!inFlight.isEmpty() && isSending(inFlight, columns.id(j))) continue;
+                ChunkBitmap source = columns.chunks(j);
+                int chunk = availability != null
+                        ? availability.rarestWanted(own, source, pending, id)
+                        : own.nextWantedFrom(source, pending, 0);
+                if (chunk >= 0) {
+                    pending.set(chunk);
+                    chunks[base + count] = chunk;
+                    senders[base + count] = peers.get(j);
+                    count++;
+                }
+            }
+
+            for (int k = 0; k < count; k++) pending.clear(chunks[base + k]);
+            for (Transfer t : inFlight) pending.clear(t.getChunk());
+            return count;
+        }
+
+    }
+}
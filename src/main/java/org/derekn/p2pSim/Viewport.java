@@ -0,0 +1,92 @@
+package org.derekn.p2pSim;
+
+/**
+ * Zoom and pan state shared by the view's drawing layers.
+ * Maps layout coordinates to screen pixels as {@code screen = layout * scale + offset}.
+ * Every change bumps a revision number so layers can tell when they must redraw.
+ * Used on the FX thread only.
+ */
+public class Viewport {
+    private static final double MIN_SCALE = 1e-4;
+    private static final double MAX_SCALE = 16;
+
+    private double scale = 1;   // Screen pixels per layout unit
+    private double offsetX;     // Screen position of the layout origin
+    private double offsetY;
+    private long revision;      // Incremented on every change
+
+    /**
+     * Shows the whole layout area, never magnifying it past its natural size.
+     * A layout that already fits is shown exactly as it would be without a viewport.
+     *
+     * @param layoutWidth  Width of the layout area
+     * @param layoutHeight Height of the layout area
+     * @param screenWidth  Width of the view in pixels
+     * @param screenHeight Height of the view in pixels
+     */
+    public void fit(double layoutWidth, double layoutHeight, double screenWidth, double screenHeight) {
+        scale = 1;
+        if (screenWidth > 0 && screenHeight > 0) {
+            scale = Math.max(MIN_SCALE, Math.min(1, Math.min(screenWidth / layoutWidth, screenHeight / layoutHeight)));
+        }
+        offsetX = 0;
+        offsetY = 0;
+        revision++;
+    }
+
+    /**
+     * Zooms about a fixed screen point, which keeps showing the same layout position.
+     *
+     * @param factor  Scale multiplier; above 1 zooms in
+     * @param screenX Screen x of the zoom centre
+     * @param screenY Screen y of the zoom centre
+     */
+    public void zoom(double factor, double screenX, double screenY) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        double layoutX = toLayoutX(screenX);
+        double layoutY = toLayoutY(screenY);
+        scale = newScale;
+        offsetX = screenX - layoutX * scale;
+        offsetY = screenY - layoutY * scale;
+        revision++;
+    }
+
+    /**
+     * Moves the view by a screen distance.
+     *
+     * @param dx Pixels to move right
+     * @param dy Pixels to move down
+     */
+    public void pan(double dx, double dy) {
+        offsetX += dx;
+        offsetY += dy;
+        revision++;
+    }
+
+    public double toScreenX(double layoutX) {
+        return layoutX * scale + offsetX;
+    }
+
+    public double toScreenY(double layoutY) {
+        return layoutY * scale + offsetY;
+    }
+
+    public double toLayoutX(double screenX) {
+        return (screenX - offsetX) / scale;
+    }
+
+    public double toLayoutY(double screenY) {
+        return (screenY - offsetY) / scale;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return Number that changes whenever the mapping changes
+     */
+    public long getRevision() {
+        return revision;
+    }
+}
@@ -0,0 +1,48 @@
+package org.derekn.p2pSim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Watts–Strogatz small-world graph: peers sit on a ring, each linked to its k nearest
+ * neighbours, and each lattice edge is rewired to a uniformly random peer with
+ * probability beta. Generation is O(n·k) and runs in parallel blocks.
+ * A rewired edge that duplicates an existing one is dropped, which can lower a
+ * peer's degree slightly.
+ */
+public class WattsStrogatzTopology implements TopologyGenerator {
+    private static final int BLOCK_SIZE = 16_384; // Peers per parallel block
+
+    private final int neighbours;  // k: lattice degree, rounded down to an even number
+    private final double rewireProbability; // beta
+
+    /**
+     * @param neighbours        Number of ring neighbours per peer (k)
+     * @param rewireProbability Probability of rewiring each lattice edge (beta)
+     */
+    public WattsStrogatzTopology(int neighbours, double rewireProbability) {
+        this.neighbours = neighbours;
+        this.rewireProbability = rewireProbability;
+    }
+
+    @Override
+    public void connect(List<PeerNode> peers, RandomStream rng, ForkJoinPool pool) {
+        int n = peers.size();
+        int half = Math.min(neighbours / 2, (n - 1) / 2);
+        if (half < 1) return;
+
+        EdgeList.generateBlocks(peers, BLOCK_SIZE, rng, pool, (start, end, blockRng, out) -> {
+            for (int v = start; v < end; v++) {
+                for (int j = 1; j <= half; j++) {
+                    int target = (v + j) % n;
+                    if (blockRng.nextDouble() < rewireProbability) {
+                        do {
+                            target = blockRng.nextInt(n);
+                        } while (target == v);
+                    }
+                    out.add(v, target);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that a {@link CalendarQueue} hands out events in exactly the order of a
+ * {@link HeapEventQueue}, including across resizes, empty stretches longer than a year of
+ * days and events scheduled before the current day.
+ */
+class CalendarQueueTest {
+    private long seq; // Sequence numbers of the events made so far
+
+    @Test
+    void matchesHeapUnderRandomInterleaving() {
+        Random rng = new Random(1);
+        CalendarQueue calendar = new CalendarQueue();
+        HeapEventQueue heap = new HeapEventQueue();
+        double now = 0;
+        for (int step = 0; step < 200_000; step++) {
+            // Bursts of additions grow the calendar, long runs of polls shrink it again
+            boolean adding = (step / 5000) % 2 == 0 ? rng.nextInt(4) > 0 : rng.nextInt(4) == 0;
+            if (adding || heap.isEmpty()) {
+                double delay = switch (rng.nextInt(4)) {
+                    case 0 -> 0;                         // Same time as the last event polled
+                    case 1 -> rng.nextDouble() * 0.01;   // Dense
+                    case 2 -> -Math.log(1 - rng.nextDouble()); // Exponential
+                    default -> rng.nextDouble() * 1000;  // Sparse, often beyond a year of days
+                };
+                add(calendar, heap, now + delay);
+            } else {
+                SimEvent expected = heap.poll();
+                assertSame(expected, calendar.poll(), "poll at step " + step);
+                now = expected.getTime();
+            }
+            assertEquals(heap.size(), calendar.size());
+        }
+        drain(calendar, heap);
+    }
+
+    @Test
+    void skipsEmptyYearsToDistantEvents() {
+        CalendarQueue calendar = new CalendarQueue();
+        HeapEventQueue heap = new HeapEventQueue();
+        // A dense cluster sets a narrow day width; the rest lie many years of days later
+        for (int i = 0; i < 100; i++) add(calendar, heap, i * 0.001);
+        for (int i = 1; i <= 50; i++) add(calendar, heap, i * 1e6 + (i % 7) * 0.5);
+        drain(calendar, heap);
+    }
+
+    @Test
+    void acceptsEventsBeforeTheCurrentDay() {
+        CalendarQueue calendar = new CalendarQueue();
+        HeapEventQueue heap = new HeapEventQueue();
+        for (int i = 0; i < 40; i++) add(calendar, heap, 100 + i);
+        for (int i = 0; i < 20; i++) assertSame(heap.poll(), calendar.poll());
+        for (int i = 0; i < 10; i++) add(calendar, heap, 50 + i * 3.7);
+        drain(calendar, heap);
+    }
+
+    @Test
+    void ordersEqualTimesByScheduling() {
+        CalendarQueue calendar = new CalendarQueue();
+        HeapEventQueue heap = new HeapEventQueue();
+        for (int i = 0; i < 1000; i++) add(calendar, heap, (i % 3) * 2.5);
+        drain(calendar, heap);
+    }
+
+    private void add(CalendarQueue calendar, HeapEventQueue heap, double time) {
+        SimEvent event = new SimEvent(time, seq++, SimEvent.Type.RECHOKE, null, 0);
+        calendar.add(event);
+        heap.add(event);
+    }
+
+    private static void drain(CalendarQueue calendar, HeapEventQueue heap) {
+        while (!heap.isEmpty()) {
+            assertSame(heap.peek(), calendar.peek());
+            assertSame(heap.poll(), calendar.poll());
+        }
+        assertEquals(0, calendar.size());
+        assertNull(calendar.poll());
+    }
+}
@@ -0,0 +1,107 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a run saved, restored and continued ends in exactly the state of the same
+ * run never interrupted, compared as the bytes of a final checkpoint of each, and that a
+ * save that does not finish leaves the previous checkpoint in place.
+ */
+class CheckpointTest {
+    private static final int BEFORE = 15; // Ticks before the checkpoint
+    private static final int AFTER = 20;  // Ticks after it
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoredTickRunMatchesUninterruptedRun() throws IOException {
+        assertRoundTrip("--peers=200", "--chunks=400", "--seed=3", "--join-rate=0.5", "--leave-rate=0.5");
+    }
+
+    @Test
+    void restoredEventRunMatchesUninterruptedRun() throws IOException {
+        assertRoundTrip("--peers=200", "--chunks=400", "--seed=5", "--clock=event", "--transfer-model=bandwidth",
+                "--join-rate=0.3", "--leave-rate=0.3");
+    }
+
+    @Test
+    void restoredSessionChurnRunMatchesUninterruptedRun() throws IOException {
+        assertRoundTrip("--peers=200", "--chunks=400", "--seed=7", "--arrivals=poisson:2", "--session=exp:40",
+                "--peer-store=columnar");
+    }
+
+    @Test
+    void unfinishedSaveKeepsPreviousCheckpoint() throws IOException {
+        Path file = dir.resolve("run.ckpt");
+        SimulationController controller = start("--peers=50", "--chunks=100", "--seed=1");
+        try {
+            controller.tick();
+            controller.saveCheckpoint(file);
+            byte[] saved = Files.readAllBytes(file);
+
+            controller.tick();
+            try (CheckpointWriter out = new CheckpointWriter(file)) {
+                controller.writeCheckpoint(out); // Closed without finish(), as when writing fails
+            }
+            assertArrayEquals(saved, Files.readAllBytes(file));
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count(), "temporary file left behind");
+            }
+        } finally {
+            controller.close();
+        }
+    }
+
+    // Runs BEFORE + AFTER ticks straight through, and again with a save and restore after BEFORE
+    private void assertRoundTrip(String... args) throws IOException {
+        Path checkpoint = dir.resolve("middle.ckpt");
+        Path straight = dir.resolve("straight.ckpt");
+        Path resumed = dir.resolve("resumed.ckpt");
+
+        SimulationController uninterrupted = start(args);
+        try {
+            for (int i = 0; i < BEFORE + AFTER; i++) uninterrupted.tick();
+            uninterrupted.saveCheckpoint(straight);
+        } finally {
+            uninterrupted.close();
+        }
+
+        SimulationController first = start(args);
+        try {
+            for (int i = 0; i < BEFORE; i++) first.tick();
+            first.saveCheckpoint(checkpoint);
+        } finally {
+            first.close();
+        }
+
+        SimulationController restored = SimulationController.restore(checkpoint, SimulationConfig.fromArgs(args));
+        try {
+            assertEquals(BEFORE, restored.getTickCount());
+            restored.startSimulation();
+            for (int i = 0; i < AFTER; i++) restored.tick();
+            restored.saveCheckpoint(resumed);
+        } finally {
+            restored.close();
+        }
+
+        assertEquals(-1L, Files.mismatch(straight, resumed), "first differing byte of the final checkpoints");
+        assertTrue(Files.size(straight) > 0);
+    }
+
+    private static SimulationController start(String... args) throws IOException {
+        SimulationController controller = new SimulationController(SimulationConfig.fromArgs(args));
+        controller.startSimulation();
+        return controller;
+    }
+}
@@ -0,0 +1,146 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the incremental counts of {@link ChunkAvailability} against plain counting, and
+ * that rarest-first picks are eligible, among the rarest eligible chunks, spread across
+ * ties and unchanged by a checkpoint round trip.
+ */
+class ChunkAvailabilityTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsFollowRandomChanges() {
+        Random rng = new Random(11);
+        int chunks = 300;
+        ChunkAvailability availability = new ChunkAvailability(chunks);
+        int[] expected = new int[chunks];
+        for (int step = 0; step < 100_000; step++) {
+            int c = rng.nextInt(chunks);
+            // Counts drift up and down so buckets keep swapping chunks both ways
+            if (expected[c] > 0 && rng.nextInt(5) < 2) {
+                availability.decrement(c);
+                expected[c]--;
+            } else if (expected[c] < 40) {
+                availability.increment(c);
+                expected[c]++;
+            }
+        }
+        availability.addPeer(new Seeder(0, 0, 0, chunks));
+        for (int c = 0; c < chunks; c++) assertEquals(expected[c] + 1, availability.count(c), "count of chunk " + c);
+    }
+
+    @Test
+    void picksAnEligibleChunkOfLowestCount() {
+        Random rng = new Random(12);
+        for (int round = 0; round < 30; round++) {
+            int chunks = 1 + rng.nextInt(2000);
+            ChunkAvailability availability = randomAvailability(rng, chunks);
+            for (int query = 0; query < 200; query++) {
+                ChunkBitmap wanter = randomBitmap(rng, chunks, rng.nextDouble());
+                ChunkBitmap source = query % 10 == 0
+                        ? ChunkBitmap.full(chunks)
+                        : randomBitmap(rng, chunks, rng.nextDouble() * (rng.nextBoolean() ? 0.05 : 1));
+                ChunkBitmap exclude = randomBitmap(rng, chunks, rng.nextDouble() * 0.3);
+
+                int rarest = Integer.MAX_VALUE;
+                for (int c = 0; c < chunks; c++) {
+                    if (source.get(c) && !wanter.get(c) && !exclude.get(c)) rarest = Math.min(rarest, availability.count(c));
+                }
+                int pick = availability.rarestWanted(wanter, source, exclude, rng.nextInt(1 << 20));
+                if (rarest == Integer.MAX_VALUE) {
+                    assertEquals(-1, pick);
+                } else {
+                    assertTrue(pick >= 0 && source.get(pick) && !wanter.get(pick) && !exclude.get(pick), "eligible " + pick);
+                    assertEquals(rarest, availability.count(pick), "count of pick " + pick);
+                }
+            }
+        }
+    }
+
+    @Test
+    void wantersSpreadAcrossEquallyRareChunks() {
+        int chunks = 500;
+        ChunkAvailability availability = new ChunkAvailability(chunks);
+        ChunkBitmap empty = new ChunkBitmap(chunks);
+        Set<Integer> picks = new HashSet<>();
+        for (int id = 0; id < 100; id++) {
+            int pick = availability.rarestWanted(empty, ChunkBitmap.full(chunks), empty, id);
+            assertEquals(pick, availability.rarestWanted(empty, ChunkBitmap.full(chunks), empty, id));
+            picks.add(pick);
+        }
+        assertTrue(picks.size() >= 40, "only " + picks.size() + " distinct picks for 100 wanters");
+    }
+
+    @Test
+    void checkpointKeepsPicks() throws IOException {
+        Random rng = new Random(13);
+        int chunks = 1000;
+        ChunkAvailability original = randomAvailability(rng, chunks);
+        Path file = dir.resolve("availability.ckpt");
+        try (CheckpointWriter out = new CheckpointWriter(file)) {
+            original.writeTo(out);
+            out.finish();
+        }
+        ChunkAvailability restored = new ChunkAvailability(chunks);
+        try (CheckpointReader in = new CheckpointReader(file)) {
+            restored.readFrom(in);
+            in.finish();
+        }
+
+        for (int query = 0; query < 2000; query++) {
+            ChunkBitmap wanter = randomBitmap(rng, chunks, rng.nextDouble());
+            ChunkBitmap source = randomBitmap(rng, chunks, rng.nextDouble() * 0.2);
+            ChunkBitmap exclude = randomBitmap(rng, chunks, 0.1);
+            int id = rng.nextInt(1 << 20);
+            assertEquals(original.rarestWanted(wanter, source, exclude, id),
+                    restored.rarestWanted(wanter, source, exclude, id), "pick for query " + query);
+        }
+        // Both keep counting alike after the restore
+        for (int c = 0; c < chunks; c += 3) {
+            original.increment(c);
+            restored.increment(c);
+        }
+        ChunkBitmap empty = new ChunkBitmap(chunks);
+        for (int id = 0; id < 200; id++) {
+            assertEquals(original.rarestWanted(empty, ChunkBitmap.full(chunks), empty, id),
+                    restored.rarestWanted(empty, ChunkBitmap.full(chunks), empty, id));
+        }
+    }
+
+    // Counts spread over many buckets, some large and some small
+    private static ChunkAvailability randomAvailability(Random rng, int chunks) {
+        ChunkAvailability availability = new ChunkAvailability(chunks);
+        int peers = 1 + rng.nextInt(30);
+        for (int p = 0; p < peers; p++) {
+            Leecher peer = new Leecher(p, 0, 0, chunks);
+            double share = rng.nextDouble();
+            for (int c = 0; c < chunks; c++) {
+                if (rng.nextDouble() < share) peer.getChunkBitmap().set(c);
+            }
+            availability.addPeer(peer);
+            if (rng.nextInt(4) == 0) availability.removePeer(peer);
+        }
+        return availability;
+    }
+
+    private static ChunkBitmap randomBitmap(Random rng, int chunks, double density) {
+        ChunkBitmap bitmap = new ChunkBitmap(chunks);
+        for (int c = 0; c < chunks; c++) {
+            if (rng.nextDouble() < density) bitmap.set(c);
+        }
+        return bitmap;
+    }
+}
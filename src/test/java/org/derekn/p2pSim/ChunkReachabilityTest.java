@@ -0,0 +1,130 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the unreachable chunk counts of {@link ChunkReachability} against a full search
+ * of the swarm under churn, and that a download that lost some chunk only fails at once
+ * when no arrival can bring it back.
+ */
+class ChunkReachabilityTest {
+    private static final int SEEDS = 20;      // Runs per configuration
+    private static final int MAX_TICKS = 300; // Ticks per run at most
+
+    @Test
+    void countsMatchFullSearchUnderRateChurn() throws IOException {
+        assertMatchesFullSearch("--peers=60", "--chunks=50", "--join-rate=0.8", "--leave-rate=0.9");
+    }
+
+    @Test
+    void countsMatchFullSearchUnderSessionChurn() throws IOException {
+        assertMatchesFullSearch("--peers=40", "--chunks=60", "--arrivals=poisson:1", "--session=pareto:1.2:3",
+                "--peer-store=columnar");
+    }
+
+    @Test
+    void countsMatchFullSearchOnEventClock() throws IOException {
+        assertMatchesFullSearch("--peers=60", "--chunks=50", "--clock=event", "--transfer-model=bandwidth",
+                "--join-rate=0.8", "--leave-rate=0.9");
+    }
+
+    @Test
+    void arrivalCanBringLostChunksBackWithinReach() throws IOException {
+        SimulationController controller = start("--peers=100", "--chunks=40", "--seed=192", "--arrivals=poisson:1",
+                "--session=exp:30");
+        try {
+            controller.tick();
+            assertTrue(controller.getUnreachableChunks() > 0, "target lost no chunk on the first tick");
+            assertFalse(controller.downloadFailed());
+
+            RunResult result = HeadlessRunner.run(controller, 5000);
+            assertTrue(result.completed());
+            assertFalse(result.stalled());
+        } finally {
+            controller.close();
+        }
+    }
+
+    @Test
+    void lostChunkWithoutArrivalsFailsAtOnce() throws IOException {
+        SimulationController controller = start("--peers=30", "--chunks=40", "--seed=32", "--join-rate=0",
+                "--leave-rate=1");
+        try {
+            while (controller.getUnreachableChunks() == 0) {
+                assertFalse(controller.getDownloadTarget().hasCompleteFile(), "target finished without losing a chunk");
+                controller.tick();
+            }
+            assertTrue(controller.downloadFailed());
+        } finally {
+            controller.close();
+        }
+    }
+
+    // Ticks runs of several seeds, comparing the tracked count with a full search after every tick
+    private static void assertMatchesFullSearch(String... args) throws IOException {
+        String[] seeded = Arrays.copyOf(args, args.length + 1);
+        int lost = 0; // Ticks that ended with some chunk out of reach
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            seeded[args.length] = "--seed=" + seed;
+            SimulationController controller = start(seeded);
+            try {
+                for (int tick = 0; tick < MAX_TICKS && !controller.getDownloadTarget().hasCompleteFile(); tick++) {
+                    controller.tick();
+                    int expected = unreachableByFullSearch(controller);
+                    assertEquals(expected, controller.getUnreachableChunks(),
+                            "unreachable chunks with seed " + seed + " after tick " + tick);
+                    if (expected > 0) lost++;
+                }
+            } finally {
+                controller.close();
+            }
+        }
+        assertTrue(lost > 0, "no run lost a chunk");
+    }
+
+    // Chunks held by no leecher linked to the target through leechers, nor by any neighbour of one
+    private static int unreachableByFullSearch(SimulationController controller) {
+        PeerNode target = controller.getDownloadTarget();
+        boolean[] held = new boolean[target.getChunkBitmap().size()];
+        Set<Integer> seen = new HashSet<>(Set.of(target.getId()));
+        ArrayDeque<PeerNode> queue = new ArrayDeque<>();
+        queue.add(target);
+        while (!queue.isEmpty()) {
+            PeerNode peer = queue.poll();
+            mark(held, peer);
+            for (NetworkNode neighbor : peer.getConnections()) {
+                if (neighbor instanceof Leecher leecher) {
+                    if (seen.add(leecher.getId())) queue.add(leecher);
+                } else if (neighbor instanceof PeerNode other) {
+                    mark(held, other);
+                }
+            }
+        }
+        int missing = 0;
+        for (boolean h : held) {
+            if (!h) missing++;
+        }
+        return missing;
+    }
+
+    private static void mark(boolean[] held, PeerNode peer) {
+        ChunkBitmap chunks = peer.getChunkBitmap();
+        for (int c = chunks.nextSetBit(0); c >= 0; c = chunks.nextSetBit(c + 1)) held[c] = true;
+    }
+
+    private static SimulationController start(String... args) throws IOException {
+        SimulationController controller = new SimulationController(SimulationConfig.fromArgs(args));
+        controller.startSimulation();
+        return controller;
+    }
+}
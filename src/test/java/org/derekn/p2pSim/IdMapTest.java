@@ -0,0 +1,64 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link IdMap} against a {@link HashMap} while it grows, churns and shrinks.
+ */
+class IdMapTest {
+
+    @Test
+    void matchesHashMapThroughGrowthAndShrinking() {
+        Random rng = new Random(7);
+        IdMap map = new IdMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        int nextId = 0;
+        // Mostly insertions, then balanced churn with fresh IDs, then mostly removals
+        for (double insertShare : new double[] {0.8, 0.5, 0.2}) {
+            for (int step = 0; step < 100_000; step++) {
+                if (rng.nextDouble() < insertShare) {
+                    int id = rng.nextInt(10) == 0 && nextId > 0 ? rng.nextInt(nextId) : nextId++;
+                    int value = rng.nextInt(1000);
+                    map.put(id, value);
+                    expected.put(id, value);
+                } else if (nextId > 0) {
+                    int id = rng.nextInt(nextId);
+                    assertEquals(expected.remove(id) != null, map.remove(id), "remove " + id);
+                }
+                int probe = rng.nextInt(nextId + 1);
+                int want = expected.getOrDefault(probe, -1);
+                assertEquals(want, map.get(probe), "get " + probe);
+                assertEquals(expected.size(), map.size());
+            }
+        }
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue().intValue(), map.get(e.getKey()), "get " + e.getKey());
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), keys);
+    }
+
+    @Test
+    void clearEmptiesAndNegativeIdsAreRejected() {
+        IdMap map = new IdMap();
+        for (int id = 0; id < 100; id++) map.put(id, id);
+        assertTrue(map.containsKey(99));
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(99));
+        assertEquals(-1, map.get(-5));
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, 0));
+    }
+}
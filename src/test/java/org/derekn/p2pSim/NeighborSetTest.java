@@ -0,0 +1,70 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link NeighborSet} against a {@link HashSet} under random additions and removals,
+ * across the switch from linear scans to the hashed index and through its growth.
+ */
+class NeighborSetTest {
+
+    @Test
+    void matchesHashSetUnderRandomChanges() {
+        Random rng = new Random(42);
+        List<Leecher> nodes = new ArrayList<>();
+        for (int id = 0; id < 400; id++) nodes.add(new Leecher(id * 7919, 0, 0, 1));
+
+        for (int round = 0; round < 20; round++) {
+            NeighborSet set = new NeighborSet();
+            Set<Integer> expected = new HashSet<>();
+            int range = 4 + rng.nextInt(nodes.size() - 4); // Small sets stay below the hashing threshold
+            for (int step = 0; step < 5000; step++) {
+                Leecher node = nodes.get(rng.nextInt(range));
+                int id = node.getId();
+                if (rng.nextInt(3) > 0) {
+                    assertEquals(expected.add(id), set.addNode(node), "add " + id);
+                } else {
+                    assertEquals(expected.remove(id), set.removeId(id), "remove " + id);
+                }
+                assertEquals(expected.size(), set.size());
+                int probe = nodes.get(rng.nextInt(nodes.size())).getId();
+                assertEquals(expected.contains(probe), set.containsId(probe), "contains " + probe);
+            }
+
+            Set<Integer> actual = new HashSet<>();
+            for (int i = 0; i < set.size(); i++) {
+                assertTrue(actual.add(set.idAt(i)), "duplicate " + set.idAt(i));
+                assertEquals(set.idAt(i), set.get(i).getId());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void removalMovesTheLastNeighbourIntoTheGap() {
+        NeighborSet set = new NeighborSet();
+        Leecher[] nodes = new Leecher[20];
+        for (int id = 0; id < nodes.length; id++) {
+            nodes[id] = new Leecher(id, 0, 0, 1);
+            set.addNode(nodes[id]);
+        }
+        assertFalse(set.addNode(nodes[3]));
+
+        assertTrue(set.removeId(5));
+        assertSame(nodes[19], set.get(5));
+        assertFalse(set.containsId(5));
+        assertTrue(set.containsId(19));
+        assertFalse(set.removeId(5));
+    }
+}
@@ -0,0 +1,69 @@
+package org.derekn.p2pSim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that a {@link TimerWheel} fires every timer at exactly its deadline, against a
+ * plain map from deadline to keys, including timers that cascade down every level and
+ * ones beyond the top level that wait in the overflow slot.
+ */
+class TimerWheelTest {
+
+    @Test
+    void firesEveryTimerAtItsDeadline() {
+        Random rng = new Random(3);
+        int start = (1 << 18) - 100; // Shortly before levels 0 to 2 all wrap
+        TimerWheel wheel = new TimerWheel(start);
+        Map<Integer, List<Integer>> expected = new HashMap<>();
+        int key = 0;
+        int end = start + (1 << 24) + 5000; // Beyond the span of all levels
+        for (int i = 0; i < 20_000; i++) {
+            schedule(wheel, expected, key++, start + 1 + spread(rng, end - start - 1));
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        for (int tick = start + 1; tick <= end; tick++) {
+            if (rng.nextInt(4096) == 0) {
+                // Timers added along the way, some due at once, some past the top level
+                for (int i = 0; i < 8; i++) schedule(wheel, expected, key++, tick + spread(rng, 1 << 25));
+            }
+            fired.clear();
+            assertEquals(tick, wheel.advance(fired::add));
+            List<Integer> due = expected.remove(tick);
+            if (due == null && fired.isEmpty()) continue;
+            Collections.sort(fired);
+            assertEquals(due == null ? List.of() : due, fired, "timers due at tick " + tick);
+        }
+        int pending = 0;
+        for (List<Integer> keys : expected.values()) pending += keys.size();
+        assertEquals(pending, wheel.size());
+    }
+
+    @Test
+    void rejectsDeadlinesNotInTheFuture() {
+        TimerWheel wheel = new TimerWheel(10);
+        assertThrows(IllegalArgumentException.class, () -> wheel.schedule(1, 10));
+        assertThrows(IllegalArgumentException.class, () -> wheel.schedule(1, 3));
+    }
+
+    // Deadlines from 1 to limit ticks away, spread over every level of the wheel
+    private static int spread(Random rng, int limit) {
+        int bits = 1 + rng.nextInt(31 - Integer.numberOfLeadingZeros(limit));
+        return 1 + rng.nextInt(Math.min(limit, 1 << bits));
+    }
+
+    private static void schedule(TimerWheel wheel, Map<Integer, List<Integer>> expected, int key, int deadline) {
+        wheel.schedule(key, deadline);
+        expected.computeIfAbsent(deadline, d -> new ArrayList<>()).add(key); // Keys rise, so lists stay sorted
+    }
+}